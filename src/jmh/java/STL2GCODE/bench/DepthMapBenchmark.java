@@ -0,0 +1,48 @@
+package STL2GCODE.bench;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.PinLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Depth map generation and pin height extraction over the full 500 x 500 mm mesh.
+ */
+@State(Scope.Benchmark)
+public class DepthMapBenchmark {
+
+    @Param({"1000", "100000"})
+    public int triangles;
+
+    @Param({"10", "50"})
+    public int gridSize;
+
+    private List<Triangle> mesh;
+    private PinLayout layout;
+    private double[][] depthMap;
+
+    @Setup
+    public void setUp() {
+        mesh = new MeshGenerator(42).generate(MeshGenerator.Kind.HEIGHT_FIELD, triangles, 500);
+        layout = new PinLayout(12, 462, 25, 475, gridSize);
+        depthMap = DepthMapUtil.generateDepthMap(mesh, layout);
+    }
+
+    @Benchmark
+    public double[][] generateDepthMap() {
+        return DepthMapUtil.generateDepthMap(mesh, layout);
+    }
+
+    @Benchmark
+    public List<Vec3d> calculatePinHeights() {
+        return DepthMapUtil.calculatePinHeights(depthMap, layout);
+    }
+}
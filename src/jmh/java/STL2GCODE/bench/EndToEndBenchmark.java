@@ -0,0 +1,57 @@
+package STL2GCODE.bench;
+
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.stl4j.STLParser;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * The complete conversion of STL bytes to G-code, as done by the batch converter
+ * and the job service.
+ */
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"1000", "100000"})
+    public int triangles;
+
+    @Param({"BINARY", "ASCII"})
+    public String format;
+
+    @Param({"10", "50"})
+    public int gridSize;
+
+    private byte[] content;
+    private PinLayout layout;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MeshGenerator(42).writeSTL(MeshGenerator.Kind.HEIGHT_FIELD, triangles, 500, out, format.equals("ASCII"));
+        content = out.toByteArray();
+        layout = new PinLayout(12, 462, 25, 475, gridSize);
+    }
+
+    @Benchmark
+    public String convert() throws IOException {
+        List<Triangle> mesh = STLParser.parseSTL(content);
+        TriangleFilterUtil.applyMoldFilters(mesh, 0);
+        double[][] depthMap = DepthMapUtil.generateDepthMap(mesh, layout);
+        StringWriter out = new StringWriter();
+        GCodeWriter.writeGCode(DepthMapUtil.calculatePinHeights(depthMap, layout), out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package STL2GCODE.bench;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.TriangleFilterUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The filters modify their input, so every invocation gets a fresh copy of the mesh.
+ * The copy is made in an invocation-level setup and is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    @Param({"1000", "100000"})
+    public int triangles;
+
+    private List<Triangle> mesh;
+    private List<Triangle> working;
+
+    @Setup
+    public void setUp() {
+        mesh = new MeshGenerator(42).generate(MeshGenerator.Kind.HEIGHT_FIELD, triangles, 500);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyMesh() {
+        working = new ArrayList<>(mesh.size());
+        for (Triangle t : mesh) {
+            Vec3d[] v = t.getVertices();
+            working.add(new Triangle(new Vec3d(v[0].x, v[0].y, v[0].z), new Vec3d(v[1].x, v[1].y, v[1].z), new Vec3d(v[2].x, v[2].y, v[2].z)));
+        }
+    }
+
+    @Benchmark
+    public List<Triangle> translateToFirstQuadrant() {
+        TriangleFilterUtil.translateToFirstQuadrant(working);
+        return working;
+    }
+
+    @Benchmark
+    public List<Triangle> makePlanar() {
+        TriangleFilterUtil.makePlanar(working);
+        return working;
+    }
+
+    @Benchmark
+    public List<Triangle> rotateToOptimizeZ() {
+        TriangleFilterUtil.rotateToOptimizeZ(working, 0.3);
+        return working;
+    }
+
+    @Benchmark
+    public List<Triangle> applyMoldFilters() {
+        TriangleFilterUtil.applyMoldFilters(working, 0.3);
+        return working;
+    }
+}
@@ -0,0 +1,42 @@
+package STL2GCODE.bench;
+
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.PinLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * G-code formatting, written to memory so disk speed does not enter the result.
+ */
+@State(Scope.Benchmark)
+public class GCodeWriterBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int gridSize;
+
+    private List<Vec3d> pinHeights;
+
+    @Setup
+    public void setUp() {
+        PinLayout layout = new PinLayout(12, 462, 25, 475, gridSize);
+        double[][] depthMap = DepthMapUtil.generateDepthMap(new MeshGenerator(42).generate(MeshGenerator.Kind.HEIGHT_FIELD, 2000, 500), layout);
+        pinHeights = DepthMapUtil.calculatePinHeights(depthMap, layout);
+    }
+
+    @Benchmark
+    public String writeGCode() throws IOException {
+        StringWriter out = new StringWriter();
+        GCodeWriter.writeGCode(pinHeights, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package STL2GCODE.bench;
+
+import STL2GCODE.stl4j.STLParser;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.util.MeshGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parsing of in-memory STL content.
+ */
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"1000", "100000"})
+    public int triangles;
+
+    @Param({"BINARY", "ASCII"})
+    public String format;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MeshGenerator(42).writeSTL(MeshGenerator.Kind.HEIGHT_FIELD, triangles, 500, out, format.equals("ASCII"));
+        content = out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Triangle> parse() {
+        return STLParser.parseSTL(content);
+    }
+}
@@ -1,13 +1,18 @@
 package STL2GCODE;
 
+import STL2GCODE.cli.BatchConverter;
+import STL2GCODE.mesh.MeshImporter;
 import STL2GCODE.stl4j.STLParser;
 import STL2GCODE.stl4j.Triangle;
 import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapFile;
 import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
 import STL2GCODE.util.TriangleFilterUtil;
 import STL2GCODE.gcode.GCodeWriter;
 
 import javax.swing.*;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -19,6 +24,12 @@ import java.util.logging.Logger;
 public class TestApp {
 
     public static void main(String[] args) {
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            // no one to pick a file, run the batch converter instead
+            BatchConverter.main(args);
+            return;
+        }
+
         File f = askForFile();
         if(f == null){
             // canceled by user
@@ -27,8 +38,8 @@ public class TestApp {
         }
 
         try {
-            // Step 2: Read the STL file and parse the triangles
-            List<Triangle> triangles = STLParser.parseSTLFile(f.toPath());
+            // Step 2: Read the mesh file (STL, OBJ, PLY or 3MF) and parse the triangles
+            List<Triangle> triangles = MeshImporter.parseMeshFile(f.toPath());
 
             // Step 3: Translate triangles to the first quadrant
             TriangleFilterUtil.translateToFirstQuadrant(triangles);
@@ -44,6 +55,9 @@ public class TestApp {
             // Step 6: Generate depth map from the triangles
             double[][] depthMap = DepthMapUtil.generateDepthMap(triangles, 12, 462, 25, 475);
 
+            // Keep the depth map for inspection and for sending the mold again
+            DepthMapFile.write(Paths.get("test.depthmap"), depthMap, new PinLayout(12, 462, 25, 475, DepthMapUtil.MATRIX_SIZE));
+
             // Step 7: Calculate pin heights from the depth map
             List<Vec3d> pinHeights = DepthMapUtil.calculatePinHeights(depthMap, 12, 462, 25, 475);
 
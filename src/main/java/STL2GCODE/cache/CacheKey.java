@@ -0,0 +1,89 @@
+package STL2GCODE.cache;
+
+import STL2GCODE.util.PinLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * Identifies a conversion result by its content: the SHA-256 of the input bytes
+ * together with every parameter that affects the output. Two requests with the same
+ * key produce the same bytes.
+ */
+public final class CacheKey {
+    /**
+     * Changed whenever the output of a conversion changes for the same input, so that
+     * results stored on disk by an older version are not served.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final String hex;
+
+    private CacheKey(String hex) {
+        this.hex = hex;
+    }
+
+    /**
+     * Computes the key of a conversion.
+     *
+     * @param kind     The kind of result, for example "gcode" or "depthmap".
+     * @param input    The input file.
+     * @param layout   The pin layout.
+     * @param rotation The rotation of the part about the Z axis in radians.
+     * @return The key.
+     */
+    public static CacheKey of(String kind, byte[] input, PinLayout layout, double rotation) {
+        MessageDigest digest = sha256();
+        ByteBuffer parameters = ByteBuffer.allocate(4 + 5 * 8 + 4);
+        parameters.putInt(FORMAT_VERSION);
+        parameters.putDouble(layout.getXMin());
+        parameters.putDouble(layout.getXMax());
+        parameters.putDouble(layout.getYMin());
+        parameters.putDouble(layout.getYMax());
+        parameters.putDouble(rotation);
+        parameters.putInt(layout.getGridSize());
+        digest.update(kind.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(parameters.array());
+        digest.update(input);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new CacheKey(hex.toString());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The hash as 64 lower case hex digits, also used as the file name on disk.
+     */
+    public String toHex() {
+        return hex;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CacheKey && ((CacheKey) obj).hex.equals(hex);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hex);
+    }
+
+    @Override
+    public String toString() {
+        return hex;
+    }
+}
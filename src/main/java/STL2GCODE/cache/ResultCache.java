@@ -0,0 +1,222 @@
+package STL2GCODE.cache;
+
+import STL2GCODE.metrics.MoldMetrics;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A two level cache of conversion results, keyed by {@link CacheKey}.
+ *
+ * The first level keeps the most recently used results in memory, up to a total
+ * number of bytes. The second, optional level stores every result as a file named
+ * after its key in a directory, so results survive restarts; files are written to a
+ * temporary name and moved into place, so a reader never sees a partial result.
+ *
+ * Concurrent requests for the same missing key are single-flighted: the first one
+ * computes the result and the others wait for it.
+ */
+public class ResultCache {
+    private static final Logger LOGGER = Logger.getLogger(ResultCache.class.getName());
+
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    // access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<CacheKey, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private final ConcurrentHashMap<CacheKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxMemoryBytes The total size of the results kept in memory.
+     * @param directory      The directory of the on-disk level, created if needed, or null for a memory-only cache.
+     * @throws IOException Thrown if the directory cannot be created.
+     */
+    public ResultCache(long maxMemoryBytes, Path directory) throws IOException {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("The memory limit must not be negative.");
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Looks up a result, computing and storing it if it is not cached. The memory
+     * level and results already being computed are checked on the calling thread;
+     * the disk level and the computation run on the executor.
+     *
+     * @param key      The key of the result.
+     * @param compute  Computes the result on a miss.
+     * @param executor Runs the disk lookup and the computation.
+     * @return Completes with the result, or exceptionally with the exception thrown by compute.
+     */
+    public CompletableFuture<byte[]> get(CacheKey key, Callable<byte[]> compute, Executor executor) {
+        byte[] cached = getFromMemory(key);
+        if (cached != null) {
+            MoldMetrics.CACHE_MEMORY_HITS.add(1);
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, result);
+        if (running != null) {
+            MoldMetrics.CACHE_SHARED.add(1);
+            return running;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(load(key, compute));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, result);
+                }
+            });
+        } catch (RuntimeException e) {
+            // rejected by the executor
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up a result on the calling thread, computing and storing it if it is not
+     * cached, see {@link #get(CacheKey, Callable, Executor)}.
+     *
+     * @param key     The key of the result.
+     * @param compute Computes the result on a miss.
+     * @return The result.
+     * @throws Exception Thrown by compute.
+     */
+    public byte[] get(CacheKey key, Callable<byte[]> compute) throws Exception {
+        try {
+            return get(key, compute, Runnable::run).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private byte[] load(CacheKey key, Callable<byte[]> compute) throws Exception {
+        // another flight may have finished between the memory lookup and now
+        byte[] result = getFromMemory(key);
+        if (result != null) {
+            MoldMetrics.CACHE_MEMORY_HITS.add(1);
+            return result;
+        }
+        result = readFromDisk(key);
+        if (result != null) {
+            MoldMetrics.CACHE_DISK_HITS.add(1);
+            putInMemory(key, result);
+            return result;
+        }
+        MoldMetrics.CACHE_MISSES.add(1);
+        result = compute.call();
+        putInMemory(key, result);
+        writeToDisk(key, result);
+        return result;
+    }
+
+    private synchronized byte[] getFromMemory(CacheKey key) {
+        return memory.get(key);
+    }
+
+    private synchronized void putInMemory(CacheKey key, byte[] value) {
+        if (value.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] previous = memory.put(key, value);
+        memoryBytes += value.length - (previous == null ? 0 : previous.length);
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private byte[] readFromDisk(CacheKey key) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(directory.resolve(key.toHex()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read cached result " + key, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(CacheKey key, byte[] value) {
+        if (directory == null) {
+            return;
+        }
+        Path target = directory.resolve(key.toHex());
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key.toHex(), ".tmp");
+            Files.write(temp, value);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the result is still served from memory; the disk level is best effort
+            LOGGER.log(Level.WARNING, "Could not store cached result " + key, e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The total size of the results held in memory.
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return The number of results held in memory.
+     */
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    /**
+     * Drops every result held in memory. Results on disk are kept.
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+}
@@ -0,0 +1,521 @@
+package STL2GCODE.cli;
+
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.heightmap.HeightField;
+import STL2GCODE.heightmap.HeightMapReader;
+import STL2GCODE.heightmap.HeightMapUtil;
+import STL2GCODE.mesh.MeshImporter;
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.stl4j.MeshStatistics;
+import STL2GCODE.stl4j.ParseResult;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapFile;
+import STL2GCODE.util.DepthMapFilters;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless command line converter for many STL, OBJ, PLY and 3MF files, PGM, PNG
+ * or raw float32 height maps and stored {@link DepthMapFile depth maps}, at once.
+ *
+ * <pre>
+ * BatchConverter [options] &lt;file|directory|glob&gt;...
+ *   --out DIR        output directory (default: gcode)
+ *   --x-min MM       --x-max MM  --y-min MM  --y-max MM   pin layout window
+ *   --grid N         pins per side of the grid
+ *   --rotation DEG   rotation of every part about the Z axis
+ *   --threads N      number of conversion threads (default: number of cores)
+ *   --prefetch N     number of files read ahead of the converters (default: 1)
+ *   --mm-per-pixel MM    pixel size of height maps (default: 1)
+ *   --mm-per-unit MM     height of one height map sample unit (default: 1)
+ *   --resample bilinear|area   how height map pixels are sampled (default: area)
+ *   --raw WxH[:le|be]    size and byte order of .f32 and .raw height maps (default order: le)
+ *   --depth-maps DIR     also store every depth map as DIR/&lt;name&gt;.depthmap
+ *   --median R           median of the pins within R pins
+ *   --gaussian SIGMA     Gaussian smoothing with a standard deviation of SIGMA pins
+ *   --dilate R           raise pins to the highest pin within R pins
+ *   --erode R            lower pins to the lowest pin within R pins
+ *   --clamp MIN:MAX      limit the heights to the stroke of the actuators
+ *   --quantize MM        round the heights to the actuator step
+ * </pre>
+ *
+ * Height maps are sampled directly at the pins, without going through a mesh; the
+ * rotation does not apply to them. Raw float32 height maps have no header, so they
+ * are recognized by their extension and need {@code --raw}. The depth map filters run in the order listed
+ * above, before the depth map is stored or written as G-code. Stored depth maps are written as G-code with the
+ * layout they were stored with, so a known mold can be sent again without its mesh.
+ *
+ * Files are read in order by a single I/O thread that stays at most
+ * {@code --prefetch} files ahead of the conversion threads, so the next file's
+ * bytes are already in memory when a converter becomes free while the number of
+ * files held in memory stays bounded. Each part is written to its own
+ * {@code .gcode} file, and {@code summary.csv} in the output directory lists the
+ * outcome and timings of every file.
+ */
+public class BatchConverter {
+    private static final Logger LOGGER = Logger.getLogger(BatchConverter.class.getName());
+
+    /**
+     * Options of a batch run.
+     */
+    public static final class Options {
+        public final List<String> inputs = new ArrayList<>();
+        public Path outputDirectory = Paths.get("gcode");
+        public double xMin = PinLayout.DEFAULT.getXMin();
+        public double xMax = PinLayout.DEFAULT.getXMax();
+        public double yMin = PinLayout.DEFAULT.getYMin();
+        public double yMax = PinLayout.DEFAULT.getYMax();
+        public int gridSize = PinLayout.DEFAULT.getGridSize();
+        public double rotationDegrees = 0;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int prefetch = 1;
+        public double mmPerPixel = 1;
+        public double mmPerUnit = 1;
+        public HeightMapUtil.Resampling resampling = HeightMapUtil.Resampling.AREA;
+        public int rawColumns = 0;
+        public int rawRows = 0;
+        public ByteOrder rawOrder = ByteOrder.LITTLE_ENDIAN;
+        public Path depthMapDirectory = null;
+        public int medianRadius = 0;
+        public double gaussianSigma = 0;
+        public int dilateRadius = 0;
+        public int erodeRadius = 0;
+        public double clampMin = Double.NEGATIVE_INFINITY;
+        public double clampMax = Double.POSITIVE_INFINITY;
+        public double quantizeStep = 0;
+
+        public PinLayout getLayout() {
+            return new PinLayout(xMin, xMax, yMin, yMax, gridSize);
+        }
+    }
+
+    /**
+     * The outcome of converting a single file.
+     */
+    public static final class FileResult {
+        public final Path input;
+        public final Path output;
+        public boolean success = false;
+        public int triangles = 0;
+        public long bytes = 0;
+        public long readMillis = 0;
+        public long convertMillis = 0;
+        public long writeMillis = 0;
+        public String error = "";
+
+        FileResult(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        }
+        if (options.inputs.isEmpty()) {
+            printUsage();
+            System.exit(2);
+        }
+
+        try {
+            List<FileResult> results = run(options);
+            long failed = results.stream().filter(r -> !r.success).count();
+            System.out.println("Converted " + (results.size() - failed) + " of " + results.size()
+                    + " files, summary written to " + options.outputDirectory.resolve("summary.csv"));
+            System.exit(failed == 0 ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts every mesh file matched by the options and writes the summary report.
+     *
+     * @param options The options of the batch run.
+     * @return The outcome of every file, in input order.
+     * @throws IOException Thrown if the inputs cannot be listed or the output directory cannot be written.
+     * @throws InterruptedException Thrown if interrupted while waiting for the conversions.
+     */
+    public static List<FileResult> run(Options options) throws IOException, InterruptedException {
+        List<Path> files = resolveInputs(options.inputs);
+        Files.createDirectories(options.outputDirectory);
+        if (options.depthMapDirectory != null) {
+            Files.createDirectories(options.depthMapDirectory);
+        }
+        PinLayout layout = options.getLayout();
+        double rotation = Math.toRadians(options.rotationDegrees);
+
+        ExecutorService io = Executors.newSingleThreadExecutor(r -> new Thread(r, "stl-prefetch"));
+        ExecutorService cpu = Executors.newFixedThreadPool(Math.max(1, options.threads));
+        // files that are read but not yet converted, plus the ones being converted
+        Semaphore inMemory = new Semaphore(Math.max(1, options.threads) + Math.max(0, options.prefetch));
+
+        List<FileResult> results = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        Set<String> outputNames = new HashSet<>();
+        try {
+            for (Path file : files) {
+                FileResult result = new FileResult(file, options.outputDirectory.resolve(uniqueOutputName(file, outputNames)));
+                results.add(result);
+                inMemory.acquire();
+                CompletableFuture<Void> done = CompletableFuture
+                        .supplyAsync(() -> read(result), io)
+                        .thenAcceptAsync(bytes -> convert(result, bytes, layout, rotation, options), cpu)
+                        .whenComplete((v, ex) -> {
+                            inMemory.release();
+                            if (ex != null) {
+                                fail(result, ex.getCause() != null ? ex.getCause() : ex);
+                            }
+                        });
+                pending.add(done);
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null).join();
+        } finally {
+            io.shutdownNow();
+            cpu.shutdownNow();
+            io.awaitTermination(10, TimeUnit.SECONDS);
+            cpu.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        writeSummary(results, options.outputDirectory.resolve("summary.csv"));
+        return results;
+    }
+
+    /**
+     * Expands the input arguments into a sorted list of mesh files. Directories
+     * contribute the STL, OBJ, PLY, 3MF, PGM, PNG and depth map files they directly contain; arguments containing glob
+     * characters are matched against the files below their longest literal prefix.
+     *
+     * @param inputs Files, directories or glob patterns.
+     * @return The mesh files, without duplicates.
+     * @throws IOException Thrown if a directory cannot be listed.
+     * @throws IllegalArgumentException Thrown if an input does not exist.
+     */
+    public static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                String normalized = input.replace('\\', '/');
+                int firstGlob = firstGlobIndex(normalized);
+                int baseEnd = normalized.lastIndexOf('/', firstGlob);
+                Path base = baseEnd < 0 ? Paths.get(".") : Paths.get(normalized.substring(0, Math.max(1, baseEnd)));
+                String pattern = baseEnd < 0 ? normalized : normalized.substring(baseEnd + 1);
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                try (Stream<Path> walk = Files.walk(base)) {
+                    files.addAll(walk.filter(Files::isRegularFile)
+                            .filter(p -> matcher.matches(base.relativize(p)))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> list = Files.list(path)) {
+                        files.addAll(list.filter(Files::isRegularFile)
+                                .filter(BatchConverter::isMeshFile)
+                                .sorted()
+                                .collect(Collectors.toList()));
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path);
+                } else {
+                    throw new IllegalArgumentException("Input does not exist: " + input);
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Parses the command line.
+     *
+     * @param args The command line arguments.
+     * @return The options of the batch run.
+     * @throws IllegalArgumentException Thrown if an option is unknown or has an invalid value.
+     */
+    public static Options parseArguments(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                options.inputs.add(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--out": options.outputDirectory = Paths.get(value); break;
+                    case "--x-min": options.xMin = Double.parseDouble(value); break;
+                    case "--x-max": options.xMax = Double.parseDouble(value); break;
+                    case "--y-min": options.yMin = Double.parseDouble(value); break;
+                    case "--y-max": options.yMax = Double.parseDouble(value); break;
+                    case "--grid": options.gridSize = Integer.parseInt(value); break;
+                    case "--rotation": options.rotationDegrees = Double.parseDouble(value); break;
+                    case "--threads": options.threads = Integer.parseInt(value); break;
+                    case "--prefetch": options.prefetch = Integer.parseInt(value); break;
+                    case "--mm-per-pixel": options.mmPerPixel = Double.parseDouble(value); break;
+                    case "--mm-per-unit": options.mmPerUnit = Double.parseDouble(value); break;
+                    case "--resample": options.resampling = resampling(value); break;
+                    case "--raw": raw(options, value); break;
+                    case "--depth-maps": options.depthMapDirectory = Paths.get(value); break;
+                    case "--median": options.medianRadius = Integer.parseInt(value); break;
+                    case "--gaussian": options.gaussianSigma = Double.parseDouble(value); break;
+                    case "--dilate": options.dilateRadius = Integer.parseInt(value); break;
+                    case "--erode": options.erodeRadius = Integer.parseInt(value); break;
+                    case "--clamp": clamp(options, value); break;
+                    case "--quantize": options.quantizeStep = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+            }
+        }
+        // validates the ranges
+        options.getLayout();
+        return options;
+    }
+
+    private static byte[] read(FileResult result) {
+        long start = System.nanoTime();
+        try {
+            byte[] bytes = Files.readAllBytes(result.input);
+            result.bytes = bytes.length;
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            result.readMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+
+    private static HeightMapUtil.Resampling resampling(String value) {
+        try {
+            return HeightMapUtil.Resampling.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for --resample: " + value);
+        }
+    }
+
+    private static void raw(Options options, String value) {
+        int colon = value.indexOf(':');
+        String size = colon < 0 ? value : value.substring(0, colon);
+        String order = colon < 0 ? "le" : value.substring(colon + 1);
+        int x = size.indexOf('x');
+        if (x < 0 || !(order.equals("le") || order.equals("be"))) {
+            throw new IllegalArgumentException("Invalid value for --raw: " + value);
+        }
+        options.rawColumns = Integer.parseInt(size.substring(0, x));
+        options.rawRows = Integer.parseInt(size.substring(x + 1));
+        options.rawOrder = order.equals("le") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    private static void clamp(Options options, String value) {
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid value for --clamp: " + value);
+        }
+        options.clampMin = Double.parseDouble(value.substring(0, colon));
+        options.clampMax = Double.parseDouble(value.substring(colon + 1));
+    }
+
+    private static double[][] postProcess(double[][] depthMap, Options options) {
+        if (options.medianRadius <= 0 && options.gaussianSigma <= 0 && options.dilateRadius <= 0
+                && options.erodeRadius <= 0 && options.clampMin == Double.NEGATIVE_INFINITY
+                && options.clampMax == Double.POSITIVE_INFINITY && options.quantizeStep <= 0) {
+            return depthMap;
+        }
+        long start = MoldMetrics.POST_PROCESS_TIME.start();
+        int size = depthMap.length;
+        double[] map = DepthMapFilters.flatten(depthMap);
+        if (options.medianRadius > 0) {
+            DepthMapFilters.median(map, size, options.medianRadius);
+        }
+        if (options.gaussianSigma > 0) {
+            DepthMapFilters.gaussian(map, size, options.gaussianSigma);
+        }
+        if (options.dilateRadius > 0) {
+            DepthMapFilters.dilate(map, size, options.dilateRadius);
+        }
+        if (options.erodeRadius > 0) {
+            DepthMapFilters.erode(map, size, options.erodeRadius);
+        }
+        DepthMapFilters.clamp(map, options.clampMin, options.clampMax);
+        if (options.quantizeStep > 0) {
+            DepthMapFilters.quantize(map, options.quantizeStep);
+        }
+        MoldMetrics.POST_PROCESS_TIME.stop(start);
+        return DepthMapFilters.unflatten(map, size);
+    }
+
+    private static void convert(FileResult result, byte[] bytes, PinLayout layout, double rotation, Options options) {
+        if (DepthMapFile.isDepthMapFile(bytes)) {
+            resend(result, DepthMapFile.wrap(bytes));
+            return;
+        }
+        long start = System.nanoTime();
+        double[][] depthMap;
+        if (HeightMapReader.isRawFloat32(result.input)) {
+            if (options.rawColumns == 0) {
+                throw new IllegalArgumentException("Raw height maps need --raw WxH");
+            }
+            HeightField field = HeightMapReader.readRawFloat32(bytes, options.rawColumns, options.rawRows,
+                    options.rawOrder, options.mmPerPixel, options.mmPerUnit);
+            depthMap = HeightMapUtil.generateDepthMap(field, layout, options.resampling);
+        } else if (HeightMapReader.isHeightMap(bytes)) {
+            HeightField field = HeightMapReader.read(bytes, options.mmPerPixel, options.mmPerUnit);
+            depthMap = HeightMapUtil.generateDepthMap(field, layout, options.resampling);
+        } else {
+            ParseResult parsed = MeshImporter.parseMeshWithStatistics(bytes);
+            List<Triangle> triangles = parsed.getTriangles();
+            MeshStatistics statistics = parsed.getStatistics();
+            result.triangles = triangles.size();
+            if (!statistics.isHeaderConsistent()) {
+                LOGGER.log(Level.WARNING, "{0}: header announces {1} triangles, found {2}",
+                        new Object[]{result.input, statistics.getHeaderTriangleCount(), statistics.getTriangleCount()});
+            }
+            TriangleFilterUtil.applyMoldFilters(triangles, statistics, rotation);
+            depthMap = DepthMapUtil.generateDepthMap(triangles, layout);
+        }
+        depthMap = postProcess(depthMap, options);
+        List<Vec3d> pinHeights = DepthMapUtil.calculatePinHeights(depthMap, layout);
+        result.convertMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        try (Writer writer = Files.newBufferedWriter(result.output, StandardCharsets.US_ASCII)) {
+            GCodeWriter.writeGCode(pinHeights, writer);
+            if (options.depthMapDirectory != null) {
+                String name = result.output.getFileName().toString().replaceFirst("\\.gcode$", ".depthmap");
+                DepthMapFile.write(options.depthMapDirectory.resolve(name), depthMap, layout);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        result.writeMillis = (System.nanoTime() - start) / 1_000_000;
+        result.success = true;
+    }
+
+    private static void resend(FileResult result, DepthMapFile depthMap) {
+        long start = System.nanoTime();
+        try (Writer writer = Files.newBufferedWriter(result.output, StandardCharsets.US_ASCII)) {
+            GCodeWriter.writeGCode(depthMap, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        result.writeMillis = (System.nanoTime() - start) / 1_000_000;
+        result.success = true;
+    }
+
+    private static void fail(FileResult result, Throwable ex) {
+        result.success = false;
+        result.error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+        LOGGER.log(Level.WARNING, "Failed to convert " + result.input, ex);
+    }
+
+    private static void writeSummary(List<FileResult> results, Path summary) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(summary, StandardCharsets.UTF_8))) {
+            out.println("input,output,status,triangles,bytes,read_ms,convert_ms,write_ms,error");
+            long read = 0, convert = 0, write = 0;
+            for (FileResult r : results) {
+                out.println(csv(r.input.toString()) + "," + csv(r.output.toString()) + ","
+                        + (r.success ? "ok" : "failed") + "," + r.triangles + "," + r.bytes + ","
+                        + r.readMillis + "," + r.convertMillis + "," + r.writeMillis + "," + csv(r.error));
+                read += r.readMillis;
+                convert += r.convertMillis;
+                write += r.writeMillis;
+            }
+            out.println("total,,," + results.stream().mapToLong(r -> r.triangles).sum() + ","
+                    + results.stream().mapToLong(r -> r.bytes).sum() + "," + read + "," + convert + "," + write + ",");
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String uniqueOutputName(Path input, Set<String> used) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String candidate = base + ".gcode";
+        for (int i = 2; !used.add(candidate); i++) {
+            candidate = base + "-" + i + ".gcode";
+        }
+        return candidate;
+    }
+
+    private static boolean isMeshFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".stl") || name.endsWith(".obj") || name.endsWith(".ply") || name.endsWith(".3mf")
+                || name.endsWith(".pgm") || name.endsWith(".png") || name.endsWith(".depthmap")
+                || HeightMapReader.isRawFloat32(file);
+    }
+
+    private static boolean isGlob(String input) {
+        return firstGlobIndex(input) >= 0;
+    }
+
+    private static int firstGlobIndex(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchConverter [--out DIR] [--x-min MM] [--x-max MM] [--y-min MM] [--y-max MM]");
+        System.err.println("                      [--grid N] [--rotation DEG] [--threads N] [--prefetch N]");
+        System.err.println("                      [--mm-per-pixel MM] [--mm-per-unit MM] [--resample bilinear|area]");
+        System.err.println("                      [--raw WxH[:le|be]]");
+        System.err.println("                      [--depth-maps DIR] [--median R] [--gaussian SIGMA] [--dilate R]");
+        System.err.println("                      [--erode R] [--clamp MIN:MAX] [--quantize MM]");
+        System.err.println("                      <file|directory|glob>...");
+    }
+}
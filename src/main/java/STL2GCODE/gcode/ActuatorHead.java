@@ -0,0 +1,77 @@
+package STL2GCODE.gcode;
+
+/**
+ * Describes a tool head carrying a straight row of pin actuators along the X axis.
+ * Actuator {@code k} sits {@code k * pitch} millimetres to the right of actuator 0,
+ * and each actuator is driven by its own axis word in the G-code.
+ */
+public final class ActuatorHead {
+    /**
+     * The axis letters a grbl-like controller knows besides X, Y and Z. Further
+     * letters such as D, E, H, I, J, K, L, O, Q and R are tool offset, extruder, arc
+     * center and parameter words there, so wider heads have to name their axis words
+     * for the controller they are built for.
+     */
+    private static final String DEFAULT_AXIS_LETTERS = "UVWABC";
+
+    private final int actuatorCount;
+    private final double pitch;
+    private final String[] axisWords;
+
+    /**
+     * Creates a head whose actuators are driven by the default axis letters
+     * U, V, W, A, B and C, in that order. Heads with more than six actuators need
+     * explicit axis words, see {@link #ActuatorHead(double, String...)}.
+     *
+     * @param actuatorCount The number of actuators in the row.
+     * @param pitch The distance between neighbouring actuators in mm.
+     */
+    public ActuatorHead(int actuatorCount, double pitch) {
+        this(pitch, defaultAxisWords(actuatorCount));
+    }
+
+    /**
+     * @param pitch The distance between neighbouring actuators in mm.
+     * @param axisWords The axis word driving each actuator, from left to right.
+     */
+    public ActuatorHead(double pitch, String... axisWords) {
+        if (axisWords.length == 0) {
+            throw new IllegalArgumentException("A head needs at least one actuator.");
+        }
+        if (axisWords.length > 1 && !(pitch > 0)) {
+            throw new IllegalArgumentException("The actuator pitch must be positive.");
+        }
+        this.actuatorCount = axisWords.length;
+        this.pitch = pitch;
+        this.axisWords = axisWords.clone();
+    }
+
+    public int getActuatorCount() {
+        return actuatorCount;
+    }
+
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * @param actuator The index of the actuator, counted from the left.
+     * @return The axis word that drives the actuator.
+     */
+    public String getAxisWord(int actuator) {
+        return axisWords[actuator];
+    }
+
+    private static String[] defaultAxisWords(int actuatorCount) {
+        if (actuatorCount < 1 || actuatorCount > DEFAULT_AXIS_LETTERS.length()) {
+            throw new IllegalArgumentException("Default axis words exist for 1 to "
+                    + DEFAULT_AXIS_LETTERS.length() + " actuators, got " + actuatorCount
+                    + "; give the axis words of wider heads explicitly");
+        }
+        String[] words = new String[actuatorCount];
+        for (int i = 0; i < actuatorCount; i++) {
+            words[i] = String.valueOf(DEFAULT_AXIS_LETTERS.charAt(i));
+        }
+        return words;
+    }
+}
@@ -1,9 +1,16 @@
 package STL2GCODE.gcode;
 
+import STL2GCODE.metrics.CountingWriter;
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
 import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapFile;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 public class GCodeWriter {
@@ -15,43 +22,86 @@ public class GCodeWriter {
      * @param fileName The name of the output file.
      */
     public static void writeGCode(List<Vec3d> pinHeights, String fileName) {
-        try {
-            FileWriter writer = null;
-            try {
-                writer = new FileWriter(fileName);
-            } catch (IOException e) {
-                System.out.println("Error initializing file writer");
-            }
-
-            writer.write("G28 X Y\n");
+        try (FileWriter writer = new FileWriter(fileName)) {
+            writeGCode(pinHeights, writer);
+        } catch (IOException e) {
+            System.out.println("Error writing G-code file");
+        }
+    }
 
-            double sum = 0;
-            int count = 0;
+    /**
+     * Writes G-code for an adaptable molding machine based on a list of pin heights
+     * to an arbitrary writer. The writer is not closed.
+     *
+     * @param pinHeights A list of Vec3d objects representing the X, Y, and Z coordinates of each pin.
+     * @param writer The destination of the G-code.
+     * @throws IOException Thrown if the writer fails.
+     */
+    public static void writeGCode(List<Vec3d> pinHeights, Writer writer) throws IOException {
+        long start = MoldMetrics.GCODE_TIME.start();
+        StageEvent event = StageEvent.begin("gcode");
+        CountingWriter counter = new CountingWriter(writer);
+        writer = counter;
+        writeHeader(writer);
 
-            for (Vec3d pin: pinHeights) {
-                if (pin.z != 0) {
-                    count++;
-                    sum += pin.z;
-                }
+        double[] target = DepthMapUtil.targetHeights(pinHeights.size(), i -> pinHeights.get(i).z);
+        for (int i = 0; i < target.length; i++) {
+            if (!Double.isNaN(target[i])) {
+                Vec3d pin = pinHeights.get(i);
+                writePinMove(writer, pin.x, pin.y, target[i]);
             }
+        }
+        writer.flush();
+        MoldMetrics.GCODE_BYTES_WRITTEN.add(counter.getCount());
+        event.end(pinHeights.size(), counter.getCount());
+        MoldMetrics.GCODE_TIME.stop(start);
+    }
 
-            double avg = sum / count;
+    /**
+     * Writes G-code for a stored depth map, with the same output as
+     * {@code writeGCode(DepthMapUtil.calculatePinHeights(depthMap, layout), writer)}
+     * for the depth map in the file. The heights are read straight from the mapped
+     * file, without building a list of pins.
+     *
+     * @param depthMap The depth map file.
+     * @param writer The destination of the G-code.
+     * @throws IOException Thrown if the writer fails.
+     */
+    public static void writeGCode(DepthMapFile depthMap, Writer writer) throws IOException {
+        long start = MoldMetrics.GCODE_TIME.start();
+        StageEvent event = StageEvent.begin("gcode");
+        CountingWriter counter = new CountingWriter(writer);
+        writer = counter;
+        writeHeader(writer);
+        PinLayout layout = depthMap.getLayout();
+        int size = layout.getGridSize();
 
-            for (Vec3d pin : pinHeights) {
-                if (pin.z == -1) {
-                    writer.write("G0 X" + pin.x + " Y" + pin.y + "\n");
-                    writer.write("G0 Z" + avg + "\n");
-                    writer.write("G0 Z0\n");
-                }
-                else if (pin.z != 0) {
-                    writer.write("G0 X" + pin.x + " Y" + pin.y + "\n");
-                    writer.write("G0 Z" + pin.z + "\n");
-                    writer.write("G0 Z0\n");
+        double[] target = DepthMapUtil.targetHeights(size * size, pin -> depthMap.get(pin / size, pin % size));
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                double z = target[row * size + col];
+                if (!Double.isNaN(z)) {
+                    writePinMove(writer, layout.getX(col), layout.getY(row), z);
                 }
             }
-            writer.close();
-        } catch (IOException e) {
-            System.out.println("Error writing G-code file");
         }
+        writer.flush();
+        MoldMetrics.GCODE_BYTES_WRITTEN.add(counter.getCount());
+        event.end((long) size * size, counter.getCount());
+        MoldMetrics.GCODE_TIME.stop(start);
+    }
+
+    static void writeHeader(Writer writer) throws IOException {
+        writer.write("G28 X Y\n");
+    }
+
+    /**
+     * Writes the three moves that set a single pin: position over the pin,
+     * push it to the given height and retract.
+     */
+    static void writePinMove(Writer writer, double x, double y, double z) throws IOException {
+        writer.write("G0 X" + x + " Y" + y + "\n");
+        writer.write("G0 Z" + z + "\n");
+        writer.write("G0 Z0\n");
     }
 }
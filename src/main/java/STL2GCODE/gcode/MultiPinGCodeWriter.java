@@ -0,0 +1,203 @@
+package STL2GCODE.gcode;
+
+import STL2GCODE.metrics.CountingWriter;
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.stl4j.Vec3d;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Writes G-code for a tool head that sets several pins of a row at once, see
+ * {@link ActuatorHead}. Each batch of pins becomes one positioning move, one move
+ * pushing every actuator of the batch to its pin height and one retracting them.
+ *
+ * Batches are planned per row of pins. The actuators of the head line up with every
+ * {@code pitch / xStep}-th pin of the row, so the pins of a row split into independent
+ * classes by column modulo that stride. Within a class, placing the head at the
+ * leftmost pin not yet covered is an optimal interval cover, which gives the minimum
+ * number of strokes for the whole bed.
+ */
+public class MultiPinGCodeWriter {
+    private static final double GRID_TOLERANCE = 1e-6;
+
+    /**
+     * A single stroke of the head.
+     */
+    public static final class Batch {
+        private final double x;
+        private final double y;
+        private final double[] heights;
+
+        Batch(double x, double y, double[] heights) {
+            this.x = x;
+            this.y = y;
+            this.heights = heights;
+        }
+
+        /**
+         * @return The X coordinate of the leftmost actuator.
+         */
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        /**
+         * @return The height for each actuator, or NaN for actuators that stay retracted.
+         */
+        public double[] getHeights() {
+            return heights.clone();
+        }
+    }
+
+    /**
+     * Writes multi-pin G-code to a file.
+     *
+     * @param pinHeights A list of Vec3d objects representing the X, Y, and Z coordinates of each pin.
+     * @param head The geometry of the tool head.
+     * @param fileName The name of the output file.
+     */
+    public static void writeGCode(List<Vec3d> pinHeights, ActuatorHead head, String fileName) {
+        try (FileWriter writer = new FileWriter(fileName)) {
+            writeGCode(pinHeights, head, writer);
+        } catch (IOException e) {
+            System.out.println("Error writing G-code file");
+        }
+    }
+
+    /**
+     * Writes multi-pin G-code to a writer. The writer is not closed.
+     *
+     * @param pinHeights A list of Vec3d objects representing the X, Y, and Z coordinates of each pin.
+     * @param head The geometry of the tool head.
+     * @param writer The destination of the G-code.
+     * @throws IOException Thrown if the writer fails.
+     */
+    public static void writeGCode(List<Vec3d> pinHeights, ActuatorHead head, Writer writer) throws IOException {
+        long start = MoldMetrics.GCODE_TIME.start();
+        StageEvent event = StageEvent.begin("gcode");
+        CountingWriter counter = new CountingWriter(writer);
+        writer = counter;
+        GCodeWriter.writeHeader(writer);
+        for (Batch batch : planBatches(pinHeights, head)) {
+            StringBuilder push = new StringBuilder("G0");
+            StringBuilder retract = new StringBuilder("G0");
+            for (int k = 0; k < batch.heights.length; k++) {
+                if (!Double.isNaN(batch.heights[k])) {
+                    push.append(' ').append(head.getAxisWord(k)).append(batch.heights[k]);
+                    retract.append(' ').append(head.getAxisWord(k)).append('0');
+                }
+            }
+            writer.write("G0 X" + batch.x + " Y" + batch.y + "\n");
+            writer.write(push + "\n");
+            writer.write(retract + "\n");
+        }
+        writer.flush();
+        MoldMetrics.GCODE_BYTES_WRITTEN.add(counter.getCount());
+        event.end(pinHeights.size(), counter.getCount());
+        MoldMetrics.GCODE_TIME.stop(start);
+    }
+
+    /**
+     * Groups the pins that need to be set into the smallest number of head strokes.
+     * Pins at height 0 are skipped and pins without a depth (-1) are set to the average
+     * height, exactly as {@link GCodeWriter} does. Rows are visited in increasing Y and
+     * alternate direction to keep travel moves short.
+     *
+     * @param pinHeights The pins of a regular grid, as produced by
+     *                   {@link STL2GCODE.util.DepthMapUtil#calculatePinHeights}.
+     * @param head The geometry of the tool head.
+     * @return The batches in the order they should be executed.
+     * @throws IllegalArgumentException Thrown if the pins do not lie on a regular grid
+     * or the actuator pitch is not a multiple of the pin spacing.
+     */
+    public static List<Batch> planBatches(List<Vec3d> pinHeights, ActuatorHead head) {
+        double sum = 0;
+        int count = 0;
+        for (Vec3d pin : pinHeights) {
+            if (pin.z != 0) {
+                count++;
+                sum += pin.z;
+            }
+        }
+        double avg = sum / count;
+
+        double[] columns = pinHeights.stream().mapToDouble(p -> p.x).sorted().distinct().toArray();
+        int stride = columnStride(columns, head);
+
+        // row y -> column index -> height
+        TreeMap<Double, TreeMap<Integer, Double>> rows = new TreeMap<>();
+        for (Vec3d pin : pinHeights) {
+            if (pin.z == 0) {
+                continue;
+            }
+            int col = Arrays.binarySearch(columns, pin.x);
+            rows.computeIfAbsent(pin.y, y -> new TreeMap<>()).put(col, pin.z == -1 ? avg : pin.z);
+        }
+
+        List<Batch> batches = new ArrayList<>();
+        boolean leftToRight = true;
+        for (var row : rows.entrySet()) {
+            List<Batch> rowBatches = new ArrayList<>();
+            for (int residue = 0; residue < stride; residue++) {
+                int start = -1;
+                double[] heights = null;
+                for (var pin : row.getValue().entrySet()) {
+                    int col = pin.getKey();
+                    if (col % stride != residue) {
+                        continue;
+                    }
+                    if (start < 0 || col >= start + head.getActuatorCount() * stride) {
+                        if (heights != null) {
+                            rowBatches.add(new Batch(columns[start], row.getKey(), heights));
+                        }
+                        start = col;
+                        heights = new double[head.getActuatorCount()];
+                        Arrays.fill(heights, Double.NaN);
+                    }
+                    heights[(col - start) / stride] = pin.getValue();
+                }
+                if (heights != null) {
+                    rowBatches.add(new Batch(columns[start], row.getKey(), heights));
+                }
+            }
+            Comparator<Batch> byX = Comparator.comparingDouble(Batch::getX);
+            rowBatches.sort(leftToRight ? byX : byX.reversed());
+            batches.addAll(rowBatches);
+            leftToRight = !leftToRight;
+        }
+        return batches;
+    }
+
+    /**
+     * Works out how many pin columns lie between neighbouring actuators.
+     */
+    private static int columnStride(double[] columns, ActuatorHead head) {
+        if (columns.length < 2 || head.getActuatorCount() == 1) {
+            return 1;
+        }
+        double xStep = columns[1] - columns[0];
+        for (int i = 2; i < columns.length; i++) {
+            if (Math.abs(columns[i] - columns[i - 1] - xStep) > GRID_TOLERANCE * Math.max(1, xStep)) {
+                throw new IllegalArgumentException("Pins do not lie on a regular grid.");
+            }
+        }
+        long stride = Math.round(head.getPitch() / xStep);
+        if (stride < 1 || Math.abs(stride * xStep - head.getPitch()) > GRID_TOLERANCE * Math.max(1, head.getPitch())) {
+            throw new IllegalArgumentException("Actuator pitch " + head.getPitch()
+                    + " is not a multiple of the pin spacing " + xStep);
+        }
+        return (int) stride;
+    }
+}
@@ -0,0 +1,91 @@
+package STL2GCODE.gcode;
+
+import STL2GCODE.metrics.CountingWriter;
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.stl4j.Vec3d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incremental counterpart of {@link GCodeWriter#writeGCode(List, Writer)}.
+ * Pins are accepted one at a time, as they are computed, and their moves are
+ * written straight away so a downstream sender can start working before the
+ * depth map is complete.
+ *
+ * Pins without a depth (z == -1) are set to the average height of all other
+ * pins, which is only known once every pin has been seen. They are therefore
+ * held back and written when the writer is closed. The final pin state is the
+ * same as the one produced by {@link GCodeWriter}, only the order of the moves
+ * differs.
+ */
+public class StreamingGCodeWriter implements Consumer<Vec3d>, Closeable {
+    private final CountingWriter writer;
+    private final List<Vec3d> unresolved = new ArrayList<>();
+    private boolean headerWritten = false;
+    private double sum = 0;
+    private int count = 0;
+
+    /**
+     * @param writer The destination of the G-code. It is closed together with this writer.
+     */
+    public StreamingGCodeWriter(Writer writer) {
+        this.writer = new CountingWriter(writer);
+    }
+
+    /**
+     * Writes the moves for a single pin, or holds it back if it has no depth.
+     *
+     * @param pin The X, Y and Z coordinates of the pin.
+     * @throws UncheckedIOException Thrown if the underlying writer fails.
+     */
+    @Override
+    public void accept(Vec3d pin) {
+        try {
+            if (!headerWritten) {
+                GCodeWriter.writeHeader(writer);
+                headerWritten = true;
+            }
+            if (pin.z != 0) {
+                count++;
+                sum += pin.z;
+            }
+            if (pin.z == -1) {
+                unresolved.add(pin);
+            } else if (pin.z != 0) {
+                GCodeWriter.writePinMove(writer, pin.x, pin.y, pin.z);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the held back pins at the average height and closes the underlying writer.
+     *
+     * @throws IOException Thrown if the underlying writer fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!headerWritten) {
+                GCodeWriter.writeHeader(writer);
+                headerWritten = true;
+            }
+            double avg = sum / count;
+            for (Vec3d pin : unresolved) {
+                GCodeWriter.writePinMove(writer, pin.x, pin.y, avg);
+            }
+            unresolved.clear();
+        } finally {
+            MoldMetrics.GCODE_BYTES_WRITTEN.add(writer.getCount());
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package STL2GCODE.gcode.stream;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams G-code lines to a controller without waiting for the acknowledgement of
+ * each line before sending the next one.
+ *
+ * The sender uses character-counting flow control: it keeps track of how many
+ * characters of every unacknowledged line are sitting in the controller's receive
+ * buffer and sends the next line as soon as it fits. Every {@code ok} or
+ * {@code error} response releases the oldest line in flight. The number of lines
+ * in flight is additionally capped, and lines waiting to be sent are held in a
+ * bounded queue so a producer computing pins is slowed down rather than buffering
+ * the whole program in memory.
+ *
+ * Typical use together with {@link STL2GCODE.gcode.StreamingGCodeWriter}:
+ * <pre>
+ * GCodeSender sender = new GCodeSender(port.getInputStream(), port.getOutputStream());
+ * sender.start();
+ * try (StreamingGCodeWriter gcode = new StreamingGCodeWriter(sender.writer())) {
+ *     DepthMapUtil.streamPinHeights(triangles, xMin, xMax, yMin, yMax, gcode);
+ * }
+ * sender.awaitCompletion();
+ * </pre>
+ */
+public class GCodeSender implements Closeable {
+    /**
+     * Size of the serial receive buffer of a stock grbl controller.
+     */
+    public static final int DEFAULT_RX_BUFFER_SIZE = 128;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private static final Logger LOGGER = Logger.getLogger(GCodeSender.class.getName());
+    // queued after the last line; compared by identity, so no line of G-code can be mistaken for it
+    private static final Object END_OF_PROGRAM = new Object();
+
+    private final BufferedReader fromController;
+    private final OutputStream toController;
+    private final int rxBufferSize;
+    private final int maxInFlight;
+    private final BlockingQueue<Object> pending;
+
+    // held by producers while they check for the end of the program and queue a line, so no
+    // line can be queued behind END_OF_PROGRAM; never taken by the sender or reader threads
+    private final Object producerLock = new Object();
+    private boolean finished = false;
+
+    private final Object lock = new Object();
+    private final Deque<Integer> inFlight = new ArrayDeque<>();
+    private int inFlightChars = 0;
+    private boolean senderDone = false;
+    private volatile boolean closed = false;
+    private IOException failure = null;
+    private long linesSent = 0;
+    private long linesAcknowledged = 0;
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    private Thread senderThread;
+    private Thread readerThread;
+
+    /**
+     * Creates a sender for a grbl-like controller with the default buffer sizes.
+     *
+     * @param fromController The stream of responses coming from the controller.
+     * @param toController The stream of commands going to the controller.
+     */
+    public GCodeSender(InputStream fromController, OutputStream toController) {
+        this(fromController, toController, DEFAULT_RX_BUFFER_SIZE, DEFAULT_MAX_IN_FLIGHT, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param fromController The stream of responses coming from the controller.
+     * @param toController The stream of commands going to the controller.
+     * @param rxBufferSize The size of the controller's receive buffer in characters.
+     * @param maxInFlight The maximum number of unacknowledged lines.
+     * @param queueCapacity The number of lines that may wait to be sent before producers block.
+     */
+    public GCodeSender(InputStream fromController, OutputStream toController, int rxBufferSize, int maxInFlight, int queueCapacity) {
+        if (rxBufferSize < 2 || maxInFlight < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Buffer sizes must be positive.");
+        }
+        this.fromController = new BufferedReader(new InputStreamReader(fromController, StandardCharsets.US_ASCII));
+        this.toController = toController;
+        this.rxBufferSize = rxBufferSize;
+        this.maxInFlight = maxInFlight;
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Starts the sending and response reading threads.
+     */
+    public synchronized void start() {
+        if (senderThread != null) {
+            throw new IllegalStateException("The sender has already been started.");
+        }
+        senderThread = new Thread(this::sendLoop, "gcode-sender");
+        readerThread = new Thread(this::readLoop, "gcode-response-reader");
+        senderThread.setDaemon(true);
+        readerThread.setDaemon(true);
+        readerThread.start();
+        senderThread.start();
+    }
+
+    /**
+     * Queues a single line for sending. Comments and surrounding whitespace are
+     * stripped and empty lines are ignored. Blocks while the send queue is full.
+     * Several threads may send; their lines are queued in the order the calls acquire
+     * the queue.
+     *
+     * @param line A line of G-code without the line terminator.
+     * @throws IOException Thrown if the connection to the controller has failed.
+     * @throws InterruptedException Thrown if interrupted while waiting for queue space.
+     * @throws IllegalStateException Thrown if the program has already been finished.
+     */
+    public void send(String line) throws IOException, InterruptedException {
+        int comment = line.indexOf(';');
+        if (comment >= 0) {
+            line = line.substring(0, comment);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+            return;
+        }
+        if (line.length() + 1 > rxBufferSize) {
+            throw new IllegalArgumentException("Line does not fit into the controller buffer: " + line);
+        }
+        synchronized (producerLock) {
+            if (finished) {
+                throw new IllegalStateException("The program has already been finished.");
+            }
+            enqueue(line);
+        }
+    }
+
+    /**
+     * Marks the end of the program. Lines sent afterwards are rejected; finishing
+     * again has no effect.
+     *
+     * @throws InterruptedException Thrown if interrupted while waiting for queue space.
+     */
+    public void finish() throws IOException, InterruptedException {
+        synchronized (producerLock) {
+            if (finished) {
+                return;
+            }
+            enqueue(END_OF_PROGRAM);
+            finished = true;
+        }
+    }
+
+    /**
+     * Returns a writer that splits everything written to it into lines and queues
+     * them for sending. Closing the writer finishes the program.
+     *
+     * @return A writer feeding this sender.
+     */
+    public Writer writer() {
+        return new LineWriter();
+    }
+
+    /**
+     * Waits until every queued line has been sent and acknowledged.
+     *
+     * @throws IOException Thrown if the connection failed before all lines were acknowledged.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     * @throws IllegalStateException Thrown if the sender has not been started.
+     */
+    public void awaitCompletion() throws IOException, InterruptedException {
+        Thread sender;
+        synchronized (this) {
+            sender = senderThread;
+        }
+        if (sender == null) {
+            throw new IllegalStateException("The sender has not been started.");
+        }
+        sender.join();
+        synchronized (lock) {
+            while (!inFlight.isEmpty() && failure == null) {
+                lock.wait();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public long getLinesSent() {
+        synchronized (lock) {
+            return linesSent;
+        }
+    }
+
+    public long getLinesAcknowledged() {
+        synchronized (lock) {
+            return linesAcknowledged;
+        }
+    }
+
+    /**
+     * @return The error responses received from the controller, in order.
+     */
+    public List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Stops both threads. Lines that have not been sent yet are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (senderThread != null) {
+            senderThread.interrupt();
+            readerThread.interrupt();
+        }
+    }
+
+    private void enqueue(Object item) throws IOException, InterruptedException {
+        while (!pending.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            synchronized (lock) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+    }
+
+    private void sendLoop() {
+        try {
+            while (true) {
+                Object item = pending.take();
+                if (item == END_OF_PROGRAM) {
+                    break;
+                }
+                String line = (String) item;
+                int length = line.length() + 1;
+                synchronized (lock) {
+                    while ((inFlightChars + length > rxBufferSize || inFlight.size() >= maxInFlight) && failure == null) {
+                        lock.wait();
+                    }
+                    if (failure != null) {
+                        return;
+                    }
+                    inFlight.addLast(length);
+                    inFlightChars += length;
+                    linesSent++;
+                }
+                toController.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+                toController.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new InterruptedIOException("Sender was interrupted"));
+        } finally {
+            synchronized (lock) {
+                senderDone = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void readLoop() {
+        try {
+            String response;
+            while ((response = fromController.readLine()) != null) {
+                response = response.trim();
+                boolean ok = response.equals("ok");
+                if (!ok && !response.startsWith("error")) {
+                    // status reports, alarms and the welcome banner do not release buffer space
+                    LOGGER.log(Level.FINE, "Controller: {0}", response);
+                    continue;
+                }
+                synchronized (lock) {
+                    Integer length = inFlight.pollFirst();
+                    if (length == null) {
+                        LOGGER.log(Level.WARNING, "Unexpected response from controller: {0}", response);
+                        continue;
+                    }
+                    inFlightChars -= length;
+                    linesAcknowledged++;
+                    if (!ok) {
+                        errors.add(response);
+                    }
+                    lock.notifyAll();
+                }
+            }
+            synchronized (lock) {
+                if (!inFlight.isEmpty() || !senderDone) {
+                    fail(new EOFException("Controller closed the connection with " + inFlight.size() + " lines in flight"));
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (lock) {
+            if (failure == null) {
+                failure = e;
+                // interrupting the threads on close is not a failure worth reporting
+                LOGGER.log(closed ? Level.FINE : Level.SEVERE, "G-code streaming failed", e);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private class LineWriter extends Writer {
+        private final StringBuilder line = new StringBuilder();
+        private boolean closed = false;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Writer is closed");
+            }
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if (c == '\n') {
+                    sendLine();
+                } else if (c != '\r') {
+                    line.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            // lines are queued as soon as they are complete
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            sendLine();
+            closed = true;
+            try {
+                finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while finishing the program");
+            }
+        }
+
+        private void sendLine() throws IOException {
+            try {
+                send(line.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while queueing G-code");
+            }
+            line.setLength(0);
+        }
+    }
+}
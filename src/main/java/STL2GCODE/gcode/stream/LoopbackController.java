@@ -0,0 +1,171 @@
+package STL2GCODE.gcode.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-process stand-in for a serial connection to a grbl-like controller, so that
+ * {@link GCodeSender} can be exercised without hardware.
+ *
+ * Bytes written to {@link #getOutputStream()} land in a simulated receive buffer of
+ * fixed size. Complete lines are executed one at a time, each taking a configurable
+ * amount of time, after which their space in the buffer is released and {@code ok}
+ * is written to {@link #getInputStream()}. Writing more than the buffer can hold is
+ * recorded as an overflow instead of blocking, which is what a real controller would
+ * silently do by dropping characters.
+ */
+public class LoopbackController implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(LoopbackController.class.getName());
+
+    private final int rxBufferSize;
+    private final long commandTimeMillis;
+
+    private final PipedOutputStream hostOut = new PipedOutputStream();
+    private final PipedInputStream controllerIn;
+    private final PipedOutputStream controllerOut = new PipedOutputStream();
+    private final PipedInputStream hostIn;
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    private final Object bufferLock = new Object();
+    private int rxUsed = 0;
+    private int peakRxUsed = 0;
+    private volatile boolean overflowed = false;
+
+    private final Thread receiver;
+    private final Thread executor;
+
+    /**
+     * Creates and starts a controller with a stock grbl receive buffer that executes
+     * commands instantly.
+     */
+    public LoopbackController() throws IOException {
+        this(GCodeSender.DEFAULT_RX_BUFFER_SIZE, 0);
+    }
+
+    /**
+     * Creates and starts a controller.
+     *
+     * @param rxBufferSize The size of the simulated receive buffer in characters.
+     * @param commandTimeMillis The time it takes to execute a single command.
+     */
+    public LoopbackController(int rxBufferSize, long commandTimeMillis) throws IOException {
+        this.rxBufferSize = rxBufferSize;
+        this.commandTimeMillis = commandTimeMillis;
+        // the pipes are larger than the simulated buffer so that overflows are observable
+        this.controllerIn = new PipedInputStream(hostOut, Math.max(1024, rxBufferSize * 4));
+        this.hostIn = new PipedInputStream(controllerOut, 1024);
+
+        receiver = new Thread(this::receiveLoop, "loopback-controller-rx");
+        executor = new Thread(this::executeLoop, "loopback-controller-exec");
+        receiver.setDaemon(true);
+        executor.setDaemon(true);
+        receiver.start();
+        executor.start();
+    }
+
+    /**
+     * @return The stream the host reads controller responses from.
+     */
+    public InputStream getInputStream() {
+        return hostIn;
+    }
+
+    /**
+     * @return The stream the host writes commands to.
+     */
+    public OutputStream getOutputStream() {
+        return hostOut;
+    }
+
+    /**
+     * @return The commands executed so far, in order.
+     */
+    public List<String> getExecutedLines() {
+        return new ArrayList<>(executed);
+    }
+
+    /**
+     * @return True if the host ever sent more characters than the receive buffer could hold.
+     */
+    public boolean hasOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * @return The highest number of characters held in the receive buffer at once.
+     */
+    public int getPeakBufferUsage() {
+        synchronized (bufferLock) {
+            return peakRxUsed;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        receiver.interrupt();
+        executor.interrupt();
+        hostOut.close();
+        controllerOut.close();
+    }
+
+    private void receiveLoop() {
+        StringBuilder line = new StringBuilder();
+        try {
+            int b;
+            while ((b = controllerIn.read()) != -1) {
+                synchronized (bufferLock) {
+                    rxUsed++;
+                    peakRxUsed = Math.max(peakRxUsed, rxUsed);
+                    if (rxUsed > rxBufferSize) {
+                        overflowed = true;
+                    }
+                }
+                if (b == '\n') {
+                    received.put(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+        } catch (IOException e) {
+            // the host side closed or its writing thread ended
+            LOGGER.log(Level.FINE, "Loopback receiver stopped", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void executeLoop() {
+        try {
+            while (true) {
+                String line = received.take();
+                if (commandTimeMillis > 0) {
+                    Thread.sleep(commandTimeMillis);
+                }
+                executed.add(line);
+                synchronized (bufferLock) {
+                    rxUsed -= line.length() + 1;
+                }
+                controllerOut.write("ok\n".getBytes(StandardCharsets.US_ASCII));
+                controllerOut.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Loopback executor stopped", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
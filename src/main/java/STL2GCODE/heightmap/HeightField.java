@@ -0,0 +1,73 @@
+package STL2GCODE.heightmap;
+
+/**
+ * A regular grid of heights in millimeters, such as a scanned height map. Pixels are
+ * stored row by row with the first row at the top of the image, which is the far
+ * (largest y) edge of the part. Pixel {@code (column, row)} covers
+ * x in {@code [column, column + 1] * mmPerPixel} and
+ * y in {@code [rows - row - 1, rows - row] * mmPerPixel}, so the part lies in the
+ * first quadrant with a corner at the origin like a mesh after
+ * {@link STL2GCODE.util.TriangleFilterUtil#translateToFirstQuadrant}.
+ * Pixels without data hold NaN.
+ */
+public final class HeightField {
+    private final int columns;
+    private final int rows;
+    private final float[] heights;
+    private final double mmPerPixel;
+
+    /**
+     * @param columns    The number of pixels per row.
+     * @param rows       The number of rows.
+     * @param heights    The heights in millimeters, {@code columns * rows} values row by row.
+     * @param mmPerPixel The size of a pixel in millimeters.
+     */
+    public HeightField(int columns, int rows, float[] heights, double mmPerPixel) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("A height field needs at least one pixel: " + columns + "x" + rows);
+        }
+        if ((long) columns * rows != heights.length) {
+            throw new IllegalArgumentException("Expected " + (long) columns * rows + " heights, got " + heights.length);
+        }
+        if (!(mmPerPixel > 0) || Double.isInfinite(mmPerPixel)) {
+            throw new IllegalArgumentException("mmPerPixel must be positive: " + mmPerPixel);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.heights = heights;
+        this.mmPerPixel = mmPerPixel;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getMmPerPixel() {
+        return mmPerPixel;
+    }
+
+    /**
+     * @return The height of a pixel in millimeters, or NaN if it has no data.
+     */
+    public float getHeight(int column, int row) {
+        return heights[row * columns + column];
+    }
+
+    /**
+     * @return The extent of the field along x in millimeters.
+     */
+    public double getWidthMm() {
+        return columns * mmPerPixel;
+    }
+
+    /**
+     * @return The extent of the field along y in millimeters.
+     */
+    public double getDepthMm() {
+        return rows * mmPerPixel;
+    }
+}
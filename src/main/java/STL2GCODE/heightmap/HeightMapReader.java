@@ -0,0 +1,254 @@
+package STL2GCODE.heightmap;
+
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads height maps: binary (P5) and ASCII (P2) PGM with 8 or 16 bit samples,
+ * grayscale PNG (and the other formats ImageIO reads) and raw float32 fields.
+ * Sample values are converted to millimeters with a mm-per-unit factor, and the
+ * pixel pitch is given in mm-per-pixel.
+ */
+public class HeightMapReader {
+
+    /**
+     * Determines whether content is a PGM or PNG height map.
+     *
+     * @param head The first bytes of the file.
+     * @return True if the content starts with a PGM or PNG signature.
+     */
+    public static boolean isHeightMap(byte[] head) {
+        return isPGM(head) || isPNG(head);
+    }
+
+    private static boolean isPGM(byte[] head) {
+        return head.length >= 3 && head[0] == 'P' && (head[1] == '5' || head[1] == '2') && Character.isWhitespace(head[2]);
+    }
+
+    private static boolean isPNG(byte[] head) {
+        return head.length >= 4 && (head[0] & 0xff) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G';
+    }
+
+    /**
+     * Reads a PGM or PNG height map file.
+     *
+     * @param file       The file.
+     * @param mmPerPixel The size of a pixel in millimeters.
+     * @param mmPerUnit  The height in millimeters of one unit of the sample values.
+     * @return The height field.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not a valid PGM or PNG image.
+     */
+    public static HeightField read(Path file, double mmPerPixel, double mmPerUnit) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in, mmPerPixel, mmPerUnit, Files.size(file));
+        }
+    }
+
+    /**
+     * Reads a PGM or PNG height map that has already been read into memory.
+     *
+     * @see #read(Path, double, double)
+     */
+    public static HeightField read(byte[] bytes, double mmPerPixel, double mmPerUnit) {
+        try {
+            return read(new ByteArrayInputStream(bytes), mmPerPixel, mmPerUnit, bytes.length);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Truncated height map", ex);
+        }
+    }
+
+    private static HeightField read(InputStream in, double mmPerPixel, double mmPerUnit, long length) throws IOException {
+        long start = MoldMetrics.PARSE_TIME.start();
+        StageEvent event = StageEvent.begin("parse");
+        BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+        buffered.mark(4);
+        byte[] head = buffered.readNBytes(4);
+        buffered.reset();
+        HeightField field;
+        if (isPGM(head)) {
+            field = readPGM(buffered, mmPerPixel, mmPerUnit);
+        } else if (isPNG(head)) {
+            field = readImage(buffered, mmPerPixel, mmPerUnit);
+        } else {
+            throw new IllegalArgumentException("Not a PGM or PNG height map");
+        }
+        long pixels = (long) field.getColumns() * field.getRows();
+        MoldMetrics.HEIGHT_MAP_BYTES_READ.add(length);
+        event.end(pixels, length);
+        MoldMetrics.PARSE_TIME.stop(start);
+        return field;
+    }
+
+    private static HeightField readPGM(InputStream in, double mmPerPixel, double mmPerUnit) throws IOException {
+        boolean binary = readToken(in).equals("P5");
+        int columns = Integer.parseInt(readToken(in));
+        int rows = Integer.parseInt(readToken(in));
+        int maxValue = Integer.parseInt(readToken(in));
+        if (columns < 1 || rows < 1 || maxValue < 1 || maxValue > 65535) {
+            throw new IllegalArgumentException("Invalid PGM header: " + columns + "x" + rows + ", maximum " + maxValue);
+        }
+        float[] heights = new float[Math.multiplyExact(columns, rows)];
+        if (binary) {
+            // a single whitespace character separates the header from the samples
+            int bytesPerSample = maxValue < 256 ? 1 : 2;
+            byte[] row = new byte[columns * bytesPerSample];
+            for (int r = 0; r < rows; r++) {
+                if (in.readNBytes(row, 0, row.length) < row.length) {
+                    throw new EOFException("The PGM file ends at row " + r + " of " + rows);
+                }
+                for (int c = 0; c < columns; c++) {
+                    // 16 bit samples are big endian
+                    int sample = bytesPerSample == 1 ? row[c] & 0xff : (row[2 * c] & 0xff) << 8 | row[2 * c + 1] & 0xff;
+                    heights[r * columns + c] = (float) (sample * mmPerUnit);
+                }
+            }
+        } else {
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = (float) (Integer.parseInt(readToken(in)) * mmPerUnit);
+            }
+        }
+        return new HeightField(columns, rows, heights, mmPerPixel);
+    }
+
+    /**
+     * Reads the next whitespace separated token of a PGM header, skipping comments,
+     * and consumes the single whitespace character after it.
+     */
+    private static String readToken(InputStream in) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int b;
+        while (true) {
+            b = in.read();
+            if (b < 0) {
+                if (token.length() > 0) {
+                    return token.toString();
+                }
+                throw new EOFException("The PGM header is incomplete");
+            }
+            if (b == '#' && token.length() == 0) {
+                while (b != '\n' && b != '\r' && b >= 0) {
+                    b = in.read();
+                }
+            } else if (Character.isWhitespace(b)) {
+                if (token.length() > 0) {
+                    return token.toString();
+                }
+            } else {
+                token.append((char) b);
+            }
+        }
+    }
+
+    private static HeightField readImage(InputStream in, double mmPerPixel, double mmPerUnit) throws IOException {
+        BufferedImage image = ImageIO.read(in);
+        if (image == null) {
+            throw new IllegalArgumentException("The image format is not supported");
+        }
+        // grayscale images have one band; for color images the first band is used
+        Raster raster = image.getRaster();
+        int columns = raster.getWidth();
+        int rows = raster.getHeight();
+        float[] heights = new float[Math.multiplyExact(columns, rows)];
+        int[] row = new int[columns];
+        for (int r = 0; r < rows; r++) {
+            raster.getSamples(0, r, columns, 1, 0, row);
+            for (int c = 0; c < columns; c++) {
+                heights[r * columns + c] = (float) (row[c] * mmPerUnit);
+            }
+        }
+        return new HeightField(columns, rows, heights, mmPerPixel);
+    }
+
+    /**
+     * Determines from its name whether a file is a raw float32 height field, which
+     * has no signature to recognize it by.
+     *
+     * @param file The file.
+     * @return True if the file name ends in {@code .f32} or {@code .raw}.
+     */
+    public static boolean isRawFloat32(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".f32") || name.endsWith(".raw");
+    }
+
+    /**
+     * Reads a raw field of 32 bit floats without header, row by row with the first
+     * row at the top. NaN samples are kept as pixels without data.
+     *
+     * @param file       The file, exactly {@code columns * rows * 4} bytes long.
+     * @param columns    The number of samples per row.
+     * @param rows       The number of rows.
+     * @param order      The byte order of the samples.
+     * @param mmPerPixel The size of a pixel in millimeters.
+     * @param mmPerUnit  The height in millimeters of a sample value of 1.
+     * @return The height field.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file length does not match the dimensions.
+     */
+    public static HeightField readRawFloat32(Path file, int columns, int rows, ByteOrder order,
+                                             double mmPerPixel, double mmPerUnit) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = checkRawLength(channel.size(), columns, rows);
+            FloatBuffer samples = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(order).asFloatBuffer();
+            return readRawFloat32(samples, columns, rows, mmPerPixel, mmPerUnit);
+        }
+    }
+
+    /**
+     * Reads a raw float32 height field that has already been read into memory.
+     *
+     * @see #readRawFloat32(Path, int, int, ByteOrder, double, double)
+     */
+    public static HeightField readRawFloat32(byte[] bytes, int columns, int rows, ByteOrder order,
+                                             double mmPerPixel, double mmPerUnit) {
+        checkRawLength(bytes.length, columns, rows);
+        return readRawFloat32(ByteBuffer.wrap(bytes).order(order).asFloatBuffer(), columns, rows, mmPerPixel, mmPerUnit);
+    }
+
+    private static long checkRawLength(long length, int columns, int rows) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("Invalid raw height map size: " + columns + "x" + rows);
+        }
+        long expected = (long) columns * rows * Float.BYTES;
+        if (length != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " bytes for " + columns + "x" + rows
+                    + " float32 samples, the file has " + length);
+        }
+        return expected;
+    }
+
+    private static HeightField readRawFloat32(FloatBuffer samples, int columns, int rows,
+                                              double mmPerPixel, double mmPerUnit) {
+        long start = MoldMetrics.PARSE_TIME.start();
+        StageEvent event = StageEvent.begin("parse");
+        float[] heights = new float[Math.multiplyExact(columns, rows)];
+        samples.get(heights);
+        if (mmPerUnit != 1) {
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = (float) (heights[i] * mmPerUnit);
+            }
+        }
+        MoldMetrics.HEIGHT_MAP_BYTES_READ.add((long) heights.length * Float.BYTES);
+        event.end(heights.length, (long) heights.length * Float.BYTES);
+        MoldMetrics.PARSE_TIME.stop(start);
+        return new HeightField(columns, rows, heights, mmPerPixel);
+    }
+}
@@ -0,0 +1,138 @@
+package STL2GCODE.heightmap;
+
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+
+/**
+ * Samples a {@link HeightField} at the pins of a layout, producing the same kind of
+ * depth map as {@link DepthMapUtil#generateDepthMap(java.util.List, PinLayout)}:
+ * {@code depthMap[i][j]} is the height at x = {@code layout.getX(i)},
+ * y = {@code layout.getY(j)}, and -1 where the pin is outside the field or only
+ * sees pixels without data.
+ */
+public class HeightMapUtil {
+
+    /**
+     * How the pixels around a pin are combined into its height.
+     */
+    public enum Resampling {
+        /**
+         * Interpolates between the four pixels around the pin. Best when the pins are
+         * closer together than a few pixels.
+         */
+        BILINEAR,
+        /**
+         * Averages the pixels under the pin's cell of the layout, weighted by overlap.
+         * Avoids aliasing when the field has many pixels per pin.
+         */
+        AREA
+    }
+
+    /**
+     * Generates a depth map from a height field for the given pin layout.
+     *
+     * @param field      The height field.
+     * @param layout     The XY window and number of pins of the depth map.
+     * @param resampling How pixels are combined into pin heights.
+     * @return A 2D double array representing the depth map.
+     */
+    public static double[][] generateDepthMap(HeightField field, PinLayout layout, Resampling resampling) {
+        long start = MoldMetrics.DEPTH_MAP_TIME.start();
+        StageEvent event = StageEvent.begin("depthMap");
+        int size = layout.getGridSize();
+        double[][] depthMap = new double[size][size];
+        double halfX = Math.abs(layout.getXStep()) / 2;
+        double halfY = Math.abs(layout.getYStep()) / 2;
+        int misses = 0;
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double x = layout.getX(i);
+                double y = layout.getY(j);
+                double z;
+                if (x < 0 || y < 0 || x > field.getWidthMm() || y > field.getDepthMm()) {
+                    z = -1;
+                } else if (resampling == Resampling.BILINEAR) {
+                    z = bilinear(field, x, y);
+                } else {
+                    z = area(field, x - halfX, y - halfY, x + halfX, y + halfY);
+                }
+                depthMap[i][j] = z;
+                if (z == -1) {
+                    misses++;
+                }
+            }
+        }
+
+        DepthMapUtil.recordPinQueries(size * size, misses);
+        event.end(size * size, 0);
+        MoldMetrics.DEPTH_MAP_TIME.stop(start);
+        return depthMap;
+    }
+
+    private static double bilinear(HeightField field, double x, double y) {
+        double pixel = field.getMmPerPixel();
+        // continuous pixel coordinates with pixel centers at whole numbers
+        double column = clamp(x / pixel - 0.5, field.getColumns() - 1);
+        double row = clamp(field.getRows() - y / pixel - 0.5, field.getRows() - 1);
+        int c0 = (int) column;
+        int r0 = (int) row;
+        int c1 = Math.min(c0 + 1, field.getColumns() - 1);
+        int r1 = Math.min(r0 + 1, field.getRows() - 1);
+        double tc = column - c0;
+        double tr = row - r0;
+
+        double sum = 0;
+        double weight = 0;
+        for (int k = 0; k < 4; k++) {
+            boolean right = (k & 1) != 0;
+            boolean below = k >= 2;
+            double w = (right ? tc : 1 - tc) * (below ? tr : 1 - tr);
+            float h = field.getHeight(right ? c1 : c0, below ? r1 : r0);
+            if (w > 0 && !Float.isNaN(h)) {
+                sum += h * w;
+                weight += w;
+            }
+        }
+        if (weight == 0) {
+            // the pin sits exactly on a pixel without data, or all its neighbours lack data
+            float h = field.getHeight((int) Math.round(column), (int) Math.round(row));
+            return Float.isNaN(h) ? -1 : h;
+        }
+        return sum / weight;
+    }
+
+    private static double clamp(double value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private static double area(HeightField field, double x0, double y0, double x1, double y1) {
+        double pixel = field.getMmPerPixel();
+        int rows = field.getRows();
+        // the rectangle in continuous pixel coordinates, pixel c covering [c, c + 1]
+        double left = Math.max(0, x0 / pixel);
+        double right = Math.min(field.getColumns(), x1 / pixel);
+        double top = Math.max(0, rows - y1 / pixel);
+        double bottom = Math.min(rows, rows - y0 / pixel);
+
+        double sum = 0;
+        double weight = 0;
+        int lastColumn = Math.min(field.getColumns() - 1, (int) Math.ceil(right) - 1);
+        int lastRow = Math.min(rows - 1, (int) Math.ceil(bottom) - 1);
+        for (int r = (int) top; r <= lastRow; r++) {
+            double rowWeight = Math.min(bottom, r + 1) - Math.max(top, r);
+            for (int c = (int) left; c <= lastColumn; c++) {
+                float h = field.getHeight(c, r);
+                if (Float.isNaN(h)) {
+                    continue;
+                }
+                double w = rowWeight * (Math.min(right, c + 1) - Math.max(left, c));
+                sum += h * w;
+                weight += w;
+            }
+        }
+        return weight > 0 ? sum / weight : -1;
+    }
+}
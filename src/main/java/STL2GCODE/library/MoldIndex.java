@@ -0,0 +1,437 @@
+package STL2GCODE.library;
+
+import STL2GCODE.scheduler.FleetScheduler;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapFile;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An index over a library of molds that finds the stored molds closest to a new
+ * one, so that a job can start from the bed setup that needs the least actuation.
+ *
+ * Pin heights follow {@link DepthMapUtil#targetHeights}, the same definition the
+ * G-code and the {@link FleetScheduler} use: pins without data are set to the
+ * average height, and pins at height 0 are not moved. A stored mold is keyed by the
+ * heights of a bed that was set to it from rest, with the pins it does not move at
+ * 0. The distance of a stored mold to a new one is the total travel of the pins the
+ * new mold moves, and a pin counts as changed as in
+ * {@link FleetScheduler#isChanged(double, double, double)}, so the index and the
+ * scheduler agree on the cost of going from one mold to the other. Molds are only
+ * compared with molds of the same pin layout.
+ *
+ * Each layout has a vantage point tree over its molds under the L1 distance of their
+ * keys, so a query only measures the distance to a small part of the library. Every
+ * mold also carries a signature of {@value #SIGNATURE_BLOCKS} by
+ * {@value #SIGNATURE_BLOCKS} block sums of its key. The L1 distance of two
+ * signatures never exceeds the distance of the keys, so molds in the leaves of the
+ * tree whose signature is already too far are skipped without touching their
+ * heights. The travel to a stored mold falls short of the L1 distance of the keys by
+ * at most the heights of the pins the new mold does not move, and the tree and
+ * signature bounds are widened by the largest such heights in the library, which
+ * keeps the search exact. Molds added after the tree was built are scanned until
+ * there are enough of them to rebuild it.
+ */
+public class MoldIndex {
+    private static final Logger LOGGER = Logger.getLogger(MoldIndex.class.getName());
+
+    public static final int SIGNATURE_BLOCKS = 8;
+    private static final int LEAF_SIZE = 8;
+    private static final String EXTENSION = ".depthmap";
+
+    private final double tolerance;
+    private final Map<PinLayout, Partition> partitions = new HashMap<>();
+
+    /**
+     * Creates an empty index that counts pins moving by at least
+     * {@link FleetScheduler#DEFAULT_TOLERANCE} as changed.
+     */
+    public MoldIndex() {
+        this(FleetScheduler.DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param tolerance The height difference in millimeters below which a pin does not count as changed in the results.
+     */
+    public MoldIndex(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Creates an index over the stored depth maps in a directory, see
+     * {@link DepthMapFile}. Each mold's id is its file name without the extension.
+     *
+     * @param directory The directory holding {@code .depthmap} files.
+     * @return The index.
+     * @throws IOException Thrown if the directory or a file cannot be read.
+     */
+    public static MoldIndex fromDirectory(Path directory) throws IOException {
+        MoldIndex index = new MoldIndex();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try (DepthMapFile depthMap = DepthMapFile.open(file)) {
+                index.add(name.substring(0, name.length() - EXTENSION.length()), depthMap.readAll(), depthMap.getLayout());
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Skipping " + file + ": " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds a mold given as its depth map.
+     *
+     * @param id       The id of the mold, returned with matches.
+     * @param depthMap The depth map.
+     * @param layout   The pin layout the depth map was generated for.
+     */
+    public void add(String id, double[][] depthMap, PinLayout layout) {
+        add(id, DepthMapUtil.calculatePinHeights(depthMap, layout), layout);
+    }
+
+    /**
+     * Adds a mold given as its pin heights.
+     *
+     * @param id         The id of the mold, returned with matches.
+     * @param pinHeights The pin heights, as returned by {@link DepthMapUtil#calculatePinHeights(double[][], PinLayout)}.
+     * @param layout     The pin layout.
+     */
+    public synchronized void add(String id, List<Vec3d> pinHeights, PinLayout layout) {
+        checkPinCount(pinHeights, layout);
+        double[] key = keyOf(targetHeightsOf(pinHeights));
+        partitions.computeIfAbsent(layout, l -> new Partition())
+                .add(new Entry(id, key, signatureOf(key, layout.getGridSize())));
+    }
+
+    /**
+     * @return The number of molds in the index.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Partition partition : partitions.values()) {
+            size += partition.entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * Finds the stored molds of the same layout with the least total pin travel to
+     * the given one.
+     *
+     * @param depthMap The depth map of the new mold.
+     * @param layout   The pin layout the depth map was generated for.
+     * @param k        The number of molds to return.
+     * @return Up to k molds, closest first.
+     */
+    public List<MoldMatch> nearest(double[][] depthMap, PinLayout layout, int k) {
+        return nearest(DepthMapUtil.calculatePinHeights(depthMap, layout), layout, k);
+    }
+
+    /**
+     * Finds the stored molds of the same layout with the least total pin travel to
+     * the given one.
+     *
+     * @param pinHeights The pin heights of the new mold.
+     * @param layout     The pin layout.
+     * @param k          The number of molds to return.
+     * @return Up to k molds, closest first.
+     */
+    public synchronized List<MoldMatch> nearest(List<Vec3d> pinHeights, PinLayout layout, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        checkPinCount(pinHeights, layout);
+        Partition partition = partitions.get(layout);
+        if (partition == null) {
+            return new ArrayList<>();
+        }
+        double[] target = targetHeightsOf(pinHeights);
+        double[] key = keyOf(target);
+        return partition.nearest(target, key, signatureOf(key, layout.getGridSize()), k, tolerance);
+    }
+
+    private static void checkPinCount(List<Vec3d> pinHeights, PinLayout layout) {
+        int pins = layout.getGridSize() * layout.getGridSize();
+        if (pinHeights.size() != pins) {
+            throw new IllegalArgumentException("Expected " + pins + " pins, got " + pinHeights.size());
+        }
+    }
+
+    private static double[] targetHeightsOf(List<Vec3d> pinHeights) {
+        return DepthMapUtil.targetHeights(pinHeights.size(), i -> pinHeights.get(i).z);
+    }
+
+    /**
+     * The heights of a bed set to the target heights from rest: the pins that are
+     * not moved stay at 0.
+     */
+    private static double[] keyOf(double[] target) {
+        double[] key = new double[target.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = Double.isNaN(target[i]) ? 0 : target[i];
+        }
+        return key;
+    }
+
+    private static double[] signatureOf(double[] heights, int size) {
+        int blocks = Math.min(SIGNATURE_BLOCKS, size);
+        double[] signature = new double[blocks * blocks];
+        for (int row = 0; row < size; row++) {
+            int blockRow = row * blocks / size;
+            for (int col = 0; col < size; col++) {
+                signature[blockRow * blocks + col * blocks / size] += heights[row * size + col];
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * The total travel of the pins the target moves, starting from the stored heights.
+     */
+    private static double travel(double[] target, double[] stored) {
+        double sum = 0;
+        for (int i = 0; i < target.length; i++) {
+            if (!Double.isNaN(target[i])) {
+                sum += Math.abs(target[i] - stored[i]);
+            }
+        }
+        return sum;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum;
+    }
+
+    private static final class Entry {
+        final String id;
+        final double[] heights;
+        final double[] signature;
+
+        Entry(String id, double[] heights, double[] signature) {
+            this.id = id;
+            this.heights = heights;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * A node of the vantage point tree: either a leaf with a few entries, or a
+     * vantage entry with the entries closer than the radius inside and the others
+     * outside.
+     */
+    private static final class Node {
+        int vantage = -1;
+        double radius;
+        Node inside;
+        Node outside;
+        int[] bucket;
+    }
+
+    /**
+     * The molds of one pin layout.
+     */
+    private static final class Partition {
+        final List<Entry> entries = new ArrayList<>();
+        final Random random = new Random(1);
+        // per pin, the largest absolute height of any key
+        double[] maxAbs;
+        Node root;
+        // entries [0, indexed) are in the tree, the rest are scanned
+        int indexed = 0;
+
+        void add(Entry entry) {
+            entries.add(entry);
+            if (maxAbs == null) {
+                maxAbs = new double[entry.heights.length];
+            }
+            for (int i = 0; i < maxAbs.length; i++) {
+                maxAbs[i] = Math.max(maxAbs[i], Math.abs(entry.heights[i]));
+            }
+        }
+
+        List<MoldMatch> nearest(double[] target, double[] key, double[] signature, int k, double tolerance) {
+            int pending = entries.size() - indexed;
+            if (pending > Math.max(LEAF_SIZE * 8, indexed / 8)) {
+                rebuild();
+            }
+            // the current best k, furthest first
+            PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance)
+                    .thenComparingInt(c -> c.entry).reversed());
+            // the travel falls short of the key distance by at most the stored heights of the pins not moved
+            double slack = 0;
+            for (int i = 0; i < target.length; i++) {
+                if (Double.isNaN(target[i])) {
+                    slack += maxAbs[i];
+                }
+            }
+            Search search = new Search(target, key, signature, slack, k, best);
+            if (root != null) {
+                search.visit(root);
+            }
+            for (int e = indexed; e < entries.size(); e++) {
+                search.consider(e);
+            }
+            List<Candidate> sorted = new ArrayList<>(best);
+            sorted.sort(Comparator.comparingDouble((Candidate c) -> c.distance).thenComparingInt(c -> c.entry));
+            List<MoldMatch> matches = new ArrayList<>(sorted.size());
+            for (Candidate candidate : sorted) {
+                double[] stored = entries.get(candidate.entry).heights;
+                int changed = 0;
+                for (int i = 0; i < stored.length; i++) {
+                    if (FleetScheduler.isChanged(stored[i], target[i], tolerance)) {
+                        changed++;
+                    }
+                }
+                matches.add(new MoldMatch(entries.get(candidate.entry).id, candidate.distance, changed));
+            }
+            return matches;
+        }
+
+        void rebuild() {
+            int[] items = new int[entries.size()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = i;
+            }
+            root = build(items, 0, items.length);
+            indexed = items.length;
+        }
+
+        private Node build(int[] items, int from, int to) {
+            Node node = new Node();
+            if (to - from <= LEAF_SIZE) {
+                node.bucket = Arrays.copyOfRange(items, from, to);
+                return node;
+            }
+            int pick = from + random.nextInt(to - from);
+            int vantage = items[pick];
+            items[pick] = items[from];
+            items[from] = vantage;
+            node.vantage = vantage;
+
+            int count = to - from - 1;
+            double[] distances = new double[count];
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                distances[i] = distance(entries.get(vantage).heights, entries.get(items[from + 1 + i]).heights);
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+            int[] sorted = new int[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = items[from + 1 + order[i]];
+            }
+            System.arraycopy(sorted, 0, items, from + 1, count);
+            // everything before the split is at most the radius away, everything after at least
+            int split = count / 2;
+            node.radius = distances[order[split]];
+            node.inside = build(items, from + 1, from + 1 + split);
+            node.outside = build(items, from + 1 + split, to);
+            return node;
+        }
+
+        /**
+         * The state of one k nearest neighbour query.
+         */
+        private final class Search {
+            final double[] target;
+            final double[] key;
+            final double[] signature;
+            final double slack;
+            final int k;
+            final PriorityQueue<Candidate> best;
+
+            Search(double[] target, double[] key, double[] signature, double slack, int k, PriorityQueue<Candidate> best) {
+                this.target = target;
+                this.key = key;
+                this.signature = signature;
+                this.slack = slack;
+                this.k = k;
+                this.best = best;
+            }
+
+            double tau() {
+                return best.size() < k ? Double.POSITIVE_INFINITY : best.peek().distance;
+            }
+
+            void offer(int entry, double distance) {
+                if (best.size() < k) {
+                    best.add(new Candidate(entry, distance));
+                } else if (distance < best.peek().distance) {
+                    best.poll();
+                    best.add(new Candidate(entry, distance));
+                }
+            }
+
+            /**
+             * Measures an entry unless its signature already rules it out.
+             */
+            void consider(int entry) {
+                Entry e = entries.get(entry);
+                if (distance(signature, e.signature) - slack > tau()) {
+                    return;
+                }
+                offer(entry, travel(target, e.heights));
+            }
+
+            void visit(Node node) {
+                if (node.bucket != null) {
+                    for (int entry : node.bucket) {
+                        consider(entry);
+                    }
+                    return;
+                }
+                double[] vantage = entries.get(node.vantage).heights;
+                double d = distance(key, vantage);
+                offer(node.vantage, slack == 0 ? d : travel(target, vantage));
+                if (d < node.radius) {
+                    visit(node.inside);
+                    if (d + tau() + slack >= node.radius) {
+                        visit(node.outside);
+                    }
+                } else {
+                    visit(node.outside);
+                    if (d - tau() - slack <= node.radius) {
+                        visit(node.inside);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Candidate {
+        final int entry;
+        final double distance;
+
+        Candidate(int entry, double distance) {
+            this.entry = entry;
+            this.distance = distance;
+        }
+    }
+}
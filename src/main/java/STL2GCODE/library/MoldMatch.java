@@ -0,0 +1,42 @@
+package STL2GCODE.library;
+
+/**
+ * A stored mold found by a {@link MoldIndex} query.
+ */
+public final class MoldMatch {
+    private final String id;
+    private final double distance;
+    private final int changedPins;
+
+    MoldMatch(String id, double distance, int changedPins) {
+        this.id = id;
+        this.distance = distance;
+        this.changedPins = changedPins;
+    }
+
+    /**
+     * @return The id the mold was added with.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The total travel, in millimeters, of the pins the queried mold moves, starting from the stored mold.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return The number of pins that have to move by more than the index tolerance.
+     */
+    public int getChangedPins() {
+        return changedPins;
+    }
+
+    @Override
+    public String toString() {
+        return "MoldMatch[" + id + ", " + distance + " mm, " + changedPins + " pins]";
+    }
+}
@@ -0,0 +1,151 @@
+package STL2GCODE.mesh;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A triangle mesh as read from an indexed format: a vertex buffer holding every
+ * distinct vertex once and an index buffer with three vertex indices per triangle.
+ * Coordinates are stored as floats, the precision of binary STL.
+ *
+ * Triangles created from the mesh share one {@link Vec3d} per vertex, so the
+ * connectivity of the source survives without re-welding.
+ */
+public class IndexedMesh {
+    private float[] vertices;
+    private int vertexCount;
+    private int[] indices;
+    private int triangleCount;
+
+    /**
+     * Creates an empty mesh.
+     */
+    public IndexedMesh() {
+        this(1024, 1024);
+    }
+
+    /**
+     * Creates an empty mesh with room for the given number of vertices and triangles.
+     *
+     * @param vertexCapacity   The expected number of vertices.
+     * @param triangleCapacity The expected number of triangles.
+     */
+    public IndexedMesh(int vertexCapacity, int triangleCapacity) {
+        vertices = new float[Math.max(1, vertexCapacity) * 3];
+        indices = new int[Math.max(1, triangleCapacity) * 3];
+    }
+
+    /**
+     * Appends a vertex.
+     *
+     * @return The index of the new vertex.
+     */
+    public int addVertex(float x, float y, float z) {
+        if (vertexCount * 3 == vertices.length) {
+            vertices = Arrays.copyOf(vertices, grow(vertices.length));
+        }
+        int offset = vertexCount * 3;
+        vertices[offset] = x;
+        vertices[offset + 1] = y;
+        vertices[offset + 2] = z;
+        return vertexCount++;
+    }
+
+    /**
+     * Appends a triangle made of three existing vertices.
+     *
+     * @throws IllegalArgumentException Thrown if an index does not refer to a vertex.
+     */
+    public void addTriangle(int a, int b, int c) {
+        checkIndex(a);
+        checkIndex(b);
+        checkIndex(c);
+        if (triangleCount * 3 == indices.length) {
+            indices = Arrays.copyOf(indices, grow(indices.length));
+        }
+        int offset = triangleCount * 3;
+        indices[offset] = a;
+        indices[offset + 1] = b;
+        indices[offset + 2] = c;
+        triangleCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= vertexCount) {
+            throw new IllegalArgumentException("Vertex index " + index + " out of range, the mesh has " + vertexCount + " vertices");
+        }
+    }
+
+    private static int grow(int length) {
+        if (length >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The mesh is too large");
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8L, length * 2L);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * @return The coordinates x0, y0, z0, x1, ... of the vertices; only the first
+     * {@code 3 * getVertexCount()} elements are used.
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return The vertex indices of the triangles, three per triangle; only the first
+     * {@code 3 * getTriangleCount()} elements are used.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return The triangles of the mesh in index order.
+     */
+    public List<Triangle> toTriangles() {
+        List<Triangle> triangles = new ArrayList<>(triangleCount);
+        forEachBatch(Math.max(1, triangleCount), triangles::addAll);
+        return triangles;
+    }
+
+    /**
+     * Hands the triangles of the mesh to the consumer in batches, in index order.
+     * Batches are not reused after being handed over.
+     *
+     * @param batchSize The number of triangles per batch (the last batch may be smaller).
+     * @param consumer  Receives the batches of triangles.
+     */
+    public void forEachBatch(int batchSize, Consumer<List<Triangle>> consumer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive.");
+        }
+        Vec3d[] shared = new Vec3d[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            shared[v] = new Vec3d(vertices[v * 3], vertices[v * 3 + 1], vertices[v * 3 + 2]);
+        }
+        List<Triangle> batch = new ArrayList<>(Math.min(batchSize, Math.max(1, triangleCount)));
+        for (int t = 0; t < triangleCount; t++) {
+            batch.add(new Triangle(shared[indices[t * 3]], shared[indices[t * 3 + 1]], shared[indices[t * 3 + 2]]));
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(Math.min(batchSize, triangleCount - t - 1));
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package STL2GCODE.mesh;
+
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.stl4j.MeshStatistics;
+import STL2GCODE.stl4j.ParseResult;
+import STL2GCODE.stl4j.STLParser;
+import STL2GCODE.stl4j.Triangle;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads a part from any supported mesh format: ASCII and binary STL, OBJ, binary PLY
+ * and 3MF. The format is detected from the content rather than the file name, the
+ * STL variants with {@link STLParser#isASCIISTL(byte[], long)} as before.
+ *
+ * The indexed formats are read into an {@link IndexedMesh}, keeping their vertex and
+ * index buffers, and handed on as triangles sharing their vertices.
+ */
+public class MeshImporter {
+
+    /**
+     * The mesh formats that can be read.
+     */
+    public enum Format {
+        STL, OBJ, PLY, THREE_MF
+    }
+
+    private static final int HEAD_LENGTH = 512;
+    private static final Set<String> OBJ_STATEMENTS = Set.of("v", "vt", "vn", "vp", "f", "l", "p", "o", "g", "s",
+            "mtllib", "usemtl");
+
+    /**
+     * Determines the format of a mesh file from its first bytes.
+     *
+     * @param head   The first 512 bytes of the file, or all of it if it is shorter.
+     * @param length The length of the whole file in bytes.
+     * @return The format. Content that matches no format is reported as STL, whose
+     * parser gives the most helpful error for it.
+     */
+    public static Format detectFormat(byte[] head, long length) {
+        if (startsWith(head, "PK\u0003\u0004")) {
+            return Format.THREE_MF;
+        }
+        if (startsWith(head, "ply\n") || startsWith(head, "ply\r")) {
+            return Format.PLY;
+        }
+        if (startsWith(head, "solid") || isBinarySTL(head, length)) {
+            return Format.STL;
+        }
+        return isOBJ(head) ? Format.OBJ : Format.STL;
+    }
+
+    /**
+     * Parses a mesh file of any supported format.
+     *
+     * @param file The file to parse.
+     * @return A list of triangles representing all of the triangles of the mesh.
+     * @throws IOException Thrown if there was a problem reading the file.
+     * @throws IllegalArgumentException Thrown if the file is not properly formatted.
+     */
+    public static List<Triangle> parseMeshFile(Path file) throws IOException {
+        Format format = detectFormat(readHead(file), Files.size(file));
+        if (format == Format.STL) {
+            return STLParser.parseSTLFile(file);
+        }
+        return readIndexedMesh(file, format).toTriangles();
+    }
+
+    /**
+     * Parses the content of a mesh file that has already been read into memory.
+     *
+     * @param bytes The complete content of the file.
+     * @return A list of triangles representing all of the triangles of the mesh.
+     * @throws IllegalArgumentException Thrown if the content is not properly formatted.
+     */
+    public static List<Triangle> parseMesh(byte[] bytes) {
+        Format format = detectFormat(bytes, bytes.length);
+        if (format == Format.STL) {
+            return STLParser.parseSTL(bytes);
+        }
+        try {
+            return readIndexed(new ByteArrayInputStream(bytes), format, bytes.length).toTriangles();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Truncated " + format + " content", ex);
+        }
+    }
+
+    /**
+     * Parses the content of a mesh file like {@link #parseMesh(byte[])}, collecting
+     * the {@link MeshStatistics} of the mesh while the triangles are created. Only
+     * STL has a header triangle count.
+     *
+     * @param bytes The complete content of the file.
+     * @return The triangles of the mesh and their statistics.
+     * @throws IllegalArgumentException Thrown if the content is not properly formatted.
+     */
+    public static ParseResult parseMeshWithStatistics(byte[] bytes) {
+        Format format = detectFormat(bytes, bytes.length);
+        if (format == Format.STL) {
+            return STLParser.parseSTLWithStatistics(bytes);
+        }
+        IndexedMesh mesh;
+        try {
+            mesh = readIndexed(new ByteArrayInputStream(bytes), format, bytes.length);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Truncated " + format + " content", ex);
+        }
+        List<Triangle> triangles = new ArrayList<>(mesh.getTriangleCount());
+        MeshStatistics statistics = new MeshStatistics();
+        mesh.forEachBatch(Math.max(1, mesh.getTriangleCount()), batch -> {
+            for (Triangle triangle : batch) {
+                statistics.accept(triangle);
+            }
+            triangles.addAll(batch);
+        });
+        return new ParseResult(triangles, statistics);
+    }
+
+    /**
+     * Reads a mesh file of an indexed format, keeping its vertex and index buffers.
+     *
+     * @param file The OBJ, PLY or 3MF file to read.
+     * @return The mesh.
+     * @throws IOException Thrown if there was a problem reading the file.
+     * @throws IllegalArgumentException Thrown if the file is STL or is not properly formatted.
+     */
+    public static IndexedMesh readIndexedMesh(Path file) throws IOException {
+        Format format = detectFormat(readHead(file), Files.size(file));
+        if (format == Format.STL) {
+            throw new IllegalArgumentException(file + " is an STL file, which has no index buffer");
+        }
+        return readIndexedMesh(file, format);
+    }
+
+    /**
+     * Parses a mesh file of any supported format and hands its triangles to the
+     * consumer in batches, see {@link STLParser#streamSTLFile(Path, int, Consumer)}.
+     * STL is decoded while it is read; the indexed formats keep their vertex and index
+     * buffers in memory but create the triangles one batch at a time.
+     *
+     * @param file      The file to parse.
+     * @param batchSize The number of triangles per batch (the last batch may be smaller).
+     * @param consumer  Receives the batches of triangles.
+     * @throws IOException Thrown if there was a problem reading the file.
+     * @throws IllegalArgumentException Thrown if the file is not properly formatted.
+     */
+    public static void streamMeshFile(Path file, int batchSize, Consumer<List<Triangle>> consumer) throws IOException {
+        streamMeshFile(file, batchSize, consumer, true);
+    }
+
+    /**
+     * Parses a mesh file of any supported format and hands its triangles to the
+     * consumer in batches, see {@link #streamMeshFile(Path, int, Consumer)}.
+     *
+     * @param file          The file to parse.
+     * @param batchSize     The number of triangles per batch (the last batch may be smaller).
+     * @param consumer      Receives the batches of triangles.
+     * @param recordMetrics Whether to count the bytes, triangles and parse time of this
+     *                      pass; false for extra passes over a file that is also parsed for real.
+     * @throws IOException Thrown if there was a problem reading the file.
+     * @throws IllegalArgumentException Thrown if the file is not properly formatted.
+     */
+    public static void streamMeshFile(Path file, int batchSize, Consumer<List<Triangle>> consumer,
+                                      boolean recordMetrics) throws IOException {
+        Format format = detectFormat(readHead(file), Files.size(file));
+        if (format == Format.STL) {
+            STLParser.streamSTLFile(file, batchSize, consumer, recordMetrics);
+        } else {
+            readIndexedMesh(file, format, recordMetrics).forEachBatch(batchSize, consumer);
+        }
+    }
+
+    private static IndexedMesh readIndexedMesh(Path file, Format format) throws IOException {
+        return readIndexedMesh(file, format, true);
+    }
+
+    private static IndexedMesh readIndexedMesh(Path file, Format format, boolean recordMetrics) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return readIndexed(in, format, Files.size(file), recordMetrics);
+        }
+    }
+
+    private static IndexedMesh readIndexed(InputStream in, Format format, long length) throws IOException {
+        return readIndexed(in, format, length, true);
+    }
+
+    private static IndexedMesh readIndexed(InputStream in, Format format, long length, boolean recordMetrics) throws IOException {
+        long start = MoldMetrics.PARSE_TIME.start();
+        StageEvent event = StageEvent.begin("parse");
+        IndexedMesh mesh;
+        switch (format) {
+            case OBJ: mesh = OBJParser.parse(in); break;
+            case PLY: mesh = PLYParser.parse(in); break;
+            case THREE_MF: mesh = ThreeMFParser.parse(in); break;
+            default: throw new IllegalArgumentException("Not an indexed format: " + format);
+        }
+        event.end(mesh.getTriangleCount(), length);
+        if (recordMetrics) {
+            MoldMetrics.MESH_BYTES_READ.add(length);
+            MoldMetrics.TRIANGLES_PARSED.add(mesh.getTriangleCount());
+            MoldMetrics.PARSE_TIME.stop(start);
+        }
+        return mesh;
+    }
+
+    private static byte[] readHead(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(HEAD_LENGTH);
+        }
+    }
+
+    private static boolean startsWith(byte[] head, String prefix) {
+        if (head.length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (head[i] != (byte) prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBinarySTL(byte[] head, long length) {
+        try {
+            return STLParser.isbinaryfile(head, length);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * OBJ has no signature; it is recognized as text whose first statement, after
+     * comments and blank lines, is an OBJ statement.
+     */
+    private static boolean isOBJ(byte[] head) {
+        for (byte b : head) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        for (String line : new String(head, StandardCharsets.US_ASCII).split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String keyword = trimmed.split("\\s+", 2)[0];
+            return OBJ_STATEMENTS.contains(keyword);
+        }
+        // only comments so far
+        return head.length > 0;
+    }
+}
@@ -0,0 +1,74 @@
+package STL2GCODE.mesh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+
+/**
+ * Reads the geometry of a Wavefront OBJ file line by line. Only vertex positions
+ * ({@code v}) and faces ({@code f}) are used; texture coordinates, normals, groups
+ * and materials are skipped. Faces with more than three vertices are split into a
+ * fan of triangles around their first vertex, and negative indices count back from
+ * the last vertex read, as the format specifies.
+ */
+public class OBJParser {
+
+    /**
+     * Parses an OBJ file without holding its text in memory.
+     *
+     * @param in The content of the file.
+     * @return The mesh.
+     * @throws IOException Thrown if the stream cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not properly formatted.
+     */
+    public static IndexedMesh parse(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        IndexedMesh mesh = new IndexedMesh();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.length() < 2 || line.charAt(1) != ' ' && line.charAt(1) != '\t') {
+                continue;
+            }
+            try {
+                char type = line.charAt(0);
+                if (type == 'v') {
+                    StringTokenizer st = new StringTokenizer(line.substring(2));
+                    mesh.addVertex(Float.parseFloat(st.nextToken()), Float.parseFloat(st.nextToken()), Float.parseFloat(st.nextToken()));
+                } else if (type == 'f') {
+                    StringTokenizer st = new StringTokenizer(line.substring(2));
+                    int first = vertexIndex(st.nextToken(), mesh);
+                    int previous = vertexIndex(st.nextToken(), mesh);
+                    if (!st.hasMoreTokens()) {
+                        throw new IllegalArgumentException("a face needs at least three vertices");
+                    }
+                    while (st.hasMoreTokens()) {
+                        int next = vertexIndex(st.nextToken(), mesh);
+                        mesh.addTriangle(first, previous, next);
+                        previous = next;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Malformed OBJ syntax at line " + lineNumber + ": \"" + line + "\"", ex);
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * Converts a face vertex such as {@code 7}, {@code 7/2}, {@code 7//3} or {@code -1}
+     * to a zero based vertex index.
+     */
+    private static int vertexIndex(String token, IndexedMesh mesh) {
+        int slash = token.indexOf('/');
+        int index = Integer.parseInt(slash < 0 ? token : token.substring(0, slash));
+        if (index == 0) {
+            throw new IllegalArgumentException("vertex index 0");
+        }
+        return index > 0 ? index - 1 : mesh.getVertexCount() + index;
+    }
+}
@@ -0,0 +1,223 @@
+package STL2GCODE.mesh;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads a binary (little or big endian) PLY file element by element. The x, y and z
+ * properties of the {@code vertex} element and the {@code vertex_indices} (or
+ * {@code vertex_index}) list of the {@code face} element are used; every other
+ * element and property is read past. Faces with more than three vertices are split
+ * into a fan of triangles around their first vertex. The {@code vertex} element
+ * has to come before the {@code face} element, as every common exporter writes it.
+ */
+public class PLYParser {
+
+    private enum Type {
+        CHAR(1), UCHAR(1), SHORT(2), USHORT(2), INT(4), UINT(4), FLOAT(4), DOUBLE(8);
+
+        final int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+
+        static Type of(String name) {
+            switch (name) {
+                case "char": case "int8": return CHAR;
+                case "uchar": case "uint8": return UCHAR;
+                case "short": case "int16": return SHORT;
+                case "ushort": case "uint16": return USHORT;
+                case "int": case "int32": return INT;
+                case "uint": case "uint32": return UINT;
+                case "float": case "float32": return FLOAT;
+                case "double": case "float64": return DOUBLE;
+                default: throw new IllegalArgumentException("Unknown PLY property type \"" + name + "\"");
+            }
+        }
+    }
+
+    private static final class Property {
+        final String name;
+        final Type type;
+        // the type of the element count of a list property, null for scalars
+        final Type countType;
+
+        Property(String name, Type type, Type countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+
+    private static final class Element {
+        final String name;
+        final long count;
+        final List<Property> properties = new ArrayList<>();
+
+        Element(String name, long count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Parses a binary PLY file without holding it in memory.
+     *
+     * @param in The content of the file.
+     * @return The mesh.
+     * @throws IOException Thrown if the stream cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not a properly formatted binary PLY file.
+     */
+    public static IndexedMesh parse(InputStream in) throws IOException {
+        in = new BufferedInputStream(in, 1 << 16);
+        List<Element> elements = new ArrayList<>();
+        ByteOrder order = readHeader(in, elements);
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(order);
+
+        long vertices = 0;
+        long faces = 0;
+        for (Element element : elements) {
+            if (element.name.equals("vertex")) {
+                vertices = element.count;
+            } else if (element.name.equals("face")) {
+                if (vertices == 0 && element.count > 0) {
+                    // faces are added as they are read and must refer to vertices already read
+                    throw new IllegalArgumentException("The PLY face element comes before the vertex element, which is not supported");
+                }
+                faces = element.count;
+            }
+        }
+        IndexedMesh mesh = new IndexedMesh((int) Math.min(vertices, 1 << 24), (int) Math.min(faces, 1 << 24));
+
+        for (Element element : elements) {
+            boolean isVertex = element.name.equals("vertex");
+            boolean isFace = element.name.equals("face");
+            int[] face = new int[16];
+            for (long e = 0; e < element.count; e++) {
+                float x = 0, y = 0, z = 0;
+                for (Property property : element.properties) {
+                    if (property.countType == null) {
+                        double value = read(in, buffer, property.type);
+                        if (isVertex) {
+                            switch (property.name) {
+                                case "x": x = (float) value; break;
+                                case "y": y = (float) value; break;
+                                case "z": z = (float) value; break;
+                                default: break;
+                            }
+                        }
+                        continue;
+                    }
+                    int count = (int) read(in, buffer, property.countType);
+                    if (isFace && (property.name.equals("vertex_indices") || property.name.equals("vertex_index"))) {
+                        if (count < 3) {
+                            throw new IllegalArgumentException("Face " + e + " has fewer than three vertices");
+                        }
+                        if (count > face.length) {
+                            face = new int[count];
+                        }
+                        for (int i = 0; i < count; i++) {
+                            face[i] = (int) read(in, buffer, property.type);
+                        }
+                        for (int i = 2; i < count; i++) {
+                            mesh.addTriangle(face[0], face[i - 1], face[i]);
+                        }
+                    } else {
+                        skip(in, (long) count * property.type.size);
+                    }
+                }
+                if (isVertex) {
+                    mesh.addVertex(x, y, z);
+                }
+            }
+        }
+        return mesh;
+    }
+
+    private static ByteOrder readHeader(InputStream in, List<Element> elements) throws IOException {
+        if (!"ply".equals(readLine(in))) {
+            throw new IllegalArgumentException("Not a PLY file");
+        }
+        ByteOrder order = null;
+        String line;
+        while (!(line = readLine(in)).equals("end_header")) {
+            String[] tokens = line.trim().split("\\s+");
+            switch (tokens[0]) {
+                case "format":
+                    if (tokens[1].equals("binary_little_endian")) {
+                        order = ByteOrder.LITTLE_ENDIAN;
+                    } else if (tokens[1].equals("binary_big_endian")) {
+                        order = ByteOrder.BIG_ENDIAN;
+                    } else {
+                        throw new IllegalArgumentException("Unsupported PLY format \"" + tokens[1] + "\", only binary PLY is supported");
+                    }
+                    break;
+                case "element":
+                    elements.add(new Element(tokens[1], Long.parseLong(tokens[2])));
+                    break;
+                case "property":
+                    if (elements.isEmpty()) {
+                        throw new IllegalArgumentException("PLY property before the first element: \"" + line + "\"");
+                    }
+                    Property property = tokens[1].equals("list")
+                            ? new Property(tokens[4], Type.of(tokens[3]), Type.of(tokens[2]))
+                            : new Property(tokens[2], Type.of(tokens[1]), null);
+                    elements.get(elements.size() - 1).properties.add(property);
+                    break;
+                default:
+                    // comment, obj_info and blank lines
+                    break;
+            }
+        }
+        if (order == null) {
+            throw new IllegalArgumentException("The PLY header has no format line");
+        }
+        return order;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IllegalArgumentException("The PLY header has no end_header line");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+    }
+
+    private static double read(InputStream in, ByteBuffer buffer, Type type) throws IOException {
+        buffer.clear();
+        int n = in.readNBytes(buffer.array(), 0, type.size);
+        if (n < type.size) {
+            throw new EOFException("The PLY file ends before its last element");
+        }
+        switch (type) {
+            case CHAR: return buffer.get(0);
+            case UCHAR: return buffer.get(0) & 0xff;
+            case SHORT: return buffer.getShort(0);
+            case USHORT: return buffer.getShort(0) & 0xffff;
+            case INT: return buffer.getInt(0);
+            case UINT: return Integer.toUnsignedLong(buffer.getInt(0));
+            case FLOAT: return buffer.getFloat(0);
+            default: return buffer.getDouble(0);
+        }
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        in.skipNBytes(bytes);
+    }
+}
@@ -0,0 +1,278 @@
+package STL2GCODE.mesh;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the meshes of a 3MF package. The package is read as a zip stream and every
+ * model part under {@code 3D/} is parsed with a streaming XML reader, so neither
+ * the archive nor the XML is held in memory; only the meshes of the objects are.
+ *
+ * Once all parts are read, every build item is placed with its transform, and
+ * objects made of components are expanded with the component transforms, so parts
+ * keep their positions relative to each other. Coordinates are scaled from the unit
+ * of the model to millimeters. A package without build items yields every mesh
+ * object as it is defined.
+ */
+public class ThreeMFParser {
+    private static final String PRODUCTION_NAMESPACE = "http://schemas.microsoft.com/3dmanufacturing/production/2015/06";
+    // deeper nesting than any real package uses is taken for a cycle of components
+    private static final int MAX_COMPONENT_DEPTH = 32;
+    private static final double[] IDENTITY = {1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0};
+
+    /**
+     * An object of the model: its own mesh, in millimeters, and the objects it is
+     * made of.
+     */
+    private static final class ModelObject {
+        final IndexedMesh mesh = new IndexedMesh(16, 16);
+        final List<Reference> components = new ArrayList<>();
+    }
+
+    /**
+     * A placement of an object, as a build item or a component. The transform is a
+     * 3MF matrix {@code m00 m01 m02 m10 m11 m12 m20 m21 m22 m30 m31 m32} that maps a
+     * point as a row vector, {@code p' = p * M + t}, with the translation in millimeters.
+     */
+    private static final class Reference {
+        final String object;
+        final double[] transform;
+
+        Reference(String object, double[] transform) {
+            this.object = object;
+            this.transform = transform;
+        }
+    }
+
+    /**
+     * Parses a 3MF package without holding it in memory.
+     *
+     * @param in The content of the file.
+     * @return The combined mesh of all build items.
+     * @throws IOException Thrown if the stream cannot be read.
+     * @throws IllegalArgumentException Thrown if the package or a model part is not properly formatted.
+     */
+    public static IndexedMesh parse(InputStream in) throws IOException {
+        Map<String, ModelObject> objects = new LinkedHashMap<>();
+        List<Reference> build = new ArrayList<>();
+        boolean foundModel = false;
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName().toLowerCase(Locale.ROOT);
+            if (entry.isDirectory() || !name.startsWith("3d/") || !name.endsWith(".model")) {
+                continue;
+            }
+            foundModel = true;
+            try {
+                parseModel(new FilterInputStream(zip) {
+                    @Override
+                    public void close() {
+                        // the zip stream stays open for the next entry
+                    }
+                }, name, objects, build);
+            } catch (XMLStreamException ex) {
+                throw new IllegalArgumentException("Malformed 3MF model " + entry.getName() + ": " + ex.getMessage(), ex);
+            }
+        }
+        if (!foundModel) {
+            throw new IllegalArgumentException("The 3MF package has no 3D model part");
+        }
+
+        IndexedMesh mesh = new IndexedMesh();
+        if (build.isEmpty()) {
+            for (ModelObject object : objects.values()) {
+                append(object.mesh, IDENTITY, mesh);
+            }
+        }
+        for (Reference item : build) {
+            place(item.object, item.transform, objects, mesh, 0);
+        }
+        return mesh;
+    }
+
+    private static void parseModel(InputStream in, String part, Map<String, ModelObject> objects, List<Reference> build)
+            throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            float scale = 1;
+            ModelObject object = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "model":
+                        scale = unitScale(reader.getAttributeValue(null, "unit"));
+                        break;
+                    case "object":
+                        object = new ModelObject();
+                        objects.put(key(part, attribute(reader, "id")), object);
+                        break;
+                    case "vertex":
+                        checkInObject(reader, object);
+                        object.mesh.addVertex(scale * floatAttribute(reader, "x"), scale * floatAttribute(reader, "y"),
+                                scale * floatAttribute(reader, "z"));
+                        break;
+                    case "triangle":
+                        // vertex indices are relative to the mesh of the object
+                        checkInObject(reader, object);
+                        object.mesh.addTriangle(intAttribute(reader, "v1"), intAttribute(reader, "v2"),
+                                intAttribute(reader, "v3"));
+                        break;
+                    case "component":
+                        checkInObject(reader, object);
+                        object.components.add(reference(reader, part, scale));
+                        break;
+                    case "item":
+                        build.add(reference(reader, part, scale));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void checkInObject(XMLStreamReader reader, ModelObject object) {
+        if (object == null) {
+            throw new IllegalArgumentException("<" + reader.getLocalName() + "> at line "
+                    + reader.getLocation().getLineNumber() + " is outside of an object");
+        }
+    }
+
+    /**
+     * Reads the object and transform of an item or component. The object may live
+     * in another part, named by the path attribute of the production extension.
+     */
+    private static Reference reference(XMLStreamReader reader, String part, float scale) {
+        String path = reader.getAttributeValue(PRODUCTION_NAMESPACE, "path");
+        if (path != null) {
+            part = path.toLowerCase(Locale.ROOT);
+            if (part.startsWith("/")) {
+                part = part.substring(1);
+            }
+        }
+        String value = reader.getAttributeValue(null, "transform");
+        double[] transform = IDENTITY.clone();
+        if (value != null) {
+            String[] numbers = value.trim().split("\\s+");
+            if (numbers.length != 12) {
+                throw new IllegalArgumentException("<" + reader.getLocalName() + "> at line "
+                        + reader.getLocation().getLineNumber() + " has a transform of " + numbers.length + " numbers, not 12");
+            }
+            for (int i = 0; i < 12; i++) {
+                transform[i] = Double.parseDouble(numbers[i]);
+            }
+            for (int i = 9; i < 12; i++) {
+                transform[i] *= scale;
+            }
+        }
+        return new Reference(key(part, attribute(reader, "objectid")), transform);
+    }
+
+    private static String key(String part, String id) {
+        return part + "#" + id;
+    }
+
+    /**
+     * Appends an object and its components with the given transform.
+     */
+    private static void place(String key, double[] transform, Map<String, ModelObject> objects, IndexedMesh target, int depth) {
+        ModelObject object = objects.get(key);
+        if (object == null) {
+            throw new IllegalArgumentException("The 3MF package refers to the undefined object " + key);
+        }
+        if (depth > MAX_COMPONENT_DEPTH) {
+            throw new IllegalArgumentException("The components of 3MF object " + key + " are nested too deep or form a cycle");
+        }
+        append(object.mesh, transform, target);
+        for (Reference component : object.components) {
+            place(component.object, compose(component.transform, transform), objects, target, depth + 1);
+        }
+    }
+
+    private static void append(IndexedMesh mesh, double[] m, IndexedMesh target) {
+        int base = target.getVertexCount();
+        float[] vertices = mesh.getVertices();
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            double x = vertices[3 * v];
+            double y = vertices[3 * v + 1];
+            double z = vertices[3 * v + 2];
+            target.addVertex((float) (x * m[0] + y * m[3] + z * m[6] + m[9]),
+                    (float) (x * m[1] + y * m[4] + z * m[7] + m[10]),
+                    (float) (x * m[2] + y * m[5] + z * m[8] + m[11]));
+        }
+        int[] indices = mesh.getIndices();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            target.addTriangle(base + indices[3 * t], base + indices[3 * t + 1], base + indices[3 * t + 2]);
+        }
+    }
+
+    /**
+     * The transform that applies inner first and then outer.
+     */
+    private static double[] compose(double[] inner, double[] outer) {
+        double[] result = new double[12];
+        // rows 0..2 are the linear part, row 3 the translation, each mapped through outer
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 3; col++) {
+                double sum = row == 3 ? outer[9 + col] : 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += inner[3 * row + k] * outer[3 * k + col];
+                }
+                result[3 * row + col] = sum;
+            }
+        }
+        return result;
+    }
+
+    private static float unitScale(String unit) {
+        if (unit == null) {
+            return 1;
+        }
+        switch (unit) {
+            case "micron": return 0.001f;
+            case "millimeter": return 1;
+            case "centimeter": return 10;
+            case "inch": return 25.4f;
+            case "foot": return 304.8f;
+            case "meter": return 1000;
+            default: throw new IllegalArgumentException("Unknown 3MF unit \"" + unit + "\"");
+        }
+    }
+
+    private static float floatAttribute(XMLStreamReader reader, String name) {
+        return Float.parseFloat(attribute(reader, name));
+    }
+
+    private static int intAttribute(XMLStreamReader reader, String name) {
+        return Integer.parseInt(attribute(reader, name));
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            throw new IllegalArgumentException("<" + reader.getLocalName() + "> at line "
+                    + reader.getLocation().getLineNumber() + " has no " + name + " attribute");
+        }
+        return value;
+    }
+}
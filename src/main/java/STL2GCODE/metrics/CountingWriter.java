@@ -0,0 +1,41 @@
+package STL2GCODE.metrics;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Passes everything on to another writer and counts the characters.
+ */
+public class CountingWriter extends FilterWriter {
+    private long count = 0;
+
+    public CountingWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        count++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        count += len;
+    }
+
+    /**
+     * @return The number of characters written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+}
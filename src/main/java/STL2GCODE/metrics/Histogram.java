@@ -0,0 +1,88 @@
+package STL2GCODE.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts observations into fixed buckets and keeps their count and sum, like a
+ * Prometheus histogram. Updates are dropped while metrics are disabled.
+ */
+public class Histogram implements Metric {
+    private final String name;
+    private final String help;
+    private final double[] upperBounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(String name, String help, double[] upperBounds) {
+        double[] bounds = upperBounds.clone();
+        Arrays.sort(bounds);
+        this.name = name;
+        this.help = help;
+        this.upperBounds = bounds;
+        this.buckets = new LongAdder[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value The observed value.
+     */
+    public void observe(double value) {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        int bucket = Arrays.binarySearch(upperBounds, value);
+        if (bucket < 0) {
+            bucket = -bucket - 1;
+        }
+        if (bucket < buckets.length) {
+            buckets[bucket].increment();
+        }
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getHelp() {
+        return help;
+    }
+
+    @Override
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{le=\"").append(upperBounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(getCount()).append('\n');
+        out.append(name).append("_sum ").append(getSum()).append('\n');
+        out.append(name).append("_count ").append(getCount()).append('\n');
+    }
+}
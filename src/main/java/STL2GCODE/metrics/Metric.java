@@ -0,0 +1,18 @@
+package STL2GCODE.metrics;
+
+/**
+ * A named value kept in the {@link Metrics} registry.
+ */
+public interface Metric {
+
+    String getName();
+
+    String getHelp();
+
+    /**
+     * Appends this metric in the Prometheus text exposition format.
+     *
+     * @param out The destination.
+     */
+    void writePrometheus(StringBuilder out);
+}
@@ -0,0 +1,113 @@
+package STL2GCODE.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The process-wide registry of metrics.
+ *
+ * Metrics are disabled unless the system property {@code remold.metrics} is
+ * {@code true} or {@link #setEnabled(boolean)} is called. While disabled, every
+ * update is a single volatile read and a branch, so instrumented code paths cost
+ * next to nothing.
+ */
+public final class Metrics {
+    private static volatile boolean enabled = Boolean.getBoolean("remold.metrics");
+    private static final Map<String, Metric> REGISTRY = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name The metric name, in Prometheus naming style.
+     * @param help A one-line description.
+     * @return The counter.
+     */
+    public static Counter counter(String name, String help) {
+        return register(name, Counter.class, () -> new Counter(name, help));
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use.
+     *
+     * @param name The metric name, in Prometheus naming style, ending in {@code _seconds}.
+     * @param help A one-line description.
+     * @return The timer.
+     */
+    public static Timer timer(String name, String help) {
+        return register(name, Timer.class, () -> new Timer(name, help));
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use.
+     *
+     * @param name The metric name, in Prometheus naming style.
+     * @param help A one-line description.
+     * @param upperBounds The upper bounds of the buckets.
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name, String help, double... upperBounds) {
+        return register(name, Histogram.class, () -> new Histogram(name, help, upperBounds));
+    }
+
+    /**
+     * @return Every registered metric in the Prometheus text exposition format.
+     */
+    public static String exportPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : getAll()) {
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return The registered metrics, in registration order.
+     */
+    public static List<Metric> getAll() {
+        synchronized (REGISTRY) {
+            return new ArrayList<>(REGISTRY.values());
+        }
+    }
+
+    /**
+     * Sets every registered metric back to zero.
+     */
+    public static void reset() {
+        for (Metric metric : getAll()) {
+            if (metric instanceof Counter) {
+                ((Counter) metric).reset();
+            } else if (metric instanceof Histogram) {
+                ((Histogram) metric).reset();
+            }
+        }
+    }
+
+    private static <T extends Metric> T register(String name, Class<T> type, Supplier<T> factory) {
+        synchronized (REGISTRY) {
+            Metric existing = REGISTRY.get(name);
+            if (existing == null) {
+                T created = factory.get();
+                REGISTRY.put(name, created);
+                return created;
+            }
+            if (existing.getClass() != type) {
+                throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.getClass().getSimpleName());
+            }
+            return type.cast(existing);
+        }
+    }
+}
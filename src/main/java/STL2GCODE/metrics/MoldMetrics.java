@@ -0,0 +1,51 @@
+package STL2GCODE.metrics;
+
+/**
+ * The metrics recorded by the conversion stages.
+ */
+public final class MoldMetrics {
+    public static final Counter STL_BYTES_READ = Metrics.counter("remold_stl_bytes_read_total",
+            "Bytes of STL input parsed");
+    public static final Counter MESH_BYTES_READ = Metrics.counter("remold_mesh_bytes_read_total",
+            "Bytes of OBJ, PLY and 3MF input parsed");
+    public static final Counter HEIGHT_MAP_BYTES_READ = Metrics.counter("remold_height_map_bytes_read_total",
+            "Bytes of PGM, PNG and raw float32 height map input parsed");
+    public static final Counter TRIANGLES_PARSED = Metrics.counter("remold_triangles_parsed_total",
+            "Triangles decoded from mesh input");
+    public static final Counter TRIANGLES_FILTERED = Metrics.counter("remold_triangles_filtered_total",
+            "Triangles removed by the planar filter");
+    public static final Counter PIN_QUERIES = Metrics.counter("remold_pin_queries_total",
+            "Pins whose depth was looked up in a mesh");
+    public static final Counter PIN_MISSES = Metrics.counter("remold_pin_misses_total",
+            "Pin lookups that hit no triangle and returned -1");
+    public static final Counter GCODE_BYTES_WRITTEN = Metrics.counter("remold_gcode_bytes_written_total",
+            "Characters of G-code written");
+    public static final Counter CACHE_MEMORY_HITS = Metrics.counter("remold_cache_memory_hits_total",
+            "Conversion results served from the in-memory cache");
+    public static final Counter CACHE_DISK_HITS = Metrics.counter("remold_cache_disk_hits_total",
+            "Conversion results served from the on-disk cache");
+    public static final Counter CACHE_SHARED = Metrics.counter("remold_cache_shared_total",
+            "Requests that waited for an identical conversion already running");
+    public static final Counter CACHE_MISSES = Metrics.counter("remold_cache_misses_total",
+            "Conversion results that had to be computed");
+    public static final Counter JOBS_COMPLETED = Metrics.counter("remold_jobs_completed_total",
+            "Mold jobs run by the fleet scheduler");
+    public static final Counter PINS_CHANGED = Metrics.counter("remold_pins_changed_total",
+            "Pins the fleet scheduler expected to move for the jobs it ran");
+
+    public static final Timer PARSE_TIME = Metrics.timer("remold_parse_seconds",
+            "Time spent parsing mesh input");
+    public static final Timer FILTER_TIME = Metrics.timer("remold_filter_seconds",
+            "Time spent in the mold filters");
+    public static final Timer INDEX_BUILD_TIME = Metrics.timer("remold_index_build_seconds",
+            "Time spent building search structures over triangles");
+    public static final Timer DEPTH_MAP_TIME = Metrics.timer("remold_depth_map_seconds",
+            "Time spent generating depth maps");
+    public static final Timer POST_PROCESS_TIME = Metrics.timer("remold_post_process_seconds",
+            "Time spent filtering depth maps");
+    public static final Timer GCODE_TIME = Metrics.timer("remold_gcode_seconds",
+            "Time spent writing G-code");
+
+    private MoldMetrics() {
+    }
+}
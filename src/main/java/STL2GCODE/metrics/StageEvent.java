@@ -0,0 +1,63 @@
+package STL2GCODE.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event spanning one stage of a conversion. Events are only recorded while a
+ * flight recording with {@code remold.Stage} enabled is running; otherwise
+ * {@link #end(long, long)} returns after a single check.
+ *
+ * <pre>
+ * StageEvent event = StageEvent.begin("parse");
+ * ...
+ * event.end(triangles.size(), bytes.length);
+ * </pre>
+ */
+@Name("remold.Stage")
+@Label("Conversion Stage")
+@Category("ReMold")
+@Description("A stage of the STL to G-code conversion")
+public class StageEvent extends Event {
+    @Label("Stage")
+    public String stage;
+
+    @Label("Items")
+    @Description("Triangles or pins processed by the stage")
+    public long items;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Starts timing a stage.
+     *
+     * @param stage The name of the stage.
+     * @return The event, to be ended when the stage completes.
+     */
+    public static StageEvent begin(String stage) {
+        StageEvent event = new StageEvent();
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and records the stage.
+     *
+     * @param items The number of triangles or pins processed.
+     * @param bytes The number of bytes read or written, or 0.
+     */
+    public void end(long items, long bytes) {
+        if (shouldCommit()) {
+            this.items = items;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
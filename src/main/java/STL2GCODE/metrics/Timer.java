@@ -0,0 +1,38 @@
+package STL2GCODE.metrics;
+
+/**
+ * A histogram of durations in seconds.
+ *
+ * <pre>
+ * long start = timer.start();
+ * ...
+ * timer.stop(start);
+ * </pre>
+ *
+ * While metrics are disabled {@link #start()} does not read the clock.
+ */
+public final class Timer extends Histogram {
+    static final double[] DEFAULT_BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    Timer(String name, String help) {
+        super(name, help, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @return The start time to pass to {@link #stop(long)}.
+     */
+    public long start() {
+        return Metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time passed since {@link #start()} returned the given value.
+     *
+     * @param start The value returned by {@link #start()}.
+     */
+    public void stop(long start) {
+        if (start != 0 && Metrics.isEnabled()) {
+            observe((System.nanoTime() - start) / 1e9);
+        }
+    }
+}
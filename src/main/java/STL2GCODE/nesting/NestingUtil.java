@@ -0,0 +1,95 @@
+package STL2GCODE.nesting;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts several parts on the pin bed at once so they are molded in a single cycle.
+ *
+ * <pre>
+ * List&lt;Placement&gt; placements = NestingUtil.nest(parts, layout, 5, NestingUtil.QUARTER_TURNS);
+ * double[][] depthMap = NestingUtil.generateDepthMap(parts, placements, layout);
+ * </pre>
+ */
+public class NestingUtil {
+    /**
+     * Rotations by 0 and 90 degrees, enough for most rectangular-ish parts.
+     */
+    public static final double[] QUARTER_TURNS = {0, Math.PI / 2};
+
+    /**
+     * Removes the non-planar faces of every part, as the mold filters do, and packs
+     * their footprints into the XY window of the pin layout.
+     *
+     * @param parts The triangles of each part. They are filtered in place.
+     * @param layout The pin layout whose window is the bed.
+     * @param clearance The minimum gap between two parts in mm.
+     * @param angles The rotations each part may be placed at, in radians.
+     * @return One placement per part, in bed coordinates.
+     * @throws IllegalArgumentException Thrown if the parts do not all fit on the bed.
+     */
+    public static List<Placement> nest(List<List<Triangle>> parts, PinLayout layout, double clearance, double[] angles) {
+        List<PartFootprint> footprints = new ArrayList<>();
+        double[] minZ = new double[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            List<Triangle> part = parts.get(i);
+            // the bounds include the removed faces, as in TriangleFilterUtil.applyMoldFilters
+            minZ[i] = TriangleFilterUtil.calculateAABBMin(part).z;
+            TriangleFilterUtil.makePlanar(part);
+            footprints.add(PartFootprint.of(part));
+        }
+        SkylineNester nester = new SkylineNester(layout.getXMax() - layout.getXMin(), layout.getYMax() - layout.getYMin(), clearance);
+        List<Placement> placements = new ArrayList<>();
+        for (Placement p : nester.nest(footprints, angles)) {
+            placements.add(new Placement(p.getPart(), p.getAngle(), p.getX() + layout.getXMin(), p.getY() + layout.getYMin(),
+                    p.getWidth(), p.getHeight(), minZ[p.getPart()]));
+        }
+        return placements;
+    }
+
+    /**
+     * Moves every part to its placement and merges them into one mesh. Each part is
+     * lowered by {@link Placement#getMinZ()}, so that the lowest point it had before
+     * the planar filter sits at z = 0, as {@link TriangleFilterUtil#applyMoldFilters}
+     * does for a single part.
+     *
+     * @param parts The triangles of each part. They are moved in place.
+     * @param placements The placements returned by {@link #nest}.
+     * @return The triangles of all parts.
+     */
+    public static List<Triangle> arrange(List<List<Triangle>> parts, List<Placement> placements) {
+        List<Triangle> combined = new ArrayList<>();
+        for (Placement placement : placements) {
+            List<Triangle> part = parts.get(placement.getPart());
+            if (part.isEmpty()) {
+                continue;
+            }
+            TriangleFilterUtil.rotateToOptimizeZ(part, placement.getAngle());
+            double[] bounds = PartFootprint.of(part).boundsAt(0);
+            Vec3d translation = new Vec3d(placement.getX() - bounds[0], placement.getY() - bounds[1], -placement.getMinZ());
+            for (Triangle triangle : part) {
+                triangle.translate(translation);
+            }
+            combined.addAll(part);
+        }
+        return combined;
+    }
+
+    /**
+     * Arranges the parts and generates the depth map of the whole bed in one pass.
+     *
+     * @param parts The triangles of each part. They are moved in place.
+     * @param placements The placements returned by {@link #nest}.
+     * @param layout The pin layout.
+     * @return A 2D double array representing the depth map of the bed.
+     */
+    public static double[][] generateDepthMap(List<List<Triangle>> parts, List<Placement> placements, PinLayout layout) {
+        return DepthMapUtil.generateDepthMap(arrange(parts, placements), layout);
+    }
+}
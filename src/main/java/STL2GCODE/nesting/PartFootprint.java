@@ -0,0 +1,108 @@
+package STL2GCODE.nesting;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The outline of a part projected onto the XY plane, kept as its convex hull so the
+ * bounding rectangle at any rotation can be computed from a handful of points.
+ */
+public class PartFootprint {
+    private final double[] hullX;
+    private final double[] hullY;
+
+    private PartFootprint(double[] hullX, double[] hullY) {
+        this.hullX = hullX;
+        this.hullY = hullY;
+    }
+
+    /**
+     * Computes the footprint of a part from its triangles.
+     *
+     * @param triangles The triangles of the part.
+     * @return The footprint.
+     * @throws IllegalArgumentException Thrown if the list of triangles is empty.
+     */
+    public static PartFootprint of(List<Triangle> triangles) {
+        if (triangles == null || triangles.isEmpty()) {
+            throw new IllegalArgumentException("The list of triangles cannot be null or empty.");
+        }
+        List<double[]> points = new ArrayList<>(triangles.size() * 3);
+        for (Triangle triangle : triangles) {
+            for (Vec3d v : triangle.getVertices()) {
+                points.add(new double[]{v.x, v.y});
+            }
+        }
+        return new PartFootprint(convexHull(points));
+    }
+
+    private PartFootprint(List<double[]> hull) {
+        this(hull.stream().mapToDouble(p -> p[0]).toArray(), hull.stream().mapToDouble(p -> p[1]).toArray());
+    }
+
+    /**
+     * Computes the bounding rectangle of the footprint after rotating the part about
+     * the origin, the way {@link STL2GCODE.util.TriangleFilterUtil#rotateToOptimizeZ} does.
+     *
+     * @param angle The angle of rotation in radians.
+     * @return {minX, minY, maxX, maxY} of the rotated footprint.
+     */
+    public double[] boundsAt(double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < hullX.length; i++) {
+            double x = hullX[i] * cos - hullY[i] * sin;
+            double y = hullX[i] * sin + hullY[i] * cos;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * @return The number of points on the convex hull.
+     */
+    public int getHullSize() {
+        return hullX.length;
+    }
+
+    /**
+     * Andrew's monotone chain.
+     */
+    private static List<double[]> convexHull(List<double[]> points) {
+        double[][] sorted = points.toArray(new double[0][]);
+        Arrays.sort(sorted, Comparator.<double[]>comparingDouble(p -> p[0]).thenComparingDouble(p -> p[1]));
+        if (sorted.length < 3) {
+            return Arrays.asList(sorted);
+        }
+        double[][] hull = new double[2 * sorted.length][];
+        int k = 0;
+        for (double[] p : sorted) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], p) <= 0) {
+                k--;
+            }
+            hull[k++] = p;
+        }
+        for (int i = sorted.length - 2, lower = k + 1; i >= 0; i--) {
+            double[] p = sorted[i];
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], p) <= 0) {
+                k--;
+            }
+            hull[k++] = p;
+        }
+        return Arrays.asList(Arrays.copyOf(hull, Math.max(1, k - 1)));
+    }
+
+    private static double cross(double[] o, double[] a, double[] b) {
+        return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+    }
+}
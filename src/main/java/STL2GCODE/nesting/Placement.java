@@ -0,0 +1,80 @@
+package STL2GCODE.nesting;
+
+/**
+ * Where a part goes on the bed: it is first rotated about the origin by
+ * {@link #getAngle()} and then moved so the minimum corner of its rotated footprint
+ * lands on {@code (getX(), getY())}.
+ */
+public final class Placement {
+    private final int part;
+    private final double angle;
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+    private final double minZ;
+
+    Placement(int part, double angle, double x, double y, double width, double height) {
+        this(part, angle, x, y, width, height, 0);
+    }
+
+    Placement(int part, double angle, double x, double y, double width, double height, double minZ) {
+        this.part = part;
+        this.angle = angle;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.minZ = minZ;
+    }
+
+    /**
+     * @return The index of the part in the list given to the nester.
+     */
+    public int getPart() {
+        return part;
+    }
+
+    /**
+     * @return The rotation about the Z axis in radians.
+     */
+    public double getAngle() {
+        return angle;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return The width of the rotated footprint, without clearance.
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the rotated footprint, without clearance.
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The lowest z of the part as it was given to {@link NestingUtil#nest},
+     * before its non-planar faces were removed; 0 for placements made by the
+     * {@link SkylineNester} alone.
+     */
+    public double getMinZ() {
+        return minZ;
+    }
+
+    @Override
+    public String toString() {
+        return "Placement[part " + part + " at " + x + ", " + y + ", " + Math.toDegrees(angle) + " deg]";
+    }
+}
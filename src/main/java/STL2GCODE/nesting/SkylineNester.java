@@ -0,0 +1,164 @@
+package STL2GCODE.nesting;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs rectangular footprints onto a rectangular bed with the skyline
+ * bottom-left heuristic. The skyline is the upper outline of everything placed so
+ * far; each part goes where it rests lowest on the skyline, and further left on
+ * ties, trying every allowed rotation. Parts are placed largest first.
+ *
+ * Clearance is kept by growing every footprint by the clearance on its right and
+ * top edge and the bed by the same amount, so parts keep their distance from each
+ * other but may still touch the bed edges.
+ */
+public class SkylineNester {
+    private final double bedWidth;
+    private final double bedHeight;
+    private final double clearance;
+
+    /**
+     * Skyline segments ordered by x, covering [0, bedWidth + clearance]: {x, y, width}.
+     */
+    private final List<double[]> skyline = new ArrayList<>();
+
+    /**
+     * @param bedWidth The usable width of the bed in mm.
+     * @param bedHeight The usable height of the bed in mm.
+     * @param clearance The minimum gap between two parts in mm.
+     */
+    public SkylineNester(double bedWidth, double bedHeight, double clearance) {
+        if (!(bedWidth > 0) || !(bedHeight > 0) || clearance < 0) {
+            throw new IllegalArgumentException("The bed must have a positive size and the clearance must not be negative.");
+        }
+        this.bedWidth = bedWidth;
+        this.bedHeight = bedHeight;
+        this.clearance = clearance;
+    }
+
+    /**
+     * Places the parts. Coordinates of the result are relative to the bed's minimum corner.
+     *
+     * @param footprints The footprints of the parts.
+     * @param angles The rotations each part may be placed at, in radians.
+     * @return One placement per part, in the order of the footprints.
+     * @throws IllegalArgumentException Thrown if a part does not fit on the bed.
+     */
+    public List<Placement> nest(List<PartFootprint> footprints, double[] angles) {
+        if (angles.length == 0) {
+            throw new IllegalArgumentException("At least one rotation must be allowed.");
+        }
+        skyline.clear();
+        skyline.add(new double[]{0, 0, bedWidth + clearance});
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < footprints.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> -smallestArea(footprints.get(i), angles)));
+
+        Placement[] placements = new Placement[footprints.size()];
+        for (int part : order) {
+            PartFootprint footprint = footprints.get(part);
+            double bestY = Double.MAX_VALUE;
+            double bestX = Double.MAX_VALUE;
+            int bestSegment = -1;
+            double bestAngle = 0;
+            double[] bestBounds = null;
+            for (double angle : angles) {
+                double[] bounds = footprint.boundsAt(angle);
+                double w = bounds[2] - bounds[0];
+                double h = bounds[3] - bounds[1];
+                for (int s = 0; s < skyline.size(); s++) {
+                    double y = restingHeight(s, w + clearance);
+                    if (y < 0 || y + h > bedHeight) {
+                        continue;
+                    }
+                    double x = skyline.get(s)[0];
+                    if (y < bestY || (y == bestY && x < bestX)) {
+                        bestY = y;
+                        bestX = x;
+                        bestSegment = s;
+                        bestAngle = angle;
+                        bestBounds = bounds;
+                    }
+                }
+            }
+            if (bestSegment < 0) {
+                throw new IllegalArgumentException("Part " + part + " does not fit on the bed.");
+            }
+            double w = bestBounds[2] - bestBounds[0];
+            double h = bestBounds[3] - bestBounds[1];
+            addToSkyline(bestSegment, w + clearance, bestY + h + clearance);
+            placements[part] = new Placement(part, bestAngle, bestX, bestY, w, h);
+        }
+
+        List<Placement> result = new ArrayList<>();
+        for (Placement placement : placements) {
+            result.add(placement);
+        }
+        return result;
+    }
+
+    /**
+     * @return The height a rectangle of the given width rests at when its left edge
+     * is on the start of the given segment, or -1 if it sticks out of the bed.
+     */
+    private double restingHeight(int segment, double width) {
+        double x = skyline.get(segment)[0];
+        if (x + width > bedWidth + clearance + 1e-9) {
+            return -1;
+        }
+        double y = 0;
+        double remaining = width;
+        for (int s = segment; s < skyline.size() && remaining > 1e-9; s++) {
+            double[] seg = skyline.get(s);
+            y = Math.max(y, seg[1]);
+            remaining -= seg[2];
+        }
+        return y;
+    }
+
+    private void addToSkyline(int segment, double width, double top) {
+        double x = skyline.get(segment)[0];
+        skyline.add(segment, new double[]{x, top, width});
+        double end = x + width;
+        int s = segment + 1;
+        while (s < skyline.size()) {
+            double[] seg = skyline.get(s);
+            if (seg[0] >= end - 1e-9) {
+                break;
+            }
+            double segEnd = seg[0] + seg[2];
+            if (segEnd <= end + 1e-9) {
+                skyline.remove(s);
+            } else {
+                seg[2] = segEnd - end;
+                seg[0] = end;
+                break;
+            }
+        }
+        // merge neighbours of equal height
+        for (int i = 0; i + 1 < skyline.size(); ) {
+            double[] a = skyline.get(i);
+            double[] b = skyline.get(i + 1);
+            if (a[1] == b[1]) {
+                a[2] += b[2];
+                skyline.remove(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static double smallestArea(PartFootprint footprint, double[] angles) {
+        double best = Double.MAX_VALUE;
+        for (double angle : angles) {
+            double[] b = footprint.boundsAt(angle);
+            best = Math.min(best, (b[2] - b[0]) * (b[3] - b[1]));
+        }
+        return best;
+    }
+}
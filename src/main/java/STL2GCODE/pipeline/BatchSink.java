@@ -0,0 +1,28 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.stl4j.Triangle;
+
+import java.util.List;
+
+/**
+ * The last step of a {@link StagedPipeline}, which consumes the batches and
+ * produces the result of the pipeline.
+ *
+ * @param <R> The type of the result.
+ */
+public interface BatchSink<R> {
+
+    /**
+     * Consumes a batch of triangles. Batches arrive in file order.
+     *
+     * @param batch The triangles of this batch.
+     */
+    void accept(List<Triangle> batch);
+
+    /**
+     * Called once after the last batch.
+     *
+     * @return The result of the pipeline.
+     */
+    R finish();
+}
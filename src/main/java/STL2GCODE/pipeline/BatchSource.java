@@ -0,0 +1,24 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.stl4j.Triangle;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The first step of a {@link StagedPipeline}, which produces batches of triangles,
+ * for example by streaming them out of a file.
+ */
+@FunctionalInterface
+public interface BatchSource {
+
+    /**
+     * Produces all batches, handing each to the output as soon as it is complete.
+     * The output blocks while the next stage is busy.
+     *
+     * @param output Receives the batches.
+     * @throws IOException Thrown if reading the input fails.
+     */
+    void produce(Consumer<List<Triangle>> output) throws IOException;
+}
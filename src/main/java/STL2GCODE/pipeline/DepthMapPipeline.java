@@ -0,0 +1,95 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.mesh.MeshImporter;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streams a mesh file (see {@link MeshImporter}) through parse, filter, transform and rasterize stages running
+ * concurrently, producing the same depth map as parsing the whole file and calling
+ * {@link TriangleFilterUtil#applyMoldFilters} and
+ * {@link STL2GCODE.util.DepthMapUtil#generateDepthMap(List, PinLayout)}, without
+ * ever holding the whole mesh in memory.
+ *
+ * Translating the part to the first quadrant needs the minimum corner of the whole
+ * mesh before the first triangle can be moved, so the file is first scanned once for
+ * its bounds. The scan keeps nothing but the running minimum.
+ */
+public class DepthMapPipeline {
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /**
+     * Generates the depth map of a mesh file with the default batch size and queue capacity.
+     *
+     * @param file The mesh file.
+     * @param layout The pin layout of the depth map.
+     * @param rotationAngle The rotation of the part about the Z axis in radians.
+     * @return A 2D double array representing the depth map.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws InterruptedException Thrown if interrupted while waiting for the stages.
+     */
+    public static double[][] generateDepthMap(Path file, PinLayout layout, double rotationAngle) throws IOException, InterruptedException {
+        return generateDepthMap(file, layout, rotationAngle, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Generates the depth map of a mesh file.
+     *
+     * @param file The mesh file.
+     * @param layout The pin layout of the depth map.
+     * @param rotationAngle The rotation of the part about the Z axis in radians.
+     * @param batchSize The number of triangles per batch.
+     * @param queueCapacity The number of batches that may wait between two stages.
+     * @return A 2D double array representing the depth map.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws InterruptedException Thrown if interrupted while waiting for the stages.
+     */
+    public static double[][] generateDepthMap(Path file, PinLayout layout, double rotationAngle, int batchSize, int queueCapacity)
+            throws IOException, InterruptedException {
+        Vec3d min = scanMinimum(file, batchSize);
+        if (min == null) {
+            throw new IllegalArgumentException("The list of triangles cannot be null or empty.");
+        }
+        Vec3d translation = new Vec3d(-min.x, -min.y, -min.z);
+
+        StagedPipeline pipeline = new StagedPipeline(queueCapacity)
+                .addStage("filter", batch -> {
+                    TriangleFilterUtil.makePlanar(batch);
+                    return batch;
+                })
+                .addStage("transform", batch -> {
+                    for (Triangle triangle : batch) {
+                        triangle.translate(translation);
+                    }
+                    TriangleFilterUtil.rotateToOptimizeZ(batch, rotationAngle);
+                    return batch;
+                });
+        return pipeline.run(out -> MeshImporter.streamMeshFile(file, batchSize, out), new DepthMapRasterizer(layout));
+    }
+
+    /**
+     * Streams the file once to find the minimum corner of its bounding box. The pass
+     * is not counted in the parse metrics, only the one that builds the depth map is.
+     *
+     * @param file The mesh file.
+     * @param batchSize The number of triangles per batch.
+     * @return The minimum corner, or null if the file holds no triangles.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public static Vec3d scanMinimum(Path file, int batchSize) throws IOException {
+        Vec3d[] min = new Vec3d[1];
+        MeshImporter.streamMeshFile(file, batchSize, batch -> {
+            Vec3d batchMin = TriangleFilterUtil.calculateAABBMin(batch);
+            min[0] = min[0] == null ? batchMin : new Vec3d(
+                    Math.min(min[0].x, batchMin.x), Math.min(min[0].y, batchMin.y), Math.min(min[0].z, batchMin.z));
+        }, false);
+        return min[0];
+    }
+}
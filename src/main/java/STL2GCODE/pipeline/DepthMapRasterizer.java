@@ -0,0 +1,74 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.stl4j.PackedTriangles;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+
+import java.util.List;
+
+/**
+ * Builds a depth map incrementally from batches of triangles. A pin takes its depth
+ * from the first triangle, in file order, that contains it, exactly like
+ * {@link STL2GCODE.util.DepthMapUtil#generateDepthMap(List, PinLayout)} does for a
+ * complete list, so the result does not depend on how the triangles were batched.
+ */
+public class DepthMapRasterizer implements BatchSink<double[][]> {
+    private final PinLayout layout;
+    private final double[][] depthMap;
+    private final boolean[][] resolved;
+    private int unresolved;
+
+    /**
+     * @param layout The pin layout of the depth map.
+     */
+    public DepthMapRasterizer(PinLayout layout) {
+        int size = layout.getGridSize();
+        this.layout = layout;
+        this.depthMap = new double[size][size];
+        this.resolved = new boolean[size][size];
+        this.unresolved = size * size;
+    }
+
+    @Override
+    public void accept(List<Triangle> batch) {
+        int size = layout.getGridSize();
+        PackedTriangles packed = PackedTriangles.of(batch);
+        for (int t = 0; t < packed.size(); t++) {
+            if (unresolved == 0) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                double x = layout.getX(i);
+                for (int j = 0; j < size; j++) {
+                    if (resolved[i][j]) {
+                        continue;
+                    }
+                    double z = packed.intersectZ(t, x, layout.getY(j));
+                    if (!Double.isNaN(z)) {
+                        depthMap[i][j] = z;
+                        resolved[i][j] = true;
+                        unresolved--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The depth map, with -1 for every pin no triangle covered.
+     */
+    @Override
+    public double[][] finish() {
+        int size = layout.getGridSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (!resolved[i][j]) {
+                    depthMap[i][j] = -1;
+                }
+            }
+        }
+        DepthMapUtil.recordPinQueries(size * size, unresolved);
+        return depthMap;
+    }
+}
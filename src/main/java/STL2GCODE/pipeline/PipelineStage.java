@@ -0,0 +1,22 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.stl4j.Triangle;
+
+import java.util.List;
+
+/**
+ * A step of a {@link StagedPipeline} that transforms one batch of triangles at a time.
+ * Stages run on their own thread and only ever see one batch at once, so a stage
+ * must not depend on triangles from other batches.
+ */
+@FunctionalInterface
+public interface PipelineStage {
+
+    /**
+     * Processes a batch of triangles. The batch may be modified and returned.
+     *
+     * @param batch The triangles of this batch, in file order.
+     * @return The triangles to pass on to the next stage; an empty list drops the batch.
+     */
+    List<Triangle> process(List<Triangle> batch);
+}
@@ -0,0 +1,178 @@
+package STL2GCODE.pipeline;
+
+import STL2GCODE.stl4j.Triangle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a source, any number of stages and a sink concurrently, each on its own
+ * thread, connected by bounded queues of triangle batches.
+ *
+ * A stage that falls behind fills its input queue, which blocks the stage before it
+ * and eventually the source, so at most {@code queueCapacity} batches are held
+ * between any two steps no matter how large the input is. Because every step works
+ * on a different batch at the same time, the total time approaches that of the
+ * slowest step rather than the sum of all of them.
+ */
+public class StagedPipeline {
+    private static final Logger LOGGER = Logger.getLogger(StagedPipeline.class.getName());
+
+    /**
+     * Marks the end of the stream. Compared by identity.
+     */
+    private static final List<Triangle> END_OF_STREAM = new ArrayList<>();
+
+    private final int queueCapacity;
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<PipelineStage> stages = new ArrayList<>();
+
+    /**
+     * @param queueCapacity The number of batches that may wait between two steps.
+     */
+    public StagedPipeline(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive.");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Appends a stage to the pipeline.
+     *
+     * @param name The name of the stage, used for its thread.
+     * @param stage The stage.
+     * @return This pipeline.
+     */
+    public StagedPipeline addStage(String name, PipelineStage stage) {
+        stageNames.add(name);
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Runs the pipeline to completion. The sink runs on the calling thread.
+     *
+     * @param source Produces the batches.
+     * @param sink Consumes the batches and produces the result.
+     * @param <R> The type of the result.
+     * @return The result of the sink.
+     * @throws IOException Thrown if the source fails to read its input.
+     * @throws InterruptedException Thrown if the calling thread is interrupted.
+     */
+    public <R> R run(BatchSource source, BatchSink<R> sink) throws IOException, InterruptedException {
+        List<BlockingQueue<List<Triangle>>> queues = new ArrayList<>();
+        for (int i = 0; i <= stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        BlockingQueue<List<Triangle>> sourceOut = queues.get(0);
+        threads.add(new Thread(() -> {
+            try {
+                source.produce(batch -> put(sourceOut, batch));
+                sourceOut.put(END_OF_STREAM);
+            } catch (Throwable t) {
+                fail(failure, threads, t);
+            }
+        }, "pipeline-source"));
+
+        for (int i = 0; i < stages.size(); i++) {
+            PipelineStage stage = stages.get(i);
+            BlockingQueue<List<Triangle>> in = queues.get(i);
+            BlockingQueue<List<Triangle>> out = queues.get(i + 1);
+            threads.add(new Thread(() -> {
+                long busy = 0;
+                try {
+                    List<Triangle> batch;
+                    while ((batch = in.take()) != END_OF_STREAM) {
+                        long start = System.nanoTime();
+                        List<Triangle> processed = stage.process(batch);
+                        busy += System.nanoTime() - start;
+                        if (!processed.isEmpty()) {
+                            out.put(processed);
+                        }
+                    }
+                    out.put(END_OF_STREAM);
+                } catch (Throwable t) {
+                    fail(failure, threads, t);
+                }
+                LOGGER.log(Level.FINE, "Stage {0} was busy for {1} ms", new Object[]{Thread.currentThread().getName(), busy / 1_000_000});
+            }, "pipeline-" + stageNames.get(i)));
+        }
+
+        for (Thread t : threads) {
+            t.setDaemon(true);
+            t.start();
+        }
+        BlockingQueue<List<Triangle>> sinkIn = queues.get(stages.size());
+        try {
+            List<Triangle> batch;
+            while (failure.get() == null) {
+                // poll so that a failure upstream is noticed even though no batch will arrive
+                batch = sinkIn.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == END_OF_STREAM) {
+                    break;
+                } else if (batch != null) {
+                    sink.accept(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            interruptAll(threads);
+            throw e;
+        } catch (RuntimeException e) {
+            fail(failure, threads, e);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) t).getCause();
+        } else if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException("Pipeline failed", t);
+        }
+        return sink.finish();
+    }
+
+    private static void put(BlockingQueue<List<Triangle>> queue, List<Triangle> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Pipeline was stopped");
+        }
+    }
+
+    private static void fail(AtomicReference<Throwable> failure, List<Thread> threads, Throwable t) {
+        // the first failure wins, the interruptions it causes in other threads are not reported
+        if (failure.compareAndSet(null, t)) {
+            interruptAll(threads);
+        }
+    }
+
+    private static void interruptAll(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+    }
+}
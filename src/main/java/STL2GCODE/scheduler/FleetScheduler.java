@@ -0,0 +1,369 @@
+package STL2GCODE.scheduler;
+
+import STL2GCODE.metrics.MoldMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs mold jobs on a fleet of molding beds.
+ *
+ * Submitted jobs wait in a priority queue. Every machine has one slot for the job it
+ * runs next; whenever a slot is free, the waiting jobs are handed out in priority
+ * order, each to the free machine with the same bed layout on which the fewest pins
+ * have to move. That count compares the job's target heights with the heights the
+ * machine will have once its current job is done, which is its reported pin state
+ * when it is idle. The G-code of a job is written on a separate pool as soon as the
+ * job is given a slot, so it is ready by the time the machine finishes its current
+ * job.
+ *
+ * A job for a bed layout no machine has fails with an
+ * {@link IllegalArgumentException}.
+ */
+public class FleetScheduler implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FleetScheduler.class.getName());
+
+    /**
+     * Pins whose height differs by less than this many millimeters are not counted as changed.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.01;
+
+    private static final Comparator<Pending> ORDER = Comparator
+            .comparingInt((Pending p) -> -p.job.getPriority())
+            .thenComparingLong(p -> p.sequence);
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final double tolerance;
+    private final ExecutorService gcodePool;
+    private final PriorityBlockingQueue<Pending> queue = new PriorityBlockingQueue<>(16, ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFilled = lock.newCondition();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a scheduler with the default tolerance and one G-code thread, and
+     * starts a worker thread per machine.
+     *
+     * @param machines The machines of the fleet.
+     */
+    public FleetScheduler(List<? extends Machine> machines) {
+        this(machines, 1, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates a scheduler and starts a worker thread per machine.
+     *
+     * @param machines     The machines of the fleet.
+     * @param gcodeThreads The number of threads writing G-code ahead of the machines.
+     * @param tolerance    The height difference in millimeters below which a pin does not count as changed.
+     */
+    public FleetScheduler(List<? extends Machine> machines, int gcodeThreads, double tolerance) {
+        if (machines.isEmpty()) {
+            throw new IllegalArgumentException("A fleet needs at least one machine.");
+        }
+        Set<String> names = new HashSet<>();
+        for (Machine machine : machines) {
+            if (!names.add(machine.getName())) {
+                throw new IllegalArgumentException("Duplicate machine name " + machine.getName());
+            }
+        }
+        this.tolerance = tolerance;
+        this.gcodePool = Executors.newFixedThreadPool(Math.max(1, gcodeThreads), r -> {
+            Thread t = new Thread(r, "fleet-gcode");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Machine machine : machines) {
+            Slot slot = new Slot(machine);
+            slots.add(slot);
+            slot.worker.start();
+        }
+    }
+
+    /**
+     * Queues a job.
+     *
+     * @param job The job.
+     * @return Completes with the result once a machine has run the job, or
+     * exceptionally if it cannot be run.
+     */
+    public CompletableFuture<JobResult> submit(MoldJob job) {
+        Pending pending = new Pending(job, sequence.getAndIncrement());
+        lock.lock();
+        try {
+            if (closed) {
+                pending.future.completeExceptionally(new CancellationException("The scheduler is closed"));
+                return pending.future;
+            }
+            queue.add(pending);
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * @return The number of jobs waiting for a machine, not counting those already given a slot.
+     */
+    public int getQueuedJobs() {
+        return queue.size();
+    }
+
+    /**
+     * Counts the pins that have to move to get from one set of heights to another.
+     *
+     * @param state     The current heights, {@code [row][col]}.
+     * @param target    The target heights; NaN for pins that are not moved.
+     * @param tolerance The difference below which a pin does not count as changed.
+     * @return The number of pins to move.
+     */
+    public static int countChangedPins(double[][] state, double[][] target, double tolerance) {
+        int changed = 0;
+        for (int row = 0; row < target.length; row++) {
+            for (int col = 0; col < target[row].length; col++) {
+                if (isChanged(state[row][col], target[row][col], tolerance)) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Determines whether a pin has to move to get to its target height.
+     *
+     * @param state     The current height of the pin.
+     * @param target    The target height; NaN for a pin that is not moved.
+     * @param tolerance The difference below which a pin does not count as changed.
+     * @return True if the pin is moved by at least the tolerance.
+     */
+    public static boolean isChanged(double state, double target, double tolerance) {
+        return !Double.isNaN(target) && !(Math.abs(target - state) < tolerance);
+    }
+
+    /**
+     * Hands the waiting jobs to free slots, highest priority first.
+     */
+    private void dispatch() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            List<Pending> waiting = new ArrayList<>();
+            queue.drainTo(waiting);
+            waiting.sort(ORDER);
+            for (Pending pending : waiting) {
+                if (!assign(pending)) {
+                    queue.add(pending);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean assign(Pending pending) {
+        MoldJob job = pending.job;
+        boolean compatible = false;
+        Slot best = null;
+        int bestCost = 0;
+        for (Slot slot : slots) {
+            if (!slot.machine.getBed().equals(job.getLayout())) {
+                continue;
+            }
+            compatible = true;
+            if (slot.next != null) {
+                continue;
+            }
+            int cost = countChangedPins(slot.projectedState, job.getTargetHeights(), tolerance);
+            if (best == null || cost < bestCost || (cost == bestCost && !slot.busy && best.busy)) {
+                best = slot;
+                bestCost = cost;
+            }
+        }
+        if (!compatible) {
+            pending.future.completeExceptionally(new IllegalArgumentException(
+                    "No machine of the fleet has the bed " + job.getLayout()));
+            return true;
+        }
+        if (best == null) {
+            return false;
+        }
+        pending.changedPins = bestCost;
+        pending.gcode = CompletableFuture.supplyAsync(() -> {
+            try {
+                return job.toGCode();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, gcodePool);
+        best.next = pending;
+        best.projectedState = applyTargets(best.projectedState, job.getTargetHeights());
+        slotFilled.signalAll();
+        LOGGER.log(Level.FINE, "{0} goes to {1}, {2} pins to change",
+                new Object[]{job.getId(), best.machine.getName(), bestCost});
+        return true;
+    }
+
+    private static double[][] applyTargets(double[][] state, double[][] target) {
+        double[][] result = new double[state.length][];
+        for (int row = 0; row < state.length; row++) {
+            result[row] = state[row].clone();
+            for (int col = 0; col < result[row].length; col++) {
+                if (!Double.isNaN(target[row][col])) {
+                    result[row][col] = target[row][col];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops the workers after their current job. Jobs that have not started fail
+     * with a {@link CancellationException}.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            slotFilled.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Slot slot : slots) {
+            try {
+                slot.worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        gcodePool.shutdownNow();
+        lock.lock();
+        try {
+            List<Pending> left = new ArrayList<>();
+            queue.drainTo(left);
+            for (Slot slot : slots) {
+                if (slot.next != null) {
+                    left.add(slot.next);
+                    slot.next = null;
+                }
+            }
+            for (Pending pending : left) {
+                pending.future.completeExceptionally(new CancellationException("The scheduler is closed"));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A job waiting in the queue or in a slot.
+     */
+    private static final class Pending {
+        final MoldJob job;
+        final long sequence;
+        final long submitted = System.nanoTime();
+        final CompletableFuture<JobResult> future = new CompletableFuture<>();
+        int changedPins;
+        CompletableFuture<String> gcode;
+
+        Pending(MoldJob job, long sequence) {
+            this.job = job;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A machine, the job it runs next and the thread feeding it. The fields other
+     * than the machine are guarded by the scheduler's lock.
+     */
+    private final class Slot {
+        final Machine machine;
+        final Thread worker;
+        Pending next;
+        boolean busy;
+        // the pins once every job given to the machine is done
+        double[][] projectedState;
+
+        Slot(Machine machine) {
+            this.machine = machine;
+            this.projectedState = machine.getPinState();
+            this.worker = new Thread(this::work, "fleet-" + machine.getName());
+            this.worker.setDaemon(true);
+        }
+
+        private void work() {
+            while (true) {
+                Pending pending;
+                lock.lock();
+                try {
+                    while (next == null && !closed) {
+                        slotFilled.awaitUninterruptibly();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    pending = next;
+                    next = null;
+                    busy = true;
+                } finally {
+                    lock.unlock();
+                }
+                // the slot is free again: the next job's G-code is written while this one runs
+                dispatch();
+                run(pending);
+                lock.lock();
+                try {
+                    busy = false;
+                    if (next == null) {
+                        projectedState = machine.getPinState();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                dispatch();
+            }
+        }
+
+        private void run(Pending pending) {
+            long start = System.nanoTime();
+            long waitMillis = (start - pending.submitted) / 1_000_000;
+            try {
+                String gcode = pending.gcode.join();
+                machine.run(pending.job, gcode);
+                long runMillis = (System.nanoTime() - start) / 1_000_000;
+                MoldMetrics.JOBS_COMPLETED.add(1);
+                MoldMetrics.PINS_CHANGED.add(pending.changedPins);
+                pending.future.complete(new JobResult(pending.job, machine.getName(), pending.changedPins, waitMillis, runMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.future.completeExceptionally(e);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Job " + pending.job.getId() + " failed on " + machine.getName(), e);
+                pending.future.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package STL2GCODE.scheduler;
+
+/**
+ * The outcome of a job run by a {@link FleetScheduler}.
+ */
+public final class JobResult {
+    private final MoldJob job;
+    private final String machine;
+    private final int changedPins;
+    private final long waitMillis;
+    private final long runMillis;
+
+    JobResult(MoldJob job, String machine, int changedPins, long waitMillis, long runMillis) {
+        this.job = job;
+        this.machine = machine;
+        this.changedPins = changedPins;
+        this.waitMillis = waitMillis;
+        this.runMillis = runMillis;
+    }
+
+    public MoldJob getJob() {
+        return job;
+    }
+
+    /**
+     * @return The name of the machine that ran the job.
+     */
+    public String getMachine() {
+        return machine;
+    }
+
+    /**
+     * @return The number of pins the scheduler estimated would change when it chose the machine.
+     */
+    public int getChangedPins() {
+        return changedPins;
+    }
+
+    /**
+     * @return The time from submitting the job until the machine started it.
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * @return The time the machine took to run the job.
+     */
+    public long getRunMillis() {
+        return runMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "JobResult[" + job.getId() + " on " + machine + ", " + changedPins + " pins changed, waited "
+                + waitMillis + " ms, ran " + runMillis + " ms]";
+    }
+}
@@ -0,0 +1,41 @@
+package STL2GCODE.scheduler;
+
+import STL2GCODE.util.PinLayout;
+
+import java.io.IOException;
+
+/**
+ * A molding bed the {@link FleetScheduler} can send jobs to. Implementations talk to
+ * real hardware, for example through a {@link STL2GCODE.gcode.stream.GCodeSender},
+ * or simulate it, see {@link SimulatedMachine}.
+ *
+ * The scheduler runs at most one job per machine at a time, always from the same
+ * thread.
+ */
+public interface Machine {
+    /**
+     * @return A name of the machine, unique within a fleet.
+     */
+    String getName();
+
+    /**
+     * @return The pin layout of the bed; only jobs generated for this layout are sent to the machine.
+     */
+    PinLayout getBed();
+
+    /**
+     * @return The current height of every pin, {@code [row][col]} as in
+     * {@link MoldJob#getTargetHeights()}. The caller may keep the array.
+     */
+    double[][] getPinState();
+
+    /**
+     * Sets the pins of a job and returns once the machine is done.
+     *
+     * @param job   The job.
+     * @param gcode The G-code of the job.
+     * @throws IOException Thrown if the machine cannot be reached or reports an error.
+     * @throws InterruptedException Thrown if interrupted while the job runs.
+     */
+    void run(MoldJob job, String gcode) throws IOException, InterruptedException;
+}
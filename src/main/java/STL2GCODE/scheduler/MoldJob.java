@@ -0,0 +1,119 @@
+package STL2GCODE.scheduler;
+
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.mesh.MeshImporter;
+import STL2GCODE.stl4j.ParseResult;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A mold to be set on one of the beds of a {@link FleetScheduler}: the depth map of
+ * the part, the pin layout it was generated for and the priority of the job. Jobs
+ * with a higher priority are started first; jobs of equal priority in the order
+ * they were submitted.
+ */
+public final class MoldJob {
+    private final String id;
+    private final int priority;
+    private final double[][] depthMap;
+    private final PinLayout layout;
+    private double[][] targetHeights;
+
+    /**
+     * @param id       A name of the job for logs and results.
+     * @param priority The priority of the job; higher runs first.
+     * @param depthMap The depth map of the part, as returned by {@link DepthMapUtil#generateDepthMap(List, PinLayout)}.
+     * @param layout   The pin layout the depth map was generated for.
+     */
+    public MoldJob(String id, int priority, double[][] depthMap, PinLayout layout) {
+        if (depthMap.length != layout.getGridSize()) {
+            throw new IllegalArgumentException("The depth map has " + depthMap.length + " rows, the layout "
+                    + layout.getGridSize());
+        }
+        this.id = id;
+        this.priority = priority;
+        this.depthMap = depthMap;
+        this.layout = layout;
+    }
+
+    /**
+     * Creates a job from a mesh file, applying the mold filters and generating the
+     * depth map.
+     *
+     * @param id            A name of the job.
+     * @param priority      The priority of the job; higher runs first.
+     * @param file          The mesh file.
+     * @param layout        The pin layout of the bed.
+     * @param rotationAngle The rotation of the part about the Z axis in radians.
+     * @return The job.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public static MoldJob fromMeshFile(String id, int priority, Path file, PinLayout layout, double rotationAngle)
+            throws IOException {
+        ParseResult parsed = MeshImporter.parseMeshWithStatistics(Files.readAllBytes(file));
+        List<Triangle> triangles = parsed.getTriangles();
+        TriangleFilterUtil.applyMoldFilters(triangles, parsed.getStatistics(), rotationAngle);
+        return new MoldJob(id, priority, DepthMapUtil.generateDepthMap(triangles, layout), layout);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public double[][] getDepthMap() {
+        return depthMap;
+    }
+
+    public PinLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * The heights the G-code of this job sets the pins to, {@code [row][col]} as in
+     * {@link DepthMapUtil#calculatePinHeights(double[][], PinLayout)}. Pins without
+     * data are set to the average height, and pins at height 0 are not moved at all
+     * and are NaN here, see {@link DepthMapUtil#targetHeights}.
+     *
+     * @return The target height of every pin. The array is shared; do not modify it.
+     */
+    public synchronized double[][] getTargetHeights() {
+        if (targetHeights == null) {
+            int size = layout.getGridSize();
+            double[] flat = DepthMapUtil.targetHeights(size * size, pin -> depthMap[pin / size][pin % size]);
+            double[][] target = new double[size][];
+            for (int row = 0; row < size; row++) {
+                target[row] = Arrays.copyOfRange(flat, row * size, (row + 1) * size);
+            }
+            targetHeights = target;
+        }
+        return targetHeights;
+    }
+
+    /**
+     * @return The G-code that sets the pins of this job.
+     * @throws IOException Never thrown by the in-memory writer.
+     */
+    public String toGCode() throws IOException {
+        StringWriter out = new StringWriter();
+        GCodeWriter.writeGCode(DepthMapUtil.calculatePinHeights(depthMap, layout), out);
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MoldJob[" + id + ", priority " + priority + "]";
+    }
+}
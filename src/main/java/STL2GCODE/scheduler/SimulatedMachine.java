@@ -0,0 +1,117 @@
+package STL2GCODE.scheduler;
+
+import STL2GCODE.util.PinLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stand-in for a molding bed, so that a {@link FleetScheduler} can be run without
+ * hardware. It interprets the G-code of each job, setting the pin under the head to
+ * the first Z move after each XY move, and takes a fixed time for every pin whose
+ * height actually changes.
+ */
+public class SimulatedMachine implements Machine {
+    private final String name;
+    private final PinLayout bed;
+    private final long millisPerChangedPin;
+    private final double[][] pins;
+    private final List<String> completedJobs = Collections.synchronizedList(new ArrayList<>());
+    private long changedPins = 0;
+
+    /**
+     * Creates a machine with every pin at height 0.
+     *
+     * @param name                The name of the machine.
+     * @param bed                 The pin layout of the bed.
+     * @param millisPerChangedPin The time it takes to move a single pin.
+     */
+    public SimulatedMachine(String name, PinLayout bed, long millisPerChangedPin) {
+        this.name = name;
+        this.bed = bed;
+        this.millisPerChangedPin = millisPerChangedPin;
+        this.pins = new double[bed.getGridSize()][bed.getGridSize()];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public PinLayout getBed() {
+        return bed;
+    }
+
+    @Override
+    public synchronized double[][] getPinState() {
+        double[][] copy = new double[pins.length][];
+        for (int row = 0; row < pins.length; row++) {
+            copy[row] = pins[row].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Sets the height of every pin, for example to the mold a real bed was left with.
+     *
+     * @param heights The heights, {@code [row][col]}.
+     */
+    public synchronized void setPinState(double[][] heights) {
+        for (int row = 0; row < pins.length; row++) {
+            System.arraycopy(heights[row], 0, pins[row], 0, pins.length);
+        }
+    }
+
+    @Override
+    public void run(MoldJob job, String gcode) throws IOException, InterruptedException {
+        int changed = 0;
+        int size = bed.getGridSize();
+        int row = -1;
+        int col = -1;
+        synchronized (this) {
+            for (String line : gcode.split("\n")) {
+                String[] words = line.trim().split("\\s+");
+                if (words.length == 0 || !words[0].equals("G0")) {
+                    continue;
+                }
+                if (words.length == 3 && words[1].startsWith("X") && words[2].startsWith("Y")) {
+                    col = (int) Math.round((Double.parseDouble(words[1].substring(1)) - bed.getXMin()) / bed.getXStep());
+                    row = (int) Math.round((Double.parseDouble(words[2].substring(1)) - bed.getYMin()) / bed.getYStep());
+                    if (row < 0 || row >= size || col < 0 || col >= size) {
+                        throw new IOException(name + ": move outside the bed in line '" + line + "'");
+                    }
+                } else if (words.length == 2 && words[1].startsWith("Z") && row >= 0) {
+                    double z = Double.parseDouble(words[1].substring(1));
+                    if (pins[row][col] != z) {
+                        changed++;
+                    }
+                    pins[row][col] = z;
+                    // the following Z0 only retracts the head
+                    row = -1;
+                }
+            }
+            changedPins += changed;
+        }
+        Thread.sleep(changed * millisPerChangedPin);
+        completedJobs.add(job.getId());
+    }
+
+    /**
+     * @return The ids of the jobs this machine ran, in order.
+     */
+    public List<String> getCompletedJobs() {
+        synchronized (completedJobs) {
+            return new ArrayList<>(completedJobs);
+        }
+    }
+
+    /**
+     * @return The number of pin moves that changed a height, over all jobs.
+     */
+    public synchronized long getChangedPins() {
+        return changedPins;
+    }
+}
@@ -0,0 +1,371 @@
+package STL2GCODE.service;
+
+import STL2GCODE.cache.CacheKey;
+import STL2GCODE.cache.ResultCache;
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.mesh.MeshImporter;
+import STL2GCODE.metrics.Metrics;
+import STL2GCODE.stl4j.ParseResult;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A resident conversion service, so that class loading and JIT warm-up are paid
+ * once per process instead of once per part.
+ *
+ * <pre>
+ * POST /gcode?xMin=..&amp;xMax=..&amp;yMin=..&amp;yMax=..&amp;grid=..&amp;rotation=..   mesh body, returns G-code
+ * POST /depthmap?...                                             mesh body, returns the depth map as CSV
+ * GET  /metrics                                                Prometheus text format
+ * GET  /health
+ * </pre>
+ *
+ * Omitted parameters default to {@link PinLayout#DEFAULT} and no rotation; the
+ * rotation is given in degrees. The grid must be an integer of at most
+ * {@value #MAX_GRID_SIZE} pins per side, so a single request cannot claim more
+ * memory than the service has.
+ *
+ * Every request is handled on its own lightweight thread (a virtual thread when the
+ * runtime supports them, a cached platform thread otherwise), while parsing and
+ * rasterizing run on a fixed pool sized to the CPU. At most {@code cpuThreads +
+ * maxQueued} conversions are admitted at once; further requests are turned away
+ * with 503 instead of piling up.
+ *
+ * Results are cached by the hash of the mesh and the parameters, see
+ * {@link ResultCache}, so a repeated request is a lookup. Identical requests that
+ * arrive while the result is being computed wait for that one conversion.
+ */
+public class MoldJobService {
+    private static final Logger LOGGER = Logger.getLogger(MoldJobService.class.getName());
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_QUEUED = 64;
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 256 * 1024 * 1024;
+    public static final int MAX_GRID_SIZE = 2048;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService cpuPool;
+    private final Semaphore admission;
+    private final int maxRequestBytes;
+    private final ResultCache cache;
+
+    /**
+     * Creates a service bound to the loopback interface. Call {@link #start()} to accept requests.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param cpuThreads The number of threads running conversions.
+     * @param maxQueued The number of admitted conversions that may wait for a CPU thread.
+     * @param maxRequestBytes The largest accepted mesh upload.
+     * @throws IOException Thrown if the port cannot be bound.
+     */
+    public MoldJobService(int port, int cpuThreads, int maxQueued, int maxRequestBytes) throws IOException {
+        this(port, cpuThreads, maxQueued, maxRequestBytes, new ResultCache(ResultCache.DEFAULT_MEMORY_BYTES, null));
+    }
+
+    /**
+     * Creates a service bound to the loopback interface. Call {@link #start()} to accept requests.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param cpuThreads The number of threads running conversions.
+     * @param maxQueued The number of admitted conversions that may wait for a CPU thread.
+     * @param maxRequestBytes The largest accepted mesh upload.
+     * @param cache The cache of conversion results.
+     * @throws IOException Thrown if the port cannot be bound.
+     */
+    public MoldJobService(int port, int cpuThreads, int maxQueued, int maxRequestBytes, ResultCache cache) throws IOException {
+        if (cpuThreads < 1 || maxQueued < 0 || maxRequestBytes < 1) {
+            throw new IllegalArgumentException("Thread and queue limits must be positive.");
+        }
+        this.requestExecutor = newRequestExecutor();
+        AtomicInteger cpuThreadCount = new AtomicInteger();
+        this.cpuPool = Executors.newFixedThreadPool(cpuThreads, r -> {
+            Thread t = new Thread(r, "mold-cpu-" + cpuThreadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.admission = new Semaphore(cpuThreads + maxQueued);
+        this.maxRequestBytes = maxRequestBytes;
+        this.cache = cache;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/gcode", exchange -> handleConversion(exchange, true));
+        server.createContext("/depthmap", exchange -> handleConversion(exchange, false));
+        server.createContext("/metrics", exchange -> respond(exchange, 200, "text/plain; version=0.0.4",
+                Metrics.exportPrometheus().getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok\n".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queued = DEFAULT_MAX_QUEUED;
+        long cacheBytes = ResultCache.DEFAULT_MEMORY_BYTES;
+        Path cacheDirectory = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--queue": queued = Integer.parseInt(args[i + 1]); break;
+                case "--cache-mb": cacheBytes = Long.parseLong(args[i + 1]) * 1024 * 1024; break;
+                case "--cache-dir": cacheDirectory = Paths.get(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Metrics.setEnabled(true);
+        MoldJobService service = new MoldJobService(port, threads, queued, DEFAULT_MAX_REQUEST_BYTES,
+                new ResultCache(cacheBytes, cacheDirectory));
+        service.warmUp();
+        // the warm-up conversions are not real traffic
+        Metrics.reset();
+        service.start();
+        System.out.println("Mold job service listening on port " + service.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits briefly for running conversions.
+     */
+    public void stop() {
+        server.stop(1);
+        cpuPool.shutdown();
+        requestExecutor.shutdown();
+        try {
+            cpuPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Runs a few conversions of a small synthetic part on the CPU pool so the hot
+     * paths are compiled before the first real request arrives.
+     */
+    public void warmUp() {
+        List<Triangle> part = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double x = i * 2.5;
+            part.add(new Triangle(new Vec3d(x, 0, 1), new Vec3d(x, 500, 2), new Vec3d(x + 2.5, 0, 1)));
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < 50; round++) {
+            List<Triangle> copy = new ArrayList<>();
+            for (Triangle t : part) {
+                Vec3d[] v = t.getVertices();
+                copy.add(new Triangle(v[0], v[1], v[2]));
+            }
+            TriangleFilterUtil.applyMoldFilters(copy, 0);
+            DepthMapUtil.generateDepthMap(copy, PinLayout.DEFAULT);
+        }
+        LOGGER.log(Level.INFO, "Warm-up took {0} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void handleConversion(HttpExchange exchange, boolean gcode) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respondText(exchange, 405, "Use POST with the STL, OBJ, PLY or 3MF file as the request body\n");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            PinLayout layout;
+            double rotation;
+            try {
+                layout = new PinLayout(
+                        doubleParam(query, "xMin", PinLayout.DEFAULT.getXMin()),
+                        doubleParam(query, "xMax", PinLayout.DEFAULT.getXMax()),
+                        doubleParam(query, "yMin", PinLayout.DEFAULT.getYMin()),
+                        doubleParam(query, "yMax", PinLayout.DEFAULT.getYMax()),
+                        gridParam(query, PinLayout.DEFAULT.getGridSize()));
+                rotation = Math.toRadians(doubleParam(query, "rotation", 0));
+            } catch (IllegalArgumentException e) {
+                respondText(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            if (!admission.tryAcquire()) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                respondText(exchange, 503, "Too many conversions in progress\n");
+                return;
+            }
+            try {
+                byte[] stl = readBody(exchange.getRequestBody());
+                if (stl == null) {
+                    respondText(exchange, 413, "Mesh file is larger than " + maxRequestBytes + " bytes\n");
+                    return;
+                }
+                CacheKey key = CacheKey.of(gcode ? "gcode" : "depthmap", stl, layout, rotation);
+                Callable<byte[]> job = () -> convert(stl, layout, rotation, gcode).getBytes(StandardCharsets.US_ASCII);
+                byte[] result = cache.get(key, job, cpuPool).get();
+                respond(exchange, 200, gcode ? "text/plain" : "text/csv", result);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IllegalArgumentException) {
+                    respondText(exchange, 422, "Invalid mesh: " + cause.getMessage() + "\n");
+                } else {
+                    LOGGER.log(Level.SEVERE, "Conversion failed", cause);
+                    respondText(exchange, 500, "Conversion failed\n");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respondText(exchange, 503, "Service is shutting down\n");
+            } finally {
+                admission.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String convert(byte[] stl, PinLayout layout, double rotation, boolean gcode) throws IOException {
+        ParseResult parsed = MeshImporter.parseMeshWithStatistics(stl);
+        List<Triangle> triangles = parsed.getTriangles();
+        TriangleFilterUtil.applyMoldFilters(triangles, parsed.getStatistics(), rotation);
+        double[][] depthMap = DepthMapUtil.generateDepthMap(triangles, layout);
+        StringWriter out = new StringWriter();
+        if (gcode) {
+            GCodeWriter.writeGCode(DepthMapUtil.calculatePinHeights(depthMap, layout), out);
+        } else {
+            for (double[] row : depthMap) {
+                for (int j = 0; j < row.length; j++) {
+                    if (j > 0) {
+                        out.write(',');
+                    }
+                    out.write(Double.toString(row[j]));
+                }
+                out.write('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            body.write(buffer, 0, n);
+            if (body.size() > maxRequestBytes) {
+                return null;
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void respondText(HttpExchange exchange, int status, String text) throws IOException {
+        respond(exchange, status, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static double doubleParam(Map<String, String> query, String name, double defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        }
+        // NaN and infinite bounds would pass the layout checks and fill the map with garbage
+        if (!Double.isFinite(parsed)) {
+            throw new IllegalArgumentException(name + " must be a finite number: " + value);
+        }
+        return parsed;
+    }
+
+    private static int gridParam(Map<String, String> query, int defaultValue) {
+        String value = query.get("grid");
+        if (value == null) {
+            return defaultValue;
+        }
+        int grid;
+        try {
+            grid = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for grid, expected an integer: " + value);
+        }
+        if (grid > MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("grid must be at most " + MAX_GRID_SIZE + ": " + grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Uses a virtual thread per request when running on Java 21 or newer. The project
+     * targets Java 17, so the factory is looked up reflectively.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.FINE, "Virtual threads are not available, using platform threads for requests");
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, "mold-request-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package STL2GCODE.stl4j;
+
+/**
+ * Allocation-free versions of the vector math in {@link Vec3d}, {@link Triangle}
+ * and {@link Plane}. The kernels take primitive coordinates and write their result
+ * into an array supplied by the caller, so they can run in inner loops without
+ * creating garbage. Every kernel performs the same floating point operations in the
+ * same order as the method it replaces and therefore returns bit-identical results.
+ */
+public final class GeometryKernels {
+
+    private GeometryKernels() {
+    }
+
+    /**
+     * Writes {@code a - b} into {@code out[offset..offset+2]}.
+     */
+    public static void sub(double ax, double ay, double az, double bx, double by, double bz, double[] out, int offset) {
+        out[offset] = ax - bx;
+        out[offset + 1] = ay - by;
+        out[offset + 2] = az - bz;
+    }
+
+    /**
+     * Writes the components of the cross product c of a and b into
+     * {@code out[offset..offset+2]} in the order (c.z, c.x, c.y), which is the order
+     * {@link Vec3d#cross(Vec3d, Vec3d)} returns them in. This is not a cross product
+     * in the usual x, y, z order, so it is kept private to the kernels that have to
+     * reproduce the existing normals bit for bit.
+     */
+    private static void baselineCross(double ax, double ay, double az, double bx, double by, double bz, double[] out, int offset) {
+        double tmpX = ay * bz - az * by;
+        double tmpY = bx * az - bz * ax;
+        out[offset] = ax * by - ay * bx;
+        out[offset + 1] = tmpX;
+        out[offset + 2] = tmpY;
+    }
+
+    /**
+     * Normalizes the vector in {@code v[offset..offset+2]} in place.
+     */
+    public static void normalize(double[] v, int offset) {
+        double x = v[offset];
+        double y = v[offset + 1];
+        double z = v[offset + 2];
+        double norm = 1.0 / Math.sqrt(x * x + y * y + z * z);
+        v[offset] = x * norm;
+        v[offset + 1] = y * norm;
+        v[offset + 2] = z * norm;
+    }
+
+    /**
+     * Writes the normal of the triangle p1, p2, p3 into {@code out[offset..offset+2]},
+     * as {@link Triangle#getNormal()} computes it: the unit normal n of the triangle
+     * with its components in the order (n.z, n.x, n.y).
+     */
+    public static void triangleNormal(Vec3d p1, Vec3d p2, Vec3d p3, double[] out, int offset) {
+        double e1x = p2.x - p1.x;
+        double e1y = p2.y - p1.y;
+        double e1z = p2.z - p1.z;
+        baselineCross(e1x, e1y, e1z, p3.x - p1.x, p3.y - p1.y, p3.z - p1.z, out, offset);
+        normalize(out, offset);
+    }
+
+    /**
+     * Writes the plane through three points as {a, b, c, d} into {@code out[0..3]}, as
+     * {@link Plane#fromPoints(Vec3d, Vec3d, Vec3d)} computes it, where (a, b, c) is
+     * the normal of {@link #triangleNormal(Vec3d, Vec3d, Vec3d, double[], int)} with
+     * its permuted component order.
+     */
+    public static void planeFromPoints(Vec3d p1, Vec3d p2, Vec3d p3, double[] out) {
+        triangleNormal(p1, p2, p3, out, 0);
+        out[3] = -(out[0] * p1.x + out[1] * p1.y + out[2] * p1.z);
+    }
+
+    /**
+     * Calculates the barycentric coordinates of the point (x, y) with respect to the
+     * triangle, see {@link Triangle#barycentricCoords(double, double)}.
+     *
+     * @param out Receives u, v and w in {@code out[0..2]} if the point is inside.
+     * @return True if the point is inside the triangle, in which case out was written.
+     */
+    public static boolean barycentricCoords(Vec3d p0, Vec3d p1, Vec3d p2, double x, double y, double[] out) {
+        double e0x = p1.x - p0.x;
+        double e0y = p1.y - p0.y;
+        double e0z = p1.z - p0.z;
+        double e1x = p2.x - p0.x;
+        double e1y = p2.y - p0.y;
+        double e1z = p2.z - p0.z;
+        double dx = x - p0.x;
+        double dy = y - p0.y;
+
+        double dot00 = e0x * e0x + e0y * e0y + e0z * e0z;
+        double dot01 = e0x * e1x + e0y * e1y + e0z * e1z;
+        double dot02 = e0x * dx + e0y * dy + e0z * 0.0;
+        double dot11 = e1x * e1x + e1y * e1y + e1z * e1z;
+        double dot12 = e1x * dx + e1y * dy + e1z * 0.0;
+
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+
+        if (u >= 0 && v >= 0 && u + v <= 1) {
+            out[0] = u;
+            out[1] = v;
+            out[2] = 1 - u - v;
+            return true;
+        }
+        return false;
+    }
+}
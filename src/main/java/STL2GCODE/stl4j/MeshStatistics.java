@@ -0,0 +1,229 @@
+package STL2GCODE.stl4j;
+
+import java.util.List;
+
+/**
+ * Statistics of a mesh gathered while it is decoded, so that later stages can read
+ * them instead of walking the triangles again: the bounding box, the surface area,
+ * a histogram of the z component of the normals, the number of degenerate
+ * triangles and the triangle count of the file header next to the number of
+ * triangles actually decoded.
+ *
+ * A collector is not thread-safe; parallel decoders fill one collector per chunk
+ * and {@link #merge(MeshStatistics) merge} them.
+ */
+public final class MeshStatistics {
+    /**
+     * The number of bins of the normal histogram, spanning normal z from -1 to 1.
+     */
+    public static final int NORMAL_BINS = 16;
+
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double minZ = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    private double maxZ = Double.NEGATIVE_INFINITY;
+    private double surfaceArea = 0;
+    private final long[] normalHistogram = new long[NORMAL_BINS];
+    private long upward = 0;
+    private long downward = 0;
+    private long planarRemoved = 0;
+    private long degenerate = 0;
+    private long triangleCount = 0;
+    private long headerTriangleCount = -1;
+
+    /**
+     * Collects the statistics of a list of triangles.
+     *
+     * @param triangles The triangles.
+     * @return The statistics; the header count is unknown.
+     */
+    public static MeshStatistics of(List<Triangle> triangles) {
+        MeshStatistics statistics = new MeshStatistics();
+        for (Triangle triangle : triangles) {
+            statistics.accept(triangle);
+        }
+        return statistics;
+    }
+
+    /**
+     * Adds a decoded triangle.
+     *
+     * @param triangle The triangle.
+     */
+    public void accept(Triangle triangle) {
+        Vec3d[] v = triangle.getVertices();
+        for (Vec3d vertex : v) {
+            minX = Math.min(minX, vertex.x);
+            minY = Math.min(minY, vertex.y);
+            minZ = Math.min(minZ, vertex.z);
+            maxX = Math.max(maxX, vertex.x);
+            maxY = Math.max(maxY, vertex.y);
+            maxZ = Math.max(maxZ, vertex.z);
+        }
+        double e0x = v[1].x - v[0].x;
+        double e0y = v[1].y - v[0].y;
+        double e0z = v[1].z - v[0].z;
+        double e1x = v[2].x - v[0].x;
+        double e1y = v[2].y - v[0].y;
+        double e1z = v[2].z - v[0].z;
+        double cx = e0y * e1z - e0z * e1y;
+        double cy = e0z * e1x - e0x * e1z;
+        double cz = e0x * e1y - e0y * e1x;
+        double area = 0.5 * Math.sqrt(cx * cx + cy * cy + cz * cz);
+        surfaceArea += area;
+        triangleCount++;
+
+        // the criterion of the planar filter, which reads the permuted normal of Triangle#getNormal()
+        double filterZ = triangle.getNormal().z;
+        if (filterZ > 0) {
+            planarRemoved++;
+        }
+        if (!(area > 0) || Double.isNaN(filterZ)) {
+            degenerate++;
+            return;
+        }
+        double nz = cz / (2 * area);
+        if (nz > 0) {
+            upward++;
+        } else if (nz < 0) {
+            downward++;
+        }
+        int bin = (int) ((nz + 1) / 2 * NORMAL_BINS);
+        normalHistogram[Math.max(0, Math.min(NORMAL_BINS - 1, bin))]++;
+    }
+
+    /**
+     * Adds the statistics of another part of the same mesh, for example a chunk
+     * decoded on another thread.
+     *
+     * @param other The statistics to add.
+     * @return This collector.
+     */
+    public MeshStatistics merge(MeshStatistics other) {
+        minX = Math.min(minX, other.minX);
+        minY = Math.min(minY, other.minY);
+        minZ = Math.min(minZ, other.minZ);
+        maxX = Math.max(maxX, other.maxX);
+        maxY = Math.max(maxY, other.maxY);
+        maxZ = Math.max(maxZ, other.maxZ);
+        surfaceArea += other.surfaceArea;
+        for (int i = 0; i < NORMAL_BINS; i++) {
+            normalHistogram[i] += other.normalHistogram[i];
+        }
+        upward += other.upward;
+        downward += other.downward;
+        planarRemoved += other.planarRemoved;
+        degenerate += other.degenerate;
+        triangleCount += other.triangleCount;
+        if (headerTriangleCount < 0) {
+            headerTriangleCount = other.headerTriangleCount;
+        }
+        return this;
+    }
+
+    /**
+     * @param count The number of triangles the file header announces.
+     */
+    public void setHeaderTriangleCount(long count) {
+        headerTriangleCount = count;
+    }
+
+    /**
+     * @return The minimum corner of the bounding box, the same as
+     * {@link STL2GCODE.util.TriangleFilterUtil#calculateAABBMin(List)}, or null if there are no triangles.
+     */
+    public Vec3d getMin() {
+        return triangleCount == 0 ? null : new Vec3d(minX, minY, minZ);
+    }
+
+    /**
+     * @return The maximum corner of the bounding box, or null if there are no triangles.
+     */
+    public Vec3d getMax() {
+        return triangleCount == 0 ? null : new Vec3d(maxX, maxY, maxZ);
+    }
+
+    /**
+     * @return The height of the mesh, or 0 if there are no triangles.
+     */
+    public double getZRange() {
+        return triangleCount == 0 ? 0 : maxZ - minZ;
+    }
+
+    /**
+     * @return The total area of the triangles.
+     */
+    public double getSurfaceArea() {
+        return surfaceArea;
+    }
+
+    /**
+     * @return The number of triangles with an area per bin of the z component of
+     * their unit normal, bin 0 starting at -1 (facing straight down).
+     */
+    public long[] getNormalHistogram() {
+        return normalHistogram.clone();
+    }
+
+    /**
+     * @return The number of triangles whose normal points up, with a positive z component.
+     */
+    public long getUpwardCount() {
+        return upward;
+    }
+
+    /**
+     * @return The number of triangles whose normal points down, with a negative z component.
+     */
+    public long getDownwardCount() {
+        return downward;
+    }
+
+    /**
+     * @return The number of triangles {@link STL2GCODE.util.TriangleFilterUtil#makePlanar(List)}
+     * removes: those for which {@code getNormal().z > 0}. {@link Triangle#getNormal()}
+     * returns the components of the normal in the order (z, x, y), so this is the
+     * filter's criterion, not the number of faces pointing up.
+     */
+    public long getPlanarRemovedCount() {
+        return planarRemoved;
+    }
+
+    /**
+     * @return The number of triangles with no area.
+     */
+    public long getDegenerateCount() {
+        return degenerate;
+    }
+
+    /**
+     * @return The number of triangles decoded.
+     */
+    public long getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * @return The number of triangles the file header announces, or -1 if the format has no such count.
+     */
+    public long getHeaderTriangleCount() {
+        return headerTriangleCount;
+    }
+
+    /**
+     * @return False if the file header announces a different number of triangles than were decoded.
+     */
+    public boolean isHeaderConsistent() {
+        return headerTriangleCount < 0 || headerTriangleCount == triangleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "MeshStatistics[" + triangleCount + " triangles (header " + headerTriangleCount + "), "
+                + degenerate + " degenerate, " + upward + " up, " + downward + " down, " + planarRemoved
+                + " removed by the planar filter, area " + surfaceArea
+                + ", bounds " + getMin() + " - " + getMax() + "]";
+    }
+}
@@ -0,0 +1,283 @@
+package STL2GCODE.stl4j;
+
+import STL2GCODE.metrics.MoldMetrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The triangles of a surface packed into one flat array together with the edge data
+ * that {@link Triangle#barycentricCoords(double, double)} would otherwise recompute,
+ * and allocate for, on every call. Looking up the height of a point is
+ * allocation-free and returns exactly what interpolating with the barycentric
+ * coordinates of the first containing triangle returns.
+ *
+ * Each triangle also stores the bounds of its sampling footprint. The containment
+ * test works in 3D: the offset (x - x0, y - y0, 0) of the sample point from the first
+ * vertex is projected onto the plane of the triangle along its normal. The points that
+ * hit a triangle therefore form the projection of its edges onto z = 0 along the
+ * normal, placed at the first vertex, which for steep triangles differs considerably
+ * from the XY outline. The stored
+ * bounds cover that projection plus a small margin for rounding, so points outside
+ * them can be rejected without changing any result.
+ *
+ * The packed array is a snapshot; later changes to the triangles are not seen.
+ * Entries can instead be replaced, appended or removed in place with
+ * {@link #set(int, Triangle)}, {@link #add(Triangle)} and {@link #remove(int)},
+ * which is how incremental updates reuse the packed data. Instances are not
+ * thread-safe while they are being changed.
+ */
+public final class PackedTriangles {
+    private static final int X0 = 0;
+    private static final int Y0 = 1;
+    private static final int Z0 = 2;
+    private static final int E0X = 3;
+    private static final int E0Y = 4;
+    private static final int E1X = 5;
+    private static final int E1Y = 6;
+    // e0.z * 0 and e1.z * 0, the z terms of the dot products with the point
+    private static final int E0Z_ZERO = 7;
+    private static final int E1Z_ZERO = 8;
+    private static final int DOT00 = 9;
+    private static final int DOT01 = 10;
+    private static final int DOT11 = 11;
+    private static final int INV_DENOM = 12;
+    private static final int Z1 = 13;
+    private static final int Z2 = 14;
+    private static final int MIN_X = 15;
+    private static final int MIN_Y = 16;
+    private static final int MAX_X = 17;
+    private static final int MAX_Y = 18;
+    private static final int STRIDE = 19;
+
+    // relative margin added to the footprint bounds
+    private static final double FOOTPRINT_MARGIN = 1e-6;
+    // squared sine below which a triangle counts as degenerate or vertical
+    private static final double SLIVER_LIMIT = 1e-8;
+
+    private double[] data;
+    private int size;
+
+    private PackedTriangles(double[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    /**
+     * Packs a list of triangles, keeping their order.
+     *
+     * @param triangles The triangles to pack.
+     * @return The packed triangles.
+     */
+    public static PackedTriangles of(List<Triangle> triangles) {
+        long start = MoldMetrics.INDEX_BUILD_TIME.start();
+        int size = triangles.size();
+        double[] data = new double[size * STRIDE];
+        int offset = 0;
+        for (Triangle triangle : triangles) {
+            Vec3d[] v = triangle.getVertices();
+            pack(v[0].x, v[0].y, v[0].z, v[1].x, v[1].y, v[1].z, v[2].x, v[2].y, v[2].z, data, offset);
+            offset += STRIDE;
+        }
+        MoldMetrics.INDEX_BUILD_TIME.stop(start);
+        return new PackedTriangles(data, size);
+    }
+
+    /**
+     * Packs triangles given as raw vertex coordinates, keeping their order.
+     *
+     * @param vertices The coordinates x0, y0, z0, x1, ... z2 of each triangle, nine per triangle.
+     * @param count    The number of triangles to pack from the start of the array.
+     * @return The packed triangles.
+     */
+    public static PackedTriangles of(double[] vertices, int count) {
+        long start = MoldMetrics.INDEX_BUILD_TIME.start();
+        double[] data = new double[count * STRIDE];
+        for (int t = 0; t < count; t++) {
+            int v = t * 9;
+            pack(vertices[v], vertices[v + 1], vertices[v + 2], vertices[v + 3], vertices[v + 4], vertices[v + 5],
+                    vertices[v + 6], vertices[v + 7], vertices[v + 8], data, t * STRIDE);
+        }
+        MoldMetrics.INDEX_BUILD_TIME.stop(start);
+        return new PackedTriangles(data, count);
+    }
+
+    private static void pack(double x0, double y0, double z0, double x1, double y1, double z1,
+                             double x2, double y2, double z2, double[] data, int offset) {
+        double e0x = x1 - x0;
+        double e0y = y1 - y0;
+        double e0z = z1 - z0;
+        double e1x = x2 - x0;
+        double e1y = y2 - y0;
+        double e1z = z2 - z0;
+        double dot00 = e0x * e0x + e0y * e0y + e0z * e0z;
+        double dot01 = e0x * e1x + e0y * e1y + e0z * e1z;
+        double dot11 = e1x * e1x + e1y * e1y + e1z * e1z;
+
+        data[offset + X0] = x0;
+        data[offset + Y0] = y0;
+        data[offset + Z0] = z0;
+        data[offset + E0X] = e0x;
+        data[offset + E0Y] = e0y;
+        data[offset + E1X] = e1x;
+        data[offset + E1Y] = e1y;
+        data[offset + E0Z_ZERO] = e0z * 0.0;
+        data[offset + E1Z_ZERO] = e1z * 0.0;
+        data[offset + DOT00] = dot00;
+        data[offset + DOT01] = dot01;
+        data[offset + DOT11] = dot11;
+        data[offset + INV_DENOM] = 1 / (dot00 * dot11 - dot01 * dot01);
+        data[offset + Z1] = z1;
+        data[offset + Z2] = z2;
+
+        // the point is (dx, dy, 0) relative to the first vertex, so the footprint is the
+        // triangle (0, e0, e1) projected onto z = 0 along the normal
+        double nx = e0y * e1z - e0z * e1y;
+        double ny = e0z * e1x - e0x * e1z;
+        double nz = e0x * e1y - e0y * e1x;
+        // slivers and nearly vertical triangles are dominated by rounding, and degenerate
+        // ones can hit points anywhere, so they are never rejected by their bounds
+        double crossSquared = nx * nx + ny * ny + nz * nz;
+        if (!(crossSquared > SLIVER_LIMIT * dot00 * dot11) || !(nz * nz > SLIVER_LIMIT * crossSquared)) {
+            data[offset + MIN_X] = Double.NEGATIVE_INFINITY;
+            data[offset + MIN_Y] = Double.NEGATIVE_INFINITY;
+            data[offset + MAX_X] = Double.POSITIVE_INFINITY;
+            data[offset + MAX_Y] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        double sx = nx / nz;
+        double sy = ny / nz;
+        double bx = e0x - e0z * sx;
+        double by = e0y - e0z * sy;
+        double cx = e1x - e1z * sx;
+        double cy = e1y - e1z * sy;
+        double minX = Math.min(0, Math.min(bx, cx));
+        double maxX = Math.max(0, Math.max(bx, cx));
+        double minY = Math.min(0, Math.min(by, cy));
+        double maxY = Math.max(0, Math.max(by, cy));
+        double margin = FOOTPRINT_MARGIN * (maxX - minX + maxY - minY + Math.abs(x0) + Math.abs(y0) + 1);
+        data[offset + MIN_X] = x0 + minX - margin;
+        data[offset + MIN_Y] = y0 + minY - margin;
+        data[offset + MAX_X] = x0 + maxX + margin;
+        data[offset + MAX_Y] = y0 + maxY + margin;
+    }
+
+    /**
+     * Replaces triangle {@code index} in place.
+     *
+     * @param index    The index of the triangle in the packed list.
+     * @param triangle The new triangle.
+     */
+    public void set(int index, Triangle triangle) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " triangles");
+        }
+        Vec3d[] v = triangle.getVertices();
+        pack(v[0].x, v[0].y, v[0].z, v[1].x, v[1].y, v[1].z, v[2].x, v[2].y, v[2].z, data, index * STRIDE);
+    }
+
+    /**
+     * Appends a triangle to the end of the packed list.
+     *
+     * @param triangle The triangle.
+     * @return The index of the triangle.
+     */
+    public int add(Triangle triangle) {
+        if ((size + 1) * STRIDE > data.length) {
+            data = Arrays.copyOf(data, Math.max(STRIDE * 16, data.length * 2));
+        }
+        size++;
+        set(size - 1, triangle);
+        return size - 1;
+    }
+
+    /**
+     * Removes triangle {@code index} without moving the ones after it: its entry
+     * stays in place but no point hits it any more.
+     *
+     * @param index The index of the triangle in the packed list.
+     */
+    public void remove(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " triangles");
+        }
+        int o = index * STRIDE;
+        // empty bounds reject every point
+        data[o + MIN_X] = Double.POSITIVE_INFINITY;
+        data[o + MIN_Y] = Double.POSITIVE_INFINITY;
+        data[o + MAX_X] = Double.NEGATIVE_INFINITY;
+        data[o + MAX_Y] = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return The number of triangles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tests whether the point (x, y) hits triangle {@code index}.
+     *
+     * @param index The index of the triangle in the packed list.
+     * @param x     The x-coordinate of the point.
+     * @param y     The y-coordinate of the point.
+     * @return The interpolated z of the point, or NaN if it misses the triangle.
+     */
+    public double intersectZ(int index, double x, double y) {
+        int o = index * STRIDE;
+        double[] d = data;
+        if (x < d[o + MIN_X] || x > d[o + MAX_X] || y < d[o + MIN_Y] || y > d[o + MAX_Y]) {
+            return Double.NaN;
+        }
+        double dx = x - d[o + X0];
+        double dy = y - d[o + Y0];
+        double dot00 = d[o + DOT00];
+        double dot01 = d[o + DOT01];
+        double dot11 = d[o + DOT11];
+        double dot02 = d[o + E0X] * dx + d[o + E0Y] * dy + d[o + E0Z_ZERO];
+        double dot12 = d[o + E1X] * dx + d[o + E1Y] * dy + d[o + E1Z_ZERO];
+        double invDenom = d[o + INV_DENOM];
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        if (u >= 0 && v >= 0 && u + v <= 1) {
+            return d[o + Z0] * u + d[o + Z1] * v + d[o + Z2] * (1 - u - v);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Finds the height of the point (x, y) on the first triangle, in list order, that
+     * contains it.
+     *
+     * @param x    The x-coordinate of the point.
+     * @param y    The y-coordinate of the point.
+     * @param miss The value to return if no triangle contains the point.
+     * @return The interpolated z, or miss.
+     */
+    public double firstHitZ(double x, double y, double miss) {
+        for (int i = 0; i < size; i++) {
+            double z = intersectZ(i, x, y);
+            if (!Double.isNaN(z)) {
+                return z;
+            }
+        }
+        return miss;
+    }
+
+    /**
+     * Writes the bounds of the points that can hit triangle {@code index} as
+     * {minX, minY, maxX, maxY} into out. The bounds are infinite for degenerate,
+     * sliver and nearly vertical triangles, and empty for removed ones.
+     *
+     * @param index The index of the triangle in the packed list.
+     * @param out   An array of at least four elements.
+     */
+    public void footprintBounds(int index, double[] out) {
+        int o = index * STRIDE;
+        out[0] = data[o + MIN_X];
+        out[1] = data[o + MIN_Y];
+        out[2] = data[o + MAX_X];
+        out[3] = data[o + MAX_Y];
+    }
+}
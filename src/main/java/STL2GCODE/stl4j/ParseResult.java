@@ -0,0 +1,25 @@
+package STL2GCODE.stl4j;
+
+import java.util.List;
+
+/**
+ * The triangles of a parsed mesh together with the statistics gathered while
+ * decoding them.
+ */
+public final class ParseResult {
+    private final List<Triangle> triangles;
+    private final MeshStatistics statistics;
+
+    public ParseResult(List<Triangle> triangles, MeshStatistics statistics) {
+        this.triangles = triangles;
+        this.statistics = statistics;
+    }
+
+    public List<Triangle> getTriangles() {
+        return triangles;
+    }
+
+    public MeshStatistics getStatistics() {
+        return statistics;
+    }
+}
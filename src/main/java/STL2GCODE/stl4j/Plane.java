@@ -2,7 +2,6 @@ package STL2GCODE.stl4j;
 
 import java.util.List;
 
-import static STL2GCODE.stl4j.Vec3d.cross;
 import org.ejml.simple.SimpleMatrix;
 
 public class Plane {
@@ -53,11 +52,9 @@ public class Plane {
      * @return A new Plane object representing the plane that passes through the three points.
      */
     public static Plane fromPoints(Vec3d p1, Vec3d p2, Vec3d p3) {
-        Vec3d v1 = p2.sub(p1);
-        Vec3d v2 = p3.sub(p1);
-        Vec3d normal = cross(v1, v2).normalize();
-        double d = -normal.dot(p1);
-        return new Plane(normal, d);
+        double[] plane = new double[4];
+        GeometryKernels.planeFromPoints(p1, p2, p3, plane);
+        return new Plane(new Vec3d(plane[0], plane[1], plane[2]), plane[3]);
     }
     /**
      * Calculates the best fit plane for a list of Vec3d points.
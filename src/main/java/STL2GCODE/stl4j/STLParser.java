@@ -1,19 +1,31 @@
 package STL2GCODE.stl4j;
 
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class is a parser for STL files. Currently, normals specified in the
@@ -26,6 +38,8 @@ import java.util.logging.Logger;
  * updated logic to handle binary STL files with "solid" in the header
  */
 public class STLParser {
+    private static final int CHUNK_TRIANGLES = 1 << 15;
+
     /**
      * Parses an STL file, attempting to automatically detect whether the file
      * is an ASCII or binary STL file
@@ -39,15 +53,247 @@ public class STLParser {
      */
     public static List<Triangle> parseSTLFile(Path filepath) throws IOException{
         byte[] allBytes = Files.readAllBytes(filepath);
-        // determine if it is ASCII or binary STL
+        return parseSTL(allBytes);
+    }
+
+    /**
+     * Parses the content of an STL file that has already been read into memory,
+     * attempting to automatically detect whether it is ASCII or binary STL
+     * @param allBytes The complete content of the STL file
+     * @return A list of triangles representing all of the triangles in the STL
+     * file.
+     * @throws IllegalArgumentException Thrown if the STL is not properly
+     * formatted
+     */
+    public static List<Triangle> parseSTL(byte[] allBytes) {
+        return parseSTLWithStatistics(allBytes).getTriangles();
+    }
+
+    /**
+     * Parses the content of an STL file like {@link #parseSTL(byte[])}, collecting
+     * the {@link MeshStatistics} of the mesh while the triangles are decoded. Binary
+     * files are decoded in chunks on all cores.
+     * @param allBytes The complete content of the STL file
+     * @return The triangles of the STL file and their statistics.
+     * @throws IllegalArgumentException Thrown if the STL is not properly
+     * formatted
+     */
+    public static ParseResult parseSTLWithStatistics(byte[] allBytes) {
+        long start = MoldMetrics.PARSE_TIME.start();
+        StageEvent event = StageEvent.begin("parse");
+        boolean isASCIISTL = isASCIISTL(allBytes, allBytes.length);
+
+        // read file to array of triangles
+        ParseResult result;
+        if(isASCIISTL){
+            Charset charset = Charset.forName("UTF-8");
+            MeshStatistics statistics = new MeshStatistics();
+            List<Triangle> mesh = readASCII(charset.decode(ByteBuffer.wrap(allBytes)).toString().toLowerCase(), statistics);
+            result = new ParseResult(mesh, statistics);
+        } else {
+            result = readBinaryChunks(allBytes);
+        }
+        int count = result.getTriangles().size();
+        MoldMetrics.STL_BYTES_READ.add(allBytes.length);
+        MoldMetrics.TRIANGLES_PARSED.add(count);
+        event.end(count, allBytes.length);
+        MoldMetrics.PARSE_TIME.stop(start);
+        return result;
+    }
+
+    /**
+     * Decodes binary STL content in chunks of {@value #CHUNK_TRIANGLES} triangles in
+     * parallel. Every chunk collects its own statistics, which are merged in file
+     * order, and the triangles keep their file order.
+     */
+    private static ParseResult readBinaryChunks(byte[] allBytes) {
+        Logger.getLogger(STLParser.class.getName()).log(Level.FINEST,"Parsing binary STL format in parallel");
+        if (allBytes.length < 84) {
+            throw new IllegalArgumentException("invalid binary file, length<84");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(allBytes).order(ByteOrder.LITTLE_ENDIAN);
+        long headerCount = Integer.toUnsignedLong(buffer.getInt(80));
+        int count = (allBytes.length - 84) / 50;
+        if ((allBytes.length - 84) % 50 != 0) {
+            throw new IllegalArgumentException("Malformed STL binary at triangle number " + (count + 1));
+        }
+        int chunks = (count + CHUNK_TRIANGLES - 1) / CHUNK_TRIANGLES;
+        List<ParseResult> parts = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> decodeBinaryChunk(buffer, chunk * CHUNK_TRIANGLES,
+                        Math.min(count, (chunk + 1) * CHUNK_TRIANGLES)))
+                .collect(Collectors.toList());
+        List<Triangle> triangles = new ArrayList<>(count);
+        MeshStatistics statistics = new MeshStatistics();
+        for (ParseResult part : parts) {
+            triangles.addAll(part.getTriangles());
+            statistics.merge(part.getStatistics());
+        }
+        statistics.setHeaderTriangleCount(headerCount);
+        return new ParseResult(triangles, statistics);
+    }
+
+    private static ParseResult decodeBinaryChunk(ByteBuffer buffer, int first, int end) {
+        List<Triangle> triangles = new ArrayList<>(end - first);
+        MeshStatistics statistics = new MeshStatistics();
+        for (int t = first; t < end; t++) {
+            // the normal (bytes 0-11) and attribute (bytes 48-49) are not used
+            int record = 84 + t * 50;
+            Vec3d[] vertices = new Vec3d[3];
+            for (int v = 0; v < vertices.length; v++) {
+                int offset = record + 12 + v * 12;
+                vertices[v] = new Vec3d(buffer.getFloat(offset), buffer.getFloat(offset + 4), buffer.getFloat(offset + 8));
+            }
+            Triangle triangle = new Triangle(vertices[0], vertices[1], vertices[2]);
+            triangles.add(triangle);
+            statistics.accept(triangle);
+        }
+        return new ParseResult(triangles, statistics);
+    }
+
+    /**
+     * Parses an STL file without reading it into memory as a whole. Triangles are
+     * decoded while the file is read and handed to the consumer in batches, in
+     * file order. Batches are not reused after being handed over.
+     * @param filepath The file to parse
+     * @param batchSize The number of triangles per batch (the last batch may be smaller)
+     * @param consumer Receives the batches of triangles
+     * @throws IOException Thrown if there was a problem reading the file
+     * @throws IllegalArgumentException Thrown if the STL is not properly
+     * formatted
+     */
+    public static void streamSTLFile(Path filepath, int batchSize, Consumer<List<Triangle>> consumer) throws IOException {
+        streamSTLFile(filepath, batchSize, consumer, true);
+    }
+
+    /**
+     * Parses an STL file without reading it into memory as a whole, see
+     * {@link #streamSTLFile(Path, int, Consumer)}.
+     * @param filepath The file to parse
+     * @param batchSize The number of triangles per batch (the last batch may be smaller)
+     * @param consumer Receives the batches of triangles
+     * @param recordMetrics Whether to count the bytes, triangles and parse time of
+     * this pass; false for extra passes over a file that is also parsed for real
+     * @throws IOException Thrown if there was a problem reading the file
+     * @throws IllegalArgumentException Thrown if the STL is not properly
+     * formatted
+     */
+    public static void streamSTLFile(Path filepath, int batchSize, Consumer<List<Triangle>> consumer,
+                                     boolean recordMetrics) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive.");
+        }
+        long length = Files.size(filepath);
+        byte[] head;
+        try (InputStream in = Files.newInputStream(filepath)) {
+            head = in.readNBytes(512);
+        }
+        boolean isASCIISTL = isASCIISTL(head, length);
+        long start = MoldMetrics.PARSE_TIME.start();
+        StageEvent event = StageEvent.begin("parse");
+        long[] count = new long[1];
+        Consumer<List<Triangle>> counting = batch -> {
+            count[0] += batch.size();
+            consumer.accept(batch);
+        };
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(filepath), 1 << 16)) {
+            if (isASCIISTL) {
+                streamASCII(in, batchSize, counting);
+            } else {
+                streamBinary(in, batchSize, counting);
+            }
+        }
+        event.end(count[0], length);
+        if (recordMetrics) {
+            MoldMetrics.STL_BYTES_READ.add(length);
+            MoldMetrics.TRIANGLES_PARSED.add(count[0]);
+            MoldMetrics.PARSE_TIME.stop(start);
+        }
+    }
+
+    private static void streamASCII(InputStream in, int batchSize, Consumer<List<Triangle>> consumer) throws IOException {
+        Logger.getLogger(STLParser.class.getName()).log(Level.FINEST,"Streaming ASCII STL format");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Triangle> batch = new ArrayList<>(batchSize);
+        Vec3d[] vertices = new Vec3d[3];
+        int vertexCount = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (!line.regionMatches(true, 0, "vertex", 0, "vertex".length())) {
+                continue;
+            }
+            try {
+                StringTokenizer st = new StringTokenizer(line.substring("vertex".length()));
+                vertices[vertexCount++] = new Vec3d(Double.parseDouble(st.nextToken()),
+                        Double.parseDouble(st.nextToken()), Double.parseDouble(st.nextToken()));
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Malformed STL syntax at line " + lineNumber + ": \"" + line + "\"", ex);
+            }
+            if (vertexCount == 3) {
+                batch.add(new Triangle(vertices[0], vertices[1], vertices[2]));
+                vertexCount = 0;
+                if (batch.size() == batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    private static void streamBinary(InputStream in, int batchSize, Consumer<List<Triangle>> consumer) throws IOException {
+        Logger.getLogger(STLParser.class.getName()).log(Level.FINEST,"Streaming binary STL format");
+        // header and triangle count (not really needed)
+        if (in.readNBytes(84).length < 84) {
+            throw new IllegalArgumentException("invalid binary file, length<84");
+        }
+        byte[] record = new byte[50];
+        ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        List<Triangle> batch = new ArrayList<>(batchSize);
+        long count = 0;
+        int n;
+        while ((n = in.readNBytes(record, 0, record.length)) > 0) {
+            if (n < record.length) {
+                throw new IllegalArgumentException("Malformed STL binary at triangle number " + (count + 1));
+            }
+            // the normal (bytes 0-11) and attribute (bytes 48-49) are not used
+            Vec3d[] vertices = new Vec3d[3];
+            for (int v = 0; v < vertices.length; v++) {
+                int offset = 12 + v * 12;
+                vertices[v] = new Vec3d(buffer.getFloat(offset), buffer.getFloat(offset + 4), buffer.getFloat(offset + 8));
+            }
+            batch.add(new Triangle(vertices[0], vertices[1], vertices[2]));
+            count++;
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
 
+    /**
+     * Determines whether a file is ASCII or binary STL from its first bytes
+     * @param head The first 512 bytes of the file, or all of it if it is shorter
+     * @param length The length of the whole file in bytes
+     * @return True if the file is ASCII STL
+     * @throws IllegalArgumentException Thrown if the file is neither valid ASCII
+     * nor valid binary STL
+     */
+    public static boolean isASCIISTL(byte[] head, long length) {
         //some binary STL files has "solid" in the first 80 chars
         //this breaks logic that determines if a file is ascii based on it
         //simply beginning with "solid"
         boolean isASCIISTL = false;
 
         //read the first 512 chars or less
-        String buf = readblock(allBytes, 0, 512);
+        String buf = readblock(head, 0, 512);
         StringBuffer sb = new StringBuffer();
         int inl = readline(buf, sb, 0);
         String line = sb.toString();
@@ -64,29 +310,20 @@ public class STLParser {
                     isASCIISTL = true; //empty ascii file
                 else if(token.equals("facet")) {
                     isASCIISTL = true; //ascii file
-                } else if (isbinaryfile(allBytes))
+                } else if (isbinaryfile(head, length))
                     isASCIISTL = false; //binary file
             } else { //no linefeed
-                if (isbinaryfile(allBytes))
+                if (isbinaryfile(head, length))
                     isASCIISTL = false; //binary file
             }
         } else {//does not starts with "solid"
-            if (isbinaryfile(allBytes))
+            if (isbinaryfile(head, length))
                 isASCIISTL = false; //binary file
         }
 
-        // read file to array of triangles
-        List<Triangle> mesh;
-        if(isASCIISTL){
-            Charset charset = Charset.forName("UTF-8");
-            mesh = readASCII(charset.decode(ByteBuffer.wrap(allBytes)).toString().toLowerCase());
-        } else {
-            mesh = readBinary(allBytes);
-        }
-        return mesh;
+        return isASCIISTL;
     }
 
-
     public static String readblock(byte[] allBytes, int offset, int length) {
         if(allBytes.length-offset<length) length = allBytes.length-offset;
         Charset charset = Charset.forName("UTF-8");
@@ -104,10 +341,21 @@ public class STLParser {
     }
 
     public static boolean isbinaryfile(byte[] allBytes) throws IllegalArgumentException {
-        if (allBytes.length<84)
+        return isbinaryfile(allBytes, allBytes.length);
+    }
+
+    /**
+     * Checks the triangle count in the header of a binary STL file against its length
+     * @param head At least the first 84 bytes of the file
+     * @param length The length of the whole file in bytes
+     * @return True if the file is long enough to hold the triangles in its header
+     * @throws IllegalArgumentException Thrown if it is not
+     */
+    public static boolean isbinaryfile(byte[] head, long length) throws IllegalArgumentException {
+        if (length<84 || head.length<84)
             throw new IllegalArgumentException("invalid binary file, length<84");
-        int numtriangles = byteatoint(Arrays.copyOfRange(allBytes, 80, 84));
-        if (allBytes.length >= 84 + numtriangles * 50)
+        long numtriangles = Integer.toUnsignedLong(byteatoint(Arrays.copyOfRange(head, 80, 84)));
+        if (length >= 84 + numtriangles * 50)
             return true; //is binary file
         else {
             String msg = "invalid binary file, num triangles does not match length specs";
@@ -137,6 +385,10 @@ public class STLParser {
      * formatted
      */
     public static List<Triangle> readASCII(String content) {
+        return readASCII(content, new MeshStatistics());
+    }
+
+    private static List<Triangle> readASCII(String content, MeshStatistics statistics) {
         Logger.getLogger(STLParser.class.getName()).log(Level.FINEST,"Parsing ASCII STL format");
         // string is lowercase
         ArrayList<Triangle> triangles = new ArrayList<>();
@@ -173,7 +425,9 @@ public class STLParser {
                         vertices[v] = new Vec3d(vals[0], vals[1], vals[2]);
                     }
                     position = content.indexOf("endfacet", position)+"endfacet".length();
-                    triangles.add(new Triangle(vertices[0], vertices[1], vertices[2]));
+                    Triangle triangle = new Triangle(vertices[0], vertices[1], vertices[2]);
+                    triangles.add(triangle);
+                    statistics.accept(triangle);
                 } catch (Exception ex) {
                     int back = position - 128;
                     if (back < 0) {
@@ -0,0 +1,115 @@
+package STL2GCODE.stl4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes triangles to an STL stream one at a time, so meshes of any size can be
+ * written without holding them in memory. The normal of each facet is taken from
+ * {@link Triangle#getNormal()}.
+ */
+public class STLWriter implements Closeable {
+    private final OutputStream out;
+    private final boolean ascii;
+    private final long expectedCount;
+    private final ByteBuffer record = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
+    private long count = 0;
+
+    /**
+     * Starts an STL stream. Binary STL stores the number of triangles in its header,
+     * so it has to be known up front.
+     *
+     * @param out The destination. It is closed together with this writer.
+     * @param ascii True to write ASCII STL, false for binary STL.
+     * @param triangleCount The number of triangles that will be written (ignored for ASCII).
+     * @throws IOException Thrown if the header cannot be written.
+     */
+    public STLWriter(OutputStream out, boolean ascii, long triangleCount) throws IOException {
+        if (!ascii && (triangleCount < 0 || triangleCount > 0xFFFFFFFFL)) {
+            throw new IllegalArgumentException("Binary STL holds between 0 and 2^32-1 triangles, got " + triangleCount);
+        }
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.ascii = ascii;
+        this.expectedCount = triangleCount;
+        if (ascii) {
+            this.out.write("solid remold\n".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            byte[] header = new byte[80];
+            byte[] title = "binary STL written by ReMold".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(title, 0, header, 0, title.length);
+            this.out.write(header);
+            this.out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) triangleCount).array());
+        }
+    }
+
+    /**
+     * Writes a complete list of triangles.
+     *
+     * @param triangles The triangles.
+     * @param out The destination. It is closed when done.
+     * @param ascii True to write ASCII STL, false for binary STL.
+     * @throws IOException Thrown if writing fails.
+     */
+    public static void write(List<Triangle> triangles, OutputStream out, boolean ascii) throws IOException {
+        try (STLWriter writer = new STLWriter(out, ascii, triangles.size())) {
+            for (Triangle triangle : triangles) {
+                writer.write(triangle);
+            }
+        }
+    }
+
+    /**
+     * Appends one facet.
+     *
+     * @param triangle The triangle.
+     * @throws IOException Thrown if writing fails.
+     */
+    public void write(Triangle triangle) throws IOException {
+        Vec3d n = triangle.getNormal();
+        Vec3d[] v = triangle.getVertices();
+        if (ascii) {
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("facet normal ").append(n.x).append(' ').append(n.y).append(' ').append(n.z).append("\nouter loop\n");
+            for (Vec3d vertex : v) {
+                sb.append("vertex ").append(vertex.x).append(' ').append(vertex.y).append(' ').append(vertex.z).append('\n');
+            }
+            sb.append("endloop\nendfacet\n");
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        } else {
+            record.clear();
+            record.putFloat((float) n.x).putFloat((float) n.y).putFloat((float) n.z);
+            for (Vec3d vertex : v) {
+                record.putFloat((float) vertex.x).putFloat((float) vertex.y).putFloat((float) vertex.z);
+            }
+            record.putShort((short) 0);
+            out.write(record.array());
+        }
+        count++;
+    }
+
+    /**
+     * Finishes the stream.
+     *
+     * @throws IOException Thrown if writing fails.
+     * @throws IllegalStateException Thrown if a binary stream did not receive the announced number of triangles.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (ascii) {
+                out.write("endsolid remold\n".getBytes(StandardCharsets.US_ASCII));
+            }
+        } finally {
+            out.close();
+        }
+        if (!ascii && count != expectedCount) {
+            throw new IllegalStateException("Announced " + expectedCount + " triangles but wrote " + count);
+        }
+    }
+}
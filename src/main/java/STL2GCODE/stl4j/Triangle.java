@@ -20,9 +20,9 @@ public class Triangle {
         vertices[0] = v1;
         vertices[1] = v2;
         vertices[2] = v3;
-        Vec3d edge1 = v2.sub(v1);
-        Vec3d edge2 = v3.sub(v1);
-        normal = Vec3d.cross(edge1, edge2).normalize();
+        double[] n = new double[3];
+        GeometryKernels.triangleNormal(v1, v2, v3, n, 0);
+        normal = new Vec3d(n[0], n[1], n[2]);
     }
     /**
      * Moves the triangle in the X,Y,Z direction
@@ -46,25 +46,8 @@ public class Triangle {
      *         or null if the point is outside the triangle.
      */
     public double[] barycentricCoords(double x, double y) {
-        Vec3d v0 = vertices[1].sub(vertices[0]);
-        Vec3d v1 = vertices[2].sub(vertices[0]);
-        Vec3d v2 = new Vec3d(x - vertices[0].x, y - vertices[0].y, 0);
-
-        double dot00 = v0.dot(v0);
-        double dot01 = v0.dot(v1);
-        double dot02 = v0.dot(v2);
-        double dot11 = v1.dot(v1);
-        double dot12 = v1.dot(v2);
-
-        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
-        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
-        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
-
-        if (u >= 0 && v >= 0 && u + v <= 1) {
-            return new double[]{u, v, 1 - u - v};
-        } else {
-            return null;
-        }
+        double[] coords = new double[3];
+        return GeometryKernels.barycentricCoords(vertices[0], vertices[1], vertices[2], x, y, coords) ? coords : null;
     }
 
     /**
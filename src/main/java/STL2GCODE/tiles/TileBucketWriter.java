@@ -0,0 +1,143 @@
+package STL2GCODE.tiles;
+
+import STL2GCODE.stl4j.Vec3d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends triangles to one file per tile. A record is the nine vertex coordinates
+ * of a triangle as little endian doubles, so a tile file reproduces the transformed
+ * vertices exactly and in the order they were added.
+ *
+ * Every tile file stays open until the writer is closed, so the number of tiles is
+ * limited to {@value #MAX_TILES} to stay well within the file descriptor limit of
+ * common systems.
+ */
+class TileBucketWriter implements Closeable {
+    static final int RECORD_BYTES = 9 * Double.BYTES;
+    static final int MAX_TILES = 256;
+    private static final int BUFFERED_RECORDS = 256;
+
+    private final Path[] files;
+    private final FileChannel[] channels;
+    private final ByteBuffer[] buffers;
+    private final long[] counts;
+
+    /**
+     * Creates an empty file for every tile in the directory.
+     *
+     * @param directory An existing directory.
+     * @param tileCount The number of tiles, at most {@value #MAX_TILES}.
+     * @throws IOException Thrown if a file cannot be created.
+     */
+    TileBucketWriter(Path directory, int tileCount) throws IOException {
+        if (tileCount > MAX_TILES) {
+            throw new IllegalArgumentException("At most " + MAX_TILES + " tiles are supported: " + tileCount);
+        }
+        files = new Path[tileCount];
+        channels = new FileChannel[tileCount];
+        buffers = new ByteBuffer[tileCount];
+        counts = new long[tileCount];
+        try {
+            for (int tile = 0; tile < tileCount; tile++) {
+                files[tile] = directory.resolve("tile-" + tile + ".bin");
+                channels[tile] = FileChannel.open(files[tile], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                buffers[tile] = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends a triangle to the file of a tile.
+     *
+     * @param tile     The tile index.
+     * @param vertices The three vertices of the triangle.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    void add(int tile, Vec3d[] vertices) throws IOException {
+        ByteBuffer buffer = buffers[tile];
+        if (buffer.remaining() < RECORD_BYTES) {
+            flush(tile);
+        }
+        for (Vec3d v : vertices) {
+            buffer.putDouble(v.x).putDouble(v.y).putDouble(v.z);
+        }
+        counts[tile]++;
+    }
+
+    private void flush(int tile) throws IOException {
+        ByteBuffer buffer = buffers[tile];
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channels[tile].write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return The file of a tile.
+     */
+    Path getFile(int tile) {
+        return files[tile];
+    }
+
+    /**
+     * @return The number of triangles added to a tile.
+     */
+    long getCount(int tile) {
+        return counts[tile];
+    }
+
+    /**
+     * Writes the remaining buffered triangles and closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (int tile = 0; tile < channels.length; tile++) {
+            if (channels[tile] == null) {
+                continue;
+            }
+            try {
+                flush(tile);
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            } finally {
+                try {
+                    channels[tile].close();
+                } catch (IOException ex) {
+                    failure = failure == null ? ex : failure;
+                }
+                channels[tile] = null;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes the tile files that exist.
+     */
+    void deleteFiles() {
+        for (Path file : files) {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ex) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+}
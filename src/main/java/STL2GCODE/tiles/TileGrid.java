@@ -0,0 +1,87 @@
+package STL2GCODE.tiles;
+
+import STL2GCODE.util.PinLayout;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the pins of a layout into square blocks of neighbouring pins. Tile
+ * {@code tx, ty} holds the pins with depth map indices {@code i} in
+ * {@code [firstPin(tx), endPin(tx))} and {@code j} in {@code [firstPin(ty), endPin(ty))},
+ * that is pins at x = {@code layout.getX(i)} and y = {@code layout.getY(j)}.
+ */
+public final class TileGrid {
+    private final PinLayout layout;
+    private final int tilesPerSide;
+
+    /**
+     * @param layout       The pin layout to split.
+     * @param tilesPerSide The number of tiles along each axis, at most the number of pins per side.
+     */
+    public TileGrid(PinLayout layout, int tilesPerSide) {
+        if (tilesPerSide < 1 || tilesPerSide > layout.getGridSize()) {
+            throw new IllegalArgumentException("tilesPerSide must be between 1 and " + layout.getGridSize() + ": " + tilesPerSide);
+        }
+        this.layout = layout;
+        this.tilesPerSide = tilesPerSide;
+    }
+
+    public PinLayout getLayout() {
+        return layout;
+    }
+
+    public int getTilesPerSide() {
+        return tilesPerSide;
+    }
+
+    public int getTileCount() {
+        return tilesPerSide * tilesPerSide;
+    }
+
+    /**
+     * @param tile A tile index along one axis.
+     * @return The index of the first pin of the tile along that axis.
+     */
+    public int firstPin(int tile) {
+        return (int) ((long) tile * layout.getGridSize() / tilesPerSide);
+    }
+
+    /**
+     * @param tile A tile index along one axis.
+     * @return The index after the last pin of the tile along that axis.
+     */
+    public int endPin(int tile) {
+        return firstPin(tile + 1);
+    }
+
+    /**
+     * @return The index of tile tx, ty in {@code [0, getTileCount())}.
+     */
+    public int tileIndex(int tx, int ty) {
+        return tx * tilesPerSide + ty;
+    }
+
+    /**
+     * Calls the consumer with the index of every tile holding a pin inside the
+     * rectangle. Infinite bounds are allowed.
+     *
+     * @param minX The minimum x of the rectangle.
+     * @param minY The minimum y of the rectangle.
+     * @param maxX The maximum x of the rectangle.
+     * @param maxY The maximum y of the rectangle.
+     * @param tiles Receives the tile indices.
+     */
+    public void forEachTile(double minX, double minY, double maxX, double maxY, IntConsumer tiles) {
+        for (int tx = 0; tx < tilesPerSide; tx++) {
+            if (layout.getX(endPin(tx) - 1) < minX || layout.getX(firstPin(tx)) > maxX) {
+                continue;
+            }
+            for (int ty = 0; ty < tilesPerSide; ty++) {
+                if (layout.getY(endPin(ty) - 1) < minY || layout.getY(firstPin(ty)) > maxY) {
+                    continue;
+                }
+                tiles.accept(tileIndex(tx, ty));
+            }
+        }
+    }
+}
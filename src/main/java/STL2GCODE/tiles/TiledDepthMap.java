@@ -0,0 +1,229 @@
+package STL2GCODE.tiles;
+
+import STL2GCODE.mesh.MeshImporter;
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.pipeline.DepthMapPipeline;
+import STL2GCODE.stl4j.PackedTriangles;
+import STL2GCODE.stl4j.Vec3d;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the depth map of a mesh file that is too large for the heap.
+ *
+ * The file is streamed twice: once for the minimum corner of its bounds, and once
+ * through the mold filters into one bucket file per {@link TileGrid tile} of pins.
+ * A triangle goes into every tile whose pins its sampling footprint may cover, so
+ * triangles straddling a tile border are duplicated. Each tile is then rasterized on
+ * its own from its memory-mapped bucket, a chunk of triangles at a time, and the
+ * tiles are stitched into one depth map. Since a bucket keeps the triangles in file
+ * order, every pin takes its depth from the same triangle as with
+ * {@link TriangleFilterUtil#applyMoldFilters} and
+ * {@link DepthMapUtil#generateDepthMap(List, PinLayout)} on the whole mesh.
+ *
+ * The heap needed is bounded by the parse batch, the write buffers of the tiles and
+ * one chunk per tile being rasterized, regardless of the size of the input; the
+ * bucket files take about 1.5 times the size of the binary STL times the average
+ * number of tiles per triangle on disk. The bucket files are open at the same time,
+ * so a grid may have at most 256 tiles, 16 per side.
+ */
+public class TiledDepthMap {
+    public static final int DEFAULT_TILES_PER_SIDE = 4;
+    public static final int DEFAULT_CHUNK_TRIANGLES = 8192;
+
+    // the largest mapping that is a whole number of records
+    private static final long MAX_MAPPING = Integer.MAX_VALUE / TileBucketWriter.RECORD_BYTES * TileBucketWriter.RECORD_BYTES;
+
+    /**
+     * Generates the depth map of a mesh file with the default number of tiles, one
+     * thread per core.
+     *
+     * @param file          The mesh file.
+     * @param layout        The pin layout of the depth map.
+     * @param rotationAngle The rotation of the part about the Z axis in radians.
+     * @param workDirectory The directory for the tile files, which are deleted afterwards.
+     * @return A 2D double array representing the depth map.
+     * @throws IOException Thrown if the file cannot be read or the tiles cannot be written.
+     * @throws InterruptedException Thrown if interrupted while waiting for the tiles.
+     */
+    public static double[][] generateDepthMap(Path file, PinLayout layout, double rotationAngle, Path workDirectory)
+            throws IOException, InterruptedException {
+        int tilesPerSide = Math.min(DEFAULT_TILES_PER_SIDE, layout.getGridSize());
+        return generateDepthMap(file, new TileGrid(layout, tilesPerSide), rotationAngle, workDirectory,
+                Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_TRIANGLES);
+    }
+
+    /**
+     * Generates the depth map of a mesh file.
+     *
+     * @param file           The mesh file.
+     * @param grid           The pin layout of the depth map and its tiles, at most 256 tiles.
+     * @param rotationAngle  The rotation of the part about the Z axis in radians.
+     * @param workDirectory  The directory for the tile files, which are deleted afterwards.
+     * @param threads        The number of tiles rasterized at the same time.
+     * @param chunkTriangles The number of triangles read from a tile at a time.
+     * @return A 2D double array representing the depth map.
+     * @throws IOException Thrown if the file cannot be read or the tiles cannot be written.
+     * @throws InterruptedException Thrown if interrupted while waiting for the tiles.
+     */
+    public static double[][] generateDepthMap(Path file, TileGrid grid, double rotationAngle, Path workDirectory,
+                                              int threads, int chunkTriangles) throws IOException, InterruptedException {
+        if (threads < 1 || chunkTriangles < 1) {
+            throw new IllegalArgumentException("threads and chunkTriangles must be positive");
+        }
+        if (grid.getTileCount() > TileBucketWriter.MAX_TILES) {
+            throw new IllegalArgumentException("At most " + TileBucketWriter.MAX_TILES + " tiles are supported: " + grid.getTileCount());
+        }
+        Vec3d min = DepthMapPipeline.scanMinimum(file, DepthMapPipeline.DEFAULT_BATCH_SIZE);
+        if (min == null) {
+            throw new IllegalArgumentException("The list of triangles cannot be null or empty.");
+        }
+
+        Path directory = Files.createTempDirectory(workDirectory, "tiles");
+        TileBucketWriter buckets = new TileBucketWriter(directory, grid.getTileCount());
+        try {
+            try (TileBucketWriter writer = buckets) {
+                bucket(file, grid, min, rotationAngle, writer);
+            }
+            return rasterize(grid, buckets, threads, chunkTriangles);
+        } finally {
+            buckets.deleteFiles();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void bucket(Path file, TileGrid grid, Vec3d min, double rotationAngle, TileBucketWriter writer) throws IOException {
+        double[] bounds = new double[4];
+        try {
+            MeshImporter.streamMeshFile(file, DepthMapPipeline.DEFAULT_BATCH_SIZE, batch -> {
+                TriangleFilterUtil.makePlanar(batch);
+                TriangleFilterUtil.translateAndRotate(batch, -min.x, -min.y, -min.z, rotationAngle);
+                PackedTriangles packed = PackedTriangles.of(batch);
+                for (int t = 0; t < batch.size(); t++) {
+                    Vec3d[] vertices = batch.get(t).getVertices();
+                    packed.footprintBounds(t, bounds);
+                    grid.forEachTile(bounds[0], bounds[1], bounds[2], bounds[3], tile -> {
+                        try {
+                            writer.add(tile, vertices);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static double[][] rasterize(TileGrid grid, TileBucketWriter buckets, int threads, int chunkTriangles)
+            throws IOException, InterruptedException {
+        long start = MoldMetrics.DEPTH_MAP_TIME.start();
+        StageEvent event = StageEvent.begin("depthMap");
+        int size = grid.getLayout().getGridSize();
+        double[][] depthMap = new double[size][size];
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, grid.getTileCount()));
+        try {
+            List<Future<Integer>> misses = new ArrayList<>();
+            for (int tx = 0; tx < grid.getTilesPerSide(); tx++) {
+                for (int ty = 0; ty < grid.getTilesPerSide(); ty++) {
+                    int x = tx;
+                    int y = ty;
+                    Path tile = buckets.getFile(grid.tileIndex(tx, ty));
+                    misses.add(pool.submit(() -> rasterizeTile(tile, grid, x, y, chunkTriangles, depthMap)));
+                }
+            }
+            int missed = 0;
+            for (Future<Integer> tile : misses) {
+                missed += tile.get();
+            }
+            DepthMapUtil.recordPinQueries((long) size * size, missed);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IllegalStateException("Rasterizing a tile failed", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        event.end((long) size * size, 0);
+        MoldMetrics.DEPTH_MAP_TIME.stop(start);
+        return depthMap;
+    }
+
+    /**
+     * Rasterizes the pins of one tile into their cells of the depth map and deletes
+     * the tile file.
+     *
+     * @return The number of pins of the tile no triangle covered.
+     */
+    private static int rasterizeTile(Path file, TileGrid grid, int tx, int ty, int chunkTriangles, double[][] depthMap)
+            throws IOException {
+        PinLayout layout = grid.getLayout();
+        int i0 = grid.firstPin(tx);
+        int i1 = grid.endPin(tx);
+        int j0 = grid.firstPin(ty);
+        int j1 = grid.endPin(ty);
+        boolean[][] resolved = new boolean[i1 - i0][j1 - j0];
+        int unresolved = (i1 - i0) * (j1 - j0);
+        double[] chunk = new double[chunkTriangles * 9];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            for (long position = 0; position < length && unresolved > 0; position += MAX_MAPPING) {
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPING, length - position));
+                DoubleBuffer doubles = mapping.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                while (doubles.hasRemaining() && unresolved > 0) {
+                    int count = Math.min(chunkTriangles, doubles.remaining() / 9);
+                    doubles.get(chunk, 0, count * 9);
+                    PackedTriangles packed = PackedTriangles.of(chunk, count);
+                    for (int t = 0; t < count && unresolved > 0; t++) {
+                        for (int i = i0; i < i1; i++) {
+                            double x = layout.getX(i);
+                            for (int j = j0; j < j1; j++) {
+                                if (resolved[i - i0][j - j0]) {
+                                    continue;
+                                }
+                                double z = packed.intersectZ(t, x, layout.getY(j));
+                                if (!Double.isNaN(z)) {
+                                    depthMap[i][j] = z;
+                                    resolved[i - i0][j - j0] = true;
+                                    unresolved--;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Files.deleteIfExists(file);
+
+        for (int i = i0; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                if (!resolved[i - i0][j - j0]) {
+                    depthMap[i][j] = -1;
+                }
+            }
+        }
+        return unresolved;
+    }
+}
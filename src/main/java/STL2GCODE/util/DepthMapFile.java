@@ -0,0 +1,261 @@
+package STL2GCODE.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A depth map stored on disk, so that a mold can be inspected, compared or sent
+ * again without regenerating it from its mesh.
+ *
+ * The file starts with a 64 byte little endian header:
+ * <pre>
+ *  0  magic "RDMP"
+ *  4  int    format version (1)
+ *  8  int    header size in bytes (64)
+ * 12  int    pins per side of the grid
+ * 16  double xMin, xMax, yMin, yMax of the pin layout
+ * 48  double millimeters per unit of the layout and the heights (1 for mm)
+ * 56  8 reserved bytes
+ * </pre>
+ * followed by the heights as little endian float32, row by row: element
+ * {@code (row, col)} is {@code depthMap[row][col]} as returned by
+ * {@link DepthMapUtil#generateDepthMap(java.util.List, PinLayout)} and read by
+ * {@link DepthMapUtil#calculatePinHeights(double[][], PinLayout)}. A height of -1
+ * marks a pin no triangle covered and is never scaled. Heights are rounded to float
+ * precision, well below a micrometer for molds up to a meter tall.
+ *
+ * Files are written and read through memory mapping. Reading single pins or tiles
+ * only touches the pages holding them, so large grids can be processed in parts.
+ */
+public final class DepthMapFile implements Closeable {
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    private static final byte[] MAGIC = {'R', 'D', 'M', 'P'};
+    // the largest block of rows mapped at once, well below the 2 GiB mapping limit
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final PinLayout layout;
+    private final double mmPerUnit;
+    private final ByteBuffer[] segments;
+    private final int rowsPerSegment;
+    private final FileChannel channel;
+
+    private DepthMapFile(PinLayout layout, double mmPerUnit, ByteBuffer[] segments, int rowsPerSegment, FileChannel channel) {
+        this.layout = layout;
+        this.mmPerUnit = mmPerUnit;
+        this.segments = segments;
+        this.rowsPerSegment = rowsPerSegment;
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a depth map in millimeters.
+     *
+     * @param file     The file to create or replace.
+     * @param depthMap The depth map, {@code layout.getGridSize()} pins per side.
+     * @param layout   The pin layout the depth map was generated for.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public static void write(Path file, double[][] depthMap, PinLayout layout) throws IOException {
+        int size = layout.getGridSize();
+        if (depthMap.length != size) {
+            throw new IllegalArgumentException("The depth map has " + depthMap.length + " rows, the layout " + size);
+        }
+        int rowsPerSegment = rowsPerSegment(size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(HEADER_SIZE).putInt(size)
+                    .putDouble(layout.getXMin()).putDouble(layout.getXMax())
+                    .putDouble(layout.getYMin()).putDouble(layout.getYMax())
+                    .putDouble(1.0);
+            for (int row0 = 0; row0 < size; row0 += rowsPerSegment) {
+                int rows = Math.min(rowsPerSegment, size - row0);
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE,
+                        dataOffset(row0, 0, size), (long) rows * size * Float.BYTES);
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                for (int row = row0; row < row0 + rows; row++) {
+                    if (depthMap[row].length != size) {
+                        throw new IllegalArgumentException("Row " + row + " of the depth map has " + depthMap[row].length + " pins");
+                    }
+                    for (int col = 0; col < size; col++) {
+                        data.putFloat((float) depthMap[row][col]);
+                    }
+                }
+                data.force();
+            }
+            header.force();
+        }
+    }
+
+    /**
+     * Maps a depth map file for reading. Close it to release the file.
+     *
+     * @param file The file.
+     * @return The mapped depth map.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not a valid depth map file.
+     */
+    public static DepthMapFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IllegalArgumentException("Not a depth map file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int size = header.getInt(12);
+            checkHeader(header, channel.size());
+            int rowsPerSegment = rowsPerSegment(size);
+            ByteBuffer[] segments = new ByteBuffer[(size + rowsPerSegment - 1) / rowsPerSegment];
+            for (int s = 0; s < segments.length; s++) {
+                int rows = Math.min(rowsPerSegment, size - s * rowsPerSegment);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset(s * rowsPerSegment, 0, size),
+                        (long) rows * size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new DepthMapFile(layout(header), header.getDouble(48), segments, rowsPerSegment, channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads a depth map file that has already been read into memory.
+     *
+     * @param bytes The complete content of the file.
+     * @return The depth map.
+     * @throws IllegalArgumentException Thrown if the content is not a valid depth map file.
+     */
+    public static DepthMapFile wrap(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Not a depth map file");
+        }
+        checkHeader(buffer, bytes.length);
+        int size = buffer.getInt(12);
+        buffer.position(HEADER_SIZE);
+        ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        return new DepthMapFile(layout(buffer), buffer.getDouble(48), new ByteBuffer[]{data}, size, null);
+    }
+
+    /**
+     * Determines whether content is a depth map file.
+     *
+     * @param head The first bytes of the file.
+     * @return True if the content starts with the depth map file magic.
+     */
+    public static boolean isDepthMapFile(byte[] head) {
+        if (head.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkHeader(ByteBuffer header, long length) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IllegalArgumentException("Not a depth map file");
+            }
+        }
+        int version = header.getInt(4);
+        if (version != VERSION || header.getInt(8) != HEADER_SIZE) {
+            throw new IllegalArgumentException("Unsupported depth map file version " + version);
+        }
+        int size = header.getInt(12);
+        if (size < 2 || length != dataOffset(size, 0, size)) {
+            throw new IllegalArgumentException("The depth map file is " + length + " bytes long, "
+                    + dataOffset(size, 0, size) + " expected for " + size + " pins per side");
+        }
+        double mmPerUnit = header.getDouble(48);
+        if (!(mmPerUnit > 0) || Double.isInfinite(mmPerUnit)) {
+            throw new IllegalArgumentException("Invalid unit in depth map file: " + mmPerUnit + " mm");
+        }
+    }
+
+    private static PinLayout layout(ByteBuffer header) {
+        double mmPerUnit = header.getDouble(48);
+        return new PinLayout(header.getDouble(16) * mmPerUnit, header.getDouble(24) * mmPerUnit,
+                header.getDouble(32) * mmPerUnit, header.getDouble(40) * mmPerUnit, header.getInt(12));
+    }
+
+    private static long dataOffset(int row, int col, int size) {
+        return HEADER_SIZE + ((long) row * size + col) * Float.BYTES;
+    }
+
+    private static int rowsPerSegment(int size) {
+        return (int) Math.max(1, Math.min(size, MAX_SEGMENT_BYTES / ((long) size * Float.BYTES)));
+    }
+
+    /**
+     * @return The pin layout, in millimeters.
+     */
+    public PinLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Reads the height of a single pin.
+     *
+     * @param row The row index of the depth map.
+     * @param col The column index of the depth map.
+     * @return The height in millimeters, or -1 if no triangle covered the pin.
+     */
+    public double get(int row, int col) {
+        int size = layout.getGridSize();
+        if (row < 0 || row >= size || col < 0 || col >= size) {
+            throw new IndexOutOfBoundsException("Pin " + row + ", " + col + " outside a grid of " + size);
+        }
+        ByteBuffer segment = segments[row / rowsPerSegment];
+        float value = segment.getFloat(((row % rowsPerSegment) * size + col) * Float.BYTES);
+        return value == -1 || mmPerUnit == 1 ? value : value * mmPerUnit;
+    }
+
+    /**
+     * Reads a rectangular part of the depth map.
+     *
+     * @param row0 The first row.
+     * @param col0 The first column.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @return The heights, indexed {@code [row - row0][col - col0]}.
+     */
+    public double[][] readTile(int row0, int col0, int rows, int cols) {
+        double[][] tile = new double[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                tile[r][c] = get(row0 + r, col0 + c);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * @return The whole depth map.
+     */
+    public double[][] readAll() {
+        int size = layout.getGridSize();
+        return readTile(0, 0, size, size);
+    }
+
+    /**
+     * Releases the file. The mapped data stays valid until it is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
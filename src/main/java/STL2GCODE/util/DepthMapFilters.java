@@ -0,0 +1,427 @@
+package STL2GCODE.util;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Post-processing filters for depth maps: separable Gaussian smoothing, a
+ * constant-time median, morphological dilate/erode over square pin footprints and
+ * clamping/quantizing to the actuator range.
+ *
+ * The filters work in place on a flat row-major buffer, {@code map[row * size + col]}
+ * for {@code depthMap[row][col]}, see {@link #flatten(double[][])}, and run their
+ * rows and columns in parallel. Pins with the no-data value -1 keep it and are left
+ * out of the neighbourhood of every other pin.
+ */
+public class DepthMapFilters {
+    /**
+     * The height of pins no triangle covered.
+     */
+    public static final double NO_DATA = -1;
+
+    private static final int COARSE_BINS = 64;
+    private static final int FINE_BINS = COARSE_BINS * COARSE_BINS;
+
+    /**
+     * Copies a depth map into a flat row-major buffer.
+     *
+     * @param depthMap A square depth map.
+     * @return The buffer, {@code depthMap.length} squared long.
+     */
+    public static double[] flatten(double[][] depthMap) {
+        int size = depthMap.length;
+        double[] map = new double[size * size];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(depthMap[row], 0, map, row * size, size);
+        }
+        return map;
+    }
+
+    /**
+     * Copies a flat row-major buffer back into a depth map.
+     *
+     * @param map  The buffer.
+     * @param size The number of pins per side.
+     * @return The depth map.
+     */
+    public static double[][] unflatten(double[] map, int size) {
+        checkSize(map, size);
+        double[][] depthMap = new double[size][];
+        for (int row = 0; row < size; row++) {
+            depthMap[row] = Arrays.copyOfRange(map, row * size, (row + 1) * size);
+        }
+        return depthMap;
+    }
+
+    /**
+     * Smooths the depth map with a Gaussian kernel, first along the rows and then
+     * along the columns. Each pin is the weighted mean of the pins with data within
+     * three standard deviations.
+     *
+     * @param map   The flat depth map, changed in place.
+     * @param size  The number of pins per side.
+     * @param sigma The standard deviation of the kernel in pins.
+     */
+    public static void gaussian(double[] map, int size, double sigma) {
+        checkSize(map, size);
+        if (!(sigma > 0)) {
+            throw new IllegalArgumentException("sigma must be positive: " + sigma);
+        }
+        int radius = (int) Math.ceil(3 * sigma);
+        double[] kernel = new double[2 * radius + 1];
+        for (int k = -radius; k <= radius; k++) {
+            kernel[k + radius] = Math.exp(-k * k / (2 * sigma * sigma));
+        }
+        double[] source = map.clone();
+        // rows: pin (row, col) is at row * size + col, neighbours are 1 apart
+        IntStream.range(0, size).parallel().forEach(row -> convolve(source, map, row * size, 1, size, kernel));
+        System.arraycopy(map, 0, source, 0, map.length);
+        // columns: pin (row, col) is at col + row * size, neighbours are size apart
+        IntStream.range(0, size).parallel().forEach(col -> convolve(source, map, col, size, size, kernel));
+    }
+
+    private static void convolve(double[] source, double[] target, int start, int stride, int length, double[] kernel) {
+        int radius = kernel.length / 2;
+        for (int i = 0; i < length; i++) {
+            int index = start + i * stride;
+            if (source[index] == NO_DATA) {
+                continue;
+            }
+            double sum = 0;
+            double weight = 0;
+            for (int k = Math.max(-radius, -i); k <= Math.min(radius, length - 1 - i); k++) {
+                double value = source[index + k * stride];
+                if (value != NO_DATA) {
+                    sum += value * kernel[k + radius];
+                    weight += kernel[k + radius];
+                }
+            }
+            target[index] = sum / weight;
+        }
+    }
+
+    /**
+     * Replaces every pin by the median of the pins with data in the square of
+     * {@code 2 * radius + 1} pins around it, clipped at the edges. The run time per
+     * pin does not depend on the radius: heights are binned into a two level
+     * histogram of {@value #FINE_BINS} bins spanning the range of the map, column
+     * histograms slide down the rows and the kernel histogram slides along the
+     * columns (Perreault and Hebert). The median is reported as the center of its
+     * bin, so it is exact to half a bin, 1/8192 of the height range.
+     *
+     * @param map    The flat depth map, changed in place.
+     * @param size   The number of pins per side.
+     * @param radius The radius of the window in pins.
+     */
+    public static void median(double[] map, int size, int radius) {
+        median(map, size, radius, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * {@link #median(double[], int, int)} with the rows split into at most the given
+     * number of bands filtered in parallel.
+     */
+    static void median(double[] map, int size, int radius, int maxBands) {
+        checkSize(map, size);
+        if (radius < 0 || radius >= 32768) {
+            throw new IllegalArgumentException("radius must be between 0 and 32767: " + radius);
+        }
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : map) {
+            if (value != NO_DATA) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        if (radius == 0 || !(max > min)) {
+            return;
+        }
+        double binWidth = (max - min) / FINE_BINS;
+        int[] bins = new int[map.length];
+        for (int i = 0; i < map.length; i++) {
+            bins[i] = map[i] == NO_DATA ? -1 : Math.min(FINE_BINS - 1, (int) ((map[i] - min) / binWidth));
+        }
+
+        int bands = Math.max(1, Math.min(size, maxBands));
+        double low = min;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int firstRow = (int) ((long) band * size / bands);
+            int endRow = (int) ((long) (band + 1) * size / bands);
+            new MedianBand(bins, size, radius).run(map, firstRow, endRow, low, binWidth);
+        });
+    }
+
+    /**
+     * The sliding histograms of one band of rows.
+     */
+    private static final class MedianBand {
+        private final int[] bins;
+        private final int size;
+        private final int radius;
+        // per column: COARSE_BINS counts, then FINE_BINS counts
+        private final char[] columnCoarse;
+        private final char[] columnFine;
+        private final int[] kernelCoarse = new int[COARSE_BINS];
+        private final int[] kernelFine = new int[FINE_BINS];
+        // the column the kernel's fine counts of each coarse bin were last brought up to date for
+        private final int[] fineColumn = new int[COARSE_BINS];
+        private static final int STALE = -1;
+        private int kernelCount;
+
+        MedianBand(int[] bins, int size, int radius) {
+            this.bins = bins;
+            this.size = size;
+            this.radius = radius;
+            this.columnCoarse = new char[size * COARSE_BINS];
+            this.columnFine = new char[size * FINE_BINS];
+        }
+
+        void run(double[] map, int firstRow, int endRow, double min, double binWidth) {
+            // start one row above the window of firstRow, the first step below removes it
+            for (int row = Math.max(0, firstRow - radius - 1); row <= Math.min(size - 1, firstRow + radius - 1); row++) {
+                for (int col = 0; col < size; col++) {
+                    addToColumn(col, bins[row * size + col], 1);
+                }
+            }
+            for (int row = firstRow; row < endRow; row++) {
+                // slide the column histograms down to rows row - radius .. row + radius
+                int leaving = row - radius - 1;
+                int entering = row + radius;
+                for (int col = 0; col < size; col++) {
+                    if (leaving >= 0) {
+                        addToColumn(col, bins[leaving * size + col], -1);
+                    }
+                    if (entering < size) {
+                        addToColumn(col, bins[entering * size + col], 1);
+                    }
+                }
+                filterRow(map, row, min, binWidth);
+            }
+        }
+
+        private void addToColumn(int col, int bin, int delta) {
+            if (bin < 0) {
+                return;
+            }
+            columnCoarse[col * COARSE_BINS + bin / COARSE_BINS] += delta;
+            columnFine[col * FINE_BINS + bin] += delta;
+        }
+
+        private void filterRow(double[] map, int row, double min, double binWidth) {
+            Arrays.fill(kernelCoarse, 0);
+            Arrays.fill(kernelFine, 0);
+            Arrays.fill(fineColumn, STALE);
+            kernelCount = 0;
+            for (int col = 0; col <= Math.min(size - 1, radius - 1); col++) {
+                addColumnCoarse(col, 1);
+            }
+            for (int col = 0; col < size; col++) {
+                int leaving = col - radius - 1;
+                int entering = col + radius;
+                if (leaving >= 0) {
+                    addColumnCoarse(leaving, -1);
+                }
+                if (entering < size) {
+                    addColumnCoarse(entering, 1);
+                }
+                int index = row * size + col;
+                if (bins[index] < 0) {
+                    continue;
+                }
+                int bin = medianBin(col);
+                map[index] = min + (bin + 0.5) * binWidth;
+            }
+        }
+
+        private void addColumnCoarse(int col, int delta) {
+            int offset = col * COARSE_BINS;
+            int count = 0;
+            for (int c = 0; c < COARSE_BINS; c++) {
+                kernelCoarse[c] += delta * columnCoarse[offset + c];
+                count += columnCoarse[offset + c];
+            }
+            kernelCount += delta * count;
+        }
+
+        private int medianBin(int col) {
+            int rank = (kernelCount + 1) / 2;
+            int coarse = 0;
+            while (rank > kernelCoarse[coarse]) {
+                rank -= kernelCoarse[coarse];
+                coarse++;
+            }
+            updateFine(coarse, col);
+            int fine = coarse * COARSE_BINS;
+            while (rank > kernelFine[fine]) {
+                rank -= kernelFine[fine];
+                fine++;
+            }
+            return fine;
+        }
+
+        /**
+         * Brings the kernel's fine counts of one coarse bin up to the window around col,
+         * either by sliding them from the window they were last used for or, if that
+         * is further away than the window is wide, by summing the columns afresh.
+         */
+        private void updateFine(int coarse, int col) {
+            int last = fineColumn[coarse];
+            int fine = coarse * COARSE_BINS;
+            if (last == col) {
+                return;
+            }
+            if (last == STALE || col - last > 2 * radius + 1) {
+                Arrays.fill(kernelFine, fine, fine + COARSE_BINS, 0);
+                for (int c = Math.max(0, col - radius); c <= Math.min(size - 1, col + radius); c++) {
+                    addColumnFine(c, fine, 1);
+                }
+            } else {
+                for (int p = last + 1; p <= col; p++) {
+                    if (p - radius - 1 >= 0) {
+                        addColumnFine(p - radius - 1, fine, -1);
+                    }
+                    if (p + radius < size) {
+                        addColumnFine(p + radius, fine, 1);
+                    }
+                }
+            }
+            fineColumn[coarse] = col;
+        }
+
+        private void addColumnFine(int col, int fine, int delta) {
+            int offset = col * FINE_BINS + fine;
+            for (int f = 0; f < COARSE_BINS; f++) {
+                kernelFine[fine + f] += delta * columnFine[offset + f];
+            }
+        }
+    }
+
+    /**
+     * Raises every pin to the highest pin with data in the square of
+     * {@code 2 * radius + 1} pins around it, so that a feature is at least a pin
+     * footprint wide. Runs in constant time per pin (van Herk/Gil-Werman).
+     *
+     * @param map    The flat depth map, changed in place.
+     * @param size   The number of pins per side.
+     * @param radius The radius of the footprint in pins.
+     */
+    public static void dilate(double[] map, int size, int radius) {
+        morphology(map, size, radius, true);
+    }
+
+    /**
+     * Lowers every pin to the lowest pin with data in the square of
+     * {@code 2 * radius + 1} pins around it. Runs in constant time per pin
+     * (van Herk/Gil-Werman).
+     *
+     * @param map    The flat depth map, changed in place.
+     * @param size   The number of pins per side.
+     * @param radius The radius of the footprint in pins.
+     */
+    public static void erode(double[] map, int size, int radius) {
+        morphology(map, size, radius, false);
+    }
+
+    private static void morphology(double[] map, int size, int radius, boolean dilate) {
+        checkSize(map, size);
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        if (radius == 0) {
+            return;
+        }
+        double identity = dilate ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        double[] source = new double[map.length];
+        for (int i = 0; i < map.length; i++) {
+            source[i] = map[i] == NO_DATA ? identity : map[i];
+        }
+        double[] target = new double[map.length];
+        IntStream.range(0, size).parallel().forEach(row ->
+                vanHerk(source, target, row * size, 1, size, radius, dilate, identity));
+        System.arraycopy(target, 0, source, 0, map.length);
+        IntStream.range(0, size).parallel().forEach(col ->
+                vanHerk(source, target, col, size, size, radius, dilate, identity));
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] != NO_DATA) {
+                map[i] = target[i];
+            }
+        }
+    }
+
+    /**
+     * Running max (or min) over a window of {@code 2 * radius + 1} along one line.
+     * The line is padded with the identity by radius on both sides and cut into
+     * blocks of the window size; every window then spans the tail of one block and
+     * the head of the next, so it is one running value from each end of the blocks.
+     */
+    private static void vanHerk(double[] source, double[] target, int start, int stride, int length, int radius,
+                                boolean max, double identity) {
+        int window = 2 * radius + 1;
+        int padded = (length + 2 * radius + window - 1) / window * window;
+        double[] prefix = new double[padded];
+        double[] suffix = new double[padded];
+        for (int p = 0; p < padded; p++) {
+            double value = padded(source, start, stride, length, radius, p, identity);
+            prefix[p] = p % window == 0 ? value : pick(prefix[p - 1], value, max);
+        }
+        for (int p = padded - 1; p >= 0; p--) {
+            double value = padded(source, start, stride, length, radius, p, identity);
+            suffix[p] = (p + 1) % window == 0 ? value : pick(suffix[p + 1], value, max);
+        }
+        for (int i = 0; i < length; i++) {
+            // pin i covers padded positions i .. i + window - 1
+            target[start + i * stride] = pick(suffix[i], prefix[i + window - 1], max);
+        }
+    }
+
+    private static double padded(double[] source, int start, int stride, int length, int radius, int p, double identity) {
+        int i = p - radius;
+        return i < 0 || i >= length ? identity : source[start + i * stride];
+    }
+
+    private static double pick(double a, double b, boolean max) {
+        return max ? Math.max(a, b) : Math.min(a, b);
+    }
+
+    /**
+     * Limits every pin with data to the stroke of the actuators.
+     *
+     * @param map The flat depth map, changed in place.
+     * @param min The lowest height a pin can be set to.
+     * @param max The highest height a pin can be set to.
+     */
+    public static void clamp(double[] map, double min, double max) {
+        if (!(max >= min)) {
+            throw new IllegalArgumentException("The clamp range is empty: " + min + ".." + max);
+        }
+        IntStream.range(0, map.length).parallel().forEach(i -> {
+            if (map[i] != NO_DATA) {
+                map[i] = Math.max(min, Math.min(max, map[i]));
+            }
+        });
+    }
+
+    /**
+     * Rounds every pin with data to the nearest multiple of the actuator step.
+     *
+     * @param map  The flat depth map, changed in place.
+     * @param step The step of the actuators.
+     */
+    public static void quantize(double[] map, double step) {
+        if (!(step > 0)) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        IntStream.range(0, map.length).parallel().forEach(i -> {
+            if (map[i] != NO_DATA) {
+                map[i] = Math.round(map[i] / step) * step;
+            }
+        });
+    }
+
+    private static void checkSize(double[] map, int size) {
+        if ((long) size * size != map.length) {
+            throw new IllegalArgumentException("Expected " + (long) size * size + " pins, got " + map.length);
+        }
+    }
+}
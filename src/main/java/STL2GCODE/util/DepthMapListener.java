@@ -0,0 +1,18 @@
+package STL2GCODE.util;
+
+/**
+ * Receives the intermediate depth maps of a {@link ProgressiveDepthMap}.
+ */
+@FunctionalInterface
+public interface DepthMapListener {
+
+    /**
+     * Called after every refinement level, on the thread computing the depth map.
+     *
+     * @param depthMap A copy of the depth map so far. Pins that have not been sampled
+     *                 yet hold the value of the nearest sampled pin towards the origin.
+     * @param stride   The distance in pins between sampled pins at this level; 1 for the final map.
+     * @param complete True if this is the final depth map.
+     */
+    void onRefinement(double[][] depthMap, int stride, boolean complete);
+}
@@ -1,11 +1,16 @@
 package STL2GCODE.util;
 
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.stl4j.PackedTriangles;
 import STL2GCODE.stl4j.Plane;
 import STL2GCODE.stl4j.Triangle;
 import STL2GCODE.stl4j.Vec3d;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
 
 
 /**
@@ -39,21 +44,39 @@ public class DepthMapUtil {
      * @return A 2D double array representing the depth map.
      */
     public static double[][] generateDepthMap(List<Triangle> triangles, double xMin, double xMax, double yMin, double yMax) {
-        double[][] depthMap = new double[MATRIX_SIZE][MATRIX_SIZE];
+        return generateDepthMap(triangles, new PinLayout(xMin, xMax, yMin, yMax, MATRIX_SIZE));
+    }
 
-        double xStep = (xMax - xMin) / (MATRIX_SIZE - 1);
-        double yStep = (yMax - yMin) / (MATRIX_SIZE - 1);
+    /**
+     * Generates a depth map from a list of triangles for the given pin layout.
+     *
+     * @param triangles A list of Triangle objects representing the surface.
+     * @param layout The XY window and number of pins of the depth map.
+     * @return A 2D double array representing the depth map.
+     */
+    public static double[][] generateDepthMap(List<Triangle> triangles, PinLayout layout) {
+        long start = MoldMetrics.DEPTH_MAP_TIME.start();
+        StageEvent event = StageEvent.begin("depthMap");
+        int size = layout.getGridSize();
+        double[][] depthMap = new double[size][size];
+        int misses = 0;
+        PackedTriangles packed = PackedTriangles.of(triangles);
 
-        for (int i = 0; i < MATRIX_SIZE; i++) {
-            for (int j = 0; j < MATRIX_SIZE; j++) {
-                double x = xMin + i * xStep;
-                double y = yMin + j * yStep;
-                Vec3d pinLocation = new Vec3d(x, y, 0);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double x = layout.getX(i);
+                double y = layout.getY(j);
 
-                depthMap[i][j] = calculateZForPin(pinLocation, triangles);
+                depthMap[i][j] = calculateZForPin(x, y, packed);
+                if (depthMap[i][j] == -1) {
+                    misses++;
+                }
             }
         }
 
+        recordPinQueries(size * size, misses);
+        event.end(size * size, 0);
+        MoldMetrics.DEPTH_MAP_TIME.stop(start);
         return depthMap;
     }
 
@@ -109,22 +132,16 @@ public class DepthMapUtil {
         return (u >= 0) && (v >= 0) && (u + v <= 1);
     }
 
-    private static double calculateZForPin(Vec3d pinLocation, List<Triangle> triangles) {
-        for (Triangle triangle : triangles) {
-            Vec3d[] vertices = triangle.getVertices();
-            double[] barycentricCoords = triangle.barycentricCoords(pinLocation.x, pinLocation.y);
-
-            if (barycentricCoords != null) {
-                double z = vertices[0].z * barycentricCoords[0]
-                        + vertices[1].z * barycentricCoords[1]
-                        + vertices[2].z * barycentricCoords[2];
-                return z;
-            }
-        }
-
-        List<Vec3d> pointsWithinAABB = new ArrayList<>();
-
-        return -1;
+    /**
+     * Finds the height of the pin at (x, y) on the first triangle that contains it.
+     *
+     * @param x         The x-coordinate of the pin.
+     * @param y         The y-coordinate of the pin.
+     * @param triangles The packed triangles of the surface.
+     * @return The z height, or -1 if no triangle contains the pin.
+     */
+    static double calculateZForPin(double x, double y, PackedTriangles triangles) {
+        return triangles.firstHitZ(x, y, -1);
     }
 
 
@@ -139,15 +156,24 @@ public class DepthMapUtil {
      * @return A list of pin locations and heights represented as {@link Vec3d}.
      */
     public static List<Vec3d> calculatePinHeights(double[][] depthMap, double xMin, double xMax, double yMin, double yMax) {
-        List<Vec3d> pinHeights = new ArrayList<>();
+        return calculatePinHeights(depthMap, new PinLayout(xMin, xMax, yMin, yMax, MATRIX_SIZE));
+    }
 
-        double xStep = (xMax - xMin) / (MATRIX_SIZE - 1);
-        double yStep = (yMax - yMin) / (MATRIX_SIZE - 1);
+    /**
+     * Calculates the pin heights from the provided depth map using the specified pin layout.
+     *
+     * @param depthMap The depth map represented as a 2D array of z heights.
+     * @param layout   The pin layout the depth map was generated for.
+     * @return A list of pin locations and heights represented as {@link Vec3d}.
+     */
+    public static List<Vec3d> calculatePinHeights(double[][] depthMap, PinLayout layout) {
+        int size = layout.getGridSize();
+        List<Vec3d> pinHeights = new ArrayList<>(size * size);
 
-        for (int row = 0; row < MATRIX_SIZE; row++) {
-            for (int col = 0; col < MATRIX_SIZE; col++) {
-                double x = xMin + col * xStep;
-                double y = yMin + row * yStep;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                double x = layout.getX(col);
+                double y = layout.getY(row);
                 double z = depthMap[row][col];
                 Vec3d pin = new Vec3d(x, y, z);
                 pinHeights.add(pin);
@@ -156,4 +182,89 @@ public class DepthMapUtil {
 
         return pinHeights;
     }
+
+    /**
+     * The heights the G-code sets the pins to. Pins without data (-1) are set to the
+     * average height of all pins that are moved, and pins at height 0 are not moved
+     * at all and are NaN here.
+     *
+     * @param pins   The number of pins.
+     * @param height The depth of each pin, in the order of {@link #calculatePinHeights(double[][], PinLayout)}.
+     * @return The target height of every pin, in the same order.
+     */
+    public static double[] targetHeights(int pins, IntToDoubleFunction height) {
+        // the -1 pins count towards the average, they are moved as well
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < pins; i++) {
+            double z = height.applyAsDouble(i);
+            if (z != 0) {
+                count++;
+                sum += z;
+            }
+        }
+        double avg = sum / count;
+        double[] target = new double[pins];
+        for (int i = 0; i < pins; i++) {
+            double z = height.applyAsDouble(i);
+            target[i] = z == -1 ? avg : z == 0 ? Double.NaN : z;
+        }
+        return target;
+    }
+
+    /**
+     * Computes the pin heights one pin at a time and hands each pin to the sink as soon
+     * as it is known. The pins are produced in the same order and with the same values
+     * as {@code calculatePinHeights(generateDepthMap(...))}, which allows G-code to be
+     * written and sent while the remaining pins are still being computed.
+     *
+     * @param triangles A list of Triangle objects representing the surface.
+     * @param xMin      The minimum x-coordinate of the pin layout.
+     * @param xMax      The maximum x-coordinate of the pin layout.
+     * @param yMin      The minimum y-coordinate of the pin layout.
+     * @param yMax      The maximum y-coordinate of the pin layout.
+     * @param sink      Receives every pin location and height as a {@link Vec3d}.
+     */
+    public static void streamPinHeights(List<Triangle> triangles, double xMin, double xMax, double yMin, double yMax, Consumer<Vec3d> sink) {
+        streamPinHeights(triangles, new PinLayout(xMin, xMax, yMin, yMax, MATRIX_SIZE), sink);
+    }
+
+    /**
+     * Computes the pin heights for the given pin layout one pin at a time, see
+     * {@link #streamPinHeights(List, double, double, double, double, Consumer)}.
+     *
+     * @param triangles A list of Triangle objects representing the surface.
+     * @param layout    The pin layout.
+     * @param sink      Receives every pin location and height as a {@link Vec3d}.
+     */
+    public static void streamPinHeights(List<Triangle> triangles, PinLayout layout, Consumer<Vec3d> sink) {
+        StageEvent event = StageEvent.begin("depthMap");
+        int size = layout.getGridSize();
+        int misses = 0;
+        PackedTriangles packed = PackedTriangles.of(triangles);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                // same sample point as depthMap[row][col] in generateDepthMap
+                double z = calculateZForPin(layout.getX(row), layout.getY(col), packed);
+                if (z == -1) {
+                    misses++;
+                }
+                sink.accept(new Vec3d(layout.getX(col), layout.getY(row), z));
+            }
+        }
+        recordPinQueries(size * size, misses);
+        event.end(size * size, 0);
+    }
+
+    /**
+     * Adds to the pin query metrics. Lookups are counted per depth map rather than
+     * per pin to keep the counters out of the inner loop.
+     *
+     * @param queries The number of pins looked up.
+     * @param misses  The number of those that hit no triangle.
+     */
+    public static void recordPinQueries(long queries, long misses) {
+        MoldMetrics.PIN_QUERIES.add(queries);
+        MoldMetrics.PIN_MISSES.add(misses);
+    }
 }
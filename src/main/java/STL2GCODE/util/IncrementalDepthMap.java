@@ -0,0 +1,312 @@
+package STL2GCODE.util;
+
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.stl4j.PackedTriangles;
+import STL2GCODE.stl4j.Triangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A depth map that is kept up to date while the surface is edited, recomputing only
+ * the pins an edit can affect.
+ *
+ * Every triangle has a stable id: the triangles passed to the constructor get their
+ * index in the list, added triangles the next free id. Replacing a triangle keeps
+ * its id and therefore its place in the list order, which decides between
+ * overlapping triangles just as in {@link DepthMapUtil#generateDepthMap(List, PinLayout)}.
+ *
+ * Each pin keeps the ids of the triangles whose sampling footprint covers it, see
+ * {@link PackedTriangles#footprintBounds(int, double[])}. An edit marks the pins
+ * under the old and the new footprint of the triangle as dirty, and
+ * {@link #update()} recomputes just those pins from their candidates, so the cost
+ * of an edit is proportional to the area it touches rather than to the size of the
+ * mesh. Triangles without finite bounds are candidates of every pin and dirty the
+ * whole map.
+ *
+ * The triangles are the ones the depth map is sampled from, that is after
+ * {@link TriangleFilterUtil#applyMoldFilters(List, double)}. After
+ * {@link #update()} the depth map equals
+ * {@code DepthMapUtil.generateDepthMap(getTriangles(), layout)}.
+ */
+public class IncrementalDepthMap {
+    private final PinLayout layout;
+    private final int size;
+    private final List<Triangle> triangles;
+    private final PackedTriangles packed;
+    private final double[][] depthMap;
+    // per pin i * size + j, the sorted ids of the triangles whose footprint covers it
+    private final int[][] candidates;
+    private final int[] candidateCount;
+    // sorted ids of the triangles with unbounded footprints
+    private int[] unbounded = new int[4];
+    private int unboundedCount = 0;
+    private final boolean[] dirty;
+    private int[] dirtyPins;
+    private int dirtyCount = 0;
+    private final double[] bounds = new double[4];
+
+    /**
+     * Generates the depth map of the surface.
+     *
+     * @param triangles A list of Triangle objects representing the surface. The list is copied.
+     * @param layout    The pin layout of the depth map.
+     */
+    public IncrementalDepthMap(List<Triangle> triangles, PinLayout layout) {
+        this.layout = layout;
+        this.size = layout.getGridSize();
+        this.triangles = new ArrayList<>(triangles);
+        this.packed = PackedTriangles.of(triangles);
+        this.depthMap = new double[size][size];
+        this.candidates = new int[size * size][];
+        this.candidateCount = new int[size * size];
+        this.dirty = new boolean[size * size];
+        this.dirtyPins = new int[16];
+        for (int id = 0; id < this.triangles.size(); id++) {
+            // ids are visited in ascending order, so appending keeps every list sorted
+            link(id);
+        }
+        for (int pin = 0; pin < size * size; pin++) {
+            markDirty(pin);
+        }
+        update();
+    }
+
+    /**
+     * @return The pin layout of the depth map.
+     */
+    public PinLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return The current triangles in id order, without the removed ones.
+     */
+    public List<Triangle> getTriangles() {
+        List<Triangle> live = new ArrayList<>(triangles.size());
+        for (Triangle triangle : triangles) {
+            if (triangle != null) {
+                live.add(triangle);
+            }
+        }
+        return live;
+    }
+
+    /**
+     * @param id The id of a triangle.
+     * @return The triangle, or null if it was removed.
+     */
+    public Triangle getTriangle(int id) {
+        return triangles.get(id);
+    }
+
+    /**
+     * Replaces a triangle, keeping its id.
+     *
+     * @param id       The id of the triangle.
+     * @param triangle The new triangle.
+     */
+    public void replace(int id, Triangle triangle) {
+        checkLive(id);
+        unlink(id);
+        triangles.set(id, triangle);
+        packed.set(id, triangle);
+        link(id);
+    }
+
+    /**
+     * Adds a triangle behind all others.
+     *
+     * @param triangle The triangle.
+     * @return The id of the triangle.
+     */
+    public int add(Triangle triangle) {
+        triangles.add(triangle);
+        int id = packed.add(triangle);
+        link(id);
+        return id;
+    }
+
+    /**
+     * Removes a triangle. Its id is not reused.
+     *
+     * @param id The id of the triangle.
+     */
+    public void remove(int id) {
+        checkLive(id);
+        unlink(id);
+        triangles.set(id, null);
+        packed.remove(id);
+    }
+
+    /**
+     * @return The number of pins an {@link #update()} would recompute.
+     */
+    public int getDirtyPinCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Recomputes the pins touched by the edits since the last update.
+     *
+     * @return The number of pins recomputed.
+     */
+    public int update() {
+        StageEvent event = StageEvent.begin("depthMapUpdate");
+        int updated = dirtyCount;
+        int misses = 0;
+        for (int d = 0; d < dirtyCount; d++) {
+            int pin = dirtyPins[d];
+            dirty[pin] = false;
+            int i = pin / size;
+            int j = pin % size;
+            double z = calculateZForPin(pin, layout.getX(i), layout.getY(j));
+            depthMap[i][j] = z;
+            if (z == -1) {
+                misses++;
+            }
+        }
+        dirtyCount = 0;
+        DepthMapUtil.recordPinQueries(updated, misses);
+        event.end(updated, 0);
+        return updated;
+    }
+
+    /**
+     * @return A copy of the depth map as of the last {@link #update()}, indexed like
+     * {@link DepthMapUtil#generateDepthMap(List, PinLayout)}.
+     */
+    public double[][] getDepthMap() {
+        double[][] copy = new double[size][];
+        for (int i = 0; i < size; i++) {
+            copy[i] = depthMap[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * The first hit among the candidates of the pin and the unbounded triangles, in
+     * id order.
+     */
+    private double calculateZForPin(int pin, double x, double y) {
+        int[] ids = candidates[pin];
+        int count = candidateCount[pin];
+        int a = 0;
+        int b = 0;
+        while (a < count || b < unboundedCount) {
+            int id;
+            if (b >= unboundedCount || (a < count && ids[a] < unbounded[b])) {
+                id = ids[a++];
+            } else {
+                id = unbounded[b++];
+            }
+            double z = packed.intersectZ(id, x, y);
+            if (!Double.isNaN(z)) {
+                return z;
+            }
+        }
+        return -1;
+    }
+
+    private void checkLive(int id) {
+        if (id < 0 || id >= triangles.size() || triangles.get(id) == null) {
+            throw new IllegalArgumentException("No triangle with id " + id);
+        }
+    }
+
+    /**
+     * Adds the triangle to the candidates of the pins under its footprint and marks
+     * those pins dirty.
+     */
+    private void link(int id) {
+        packed.footprintBounds(id, bounds);
+        if (Double.isInfinite(bounds[0]) || Double.isInfinite(bounds[1])
+                || Double.isInfinite(bounds[2]) || Double.isInfinite(bounds[3])) {
+            unbounded = insert(unbounded, unboundedCount++, id);
+            for (int pin = 0; pin < size * size; pin++) {
+                markDirty(pin);
+            }
+            return;
+        }
+        forEachCoveredPin(pin -> {
+            candidates[pin] = insert(candidates[pin] == null ? new int[2] : candidates[pin], candidateCount[pin]++, id);
+            markDirty(pin);
+        });
+    }
+
+    /**
+     * Removes the triangle from the candidates of the pins under its footprint and
+     * marks those pins dirty.
+     */
+    private void unlink(int id) {
+        packed.footprintBounds(id, bounds);
+        if (Double.isInfinite(bounds[0]) || Double.isInfinite(bounds[1])
+                || Double.isInfinite(bounds[2]) || Double.isInfinite(bounds[3])) {
+            int index = Arrays.binarySearch(unbounded, 0, unboundedCount, id);
+            if (index >= 0) {
+                System.arraycopy(unbounded, index + 1, unbounded, index, --unboundedCount - index);
+                for (int pin = 0; pin < size * size; pin++) {
+                    markDirty(pin);
+                }
+            }
+            return;
+        }
+        forEachCoveredPin(pin -> {
+            int index = Arrays.binarySearch(candidates[pin], 0, candidateCount[pin], id);
+            System.arraycopy(candidates[pin], index + 1, candidates[pin], index, --candidateCount[pin] - index);
+            markDirty(pin);
+        });
+    }
+
+    /**
+     * Visits the pins whose sample point lies within the current bounds, with the
+     * same comparisons as {@link PackedTriangles#intersectZ(int, double, double)}.
+     */
+    private void forEachCoveredPin(IntConsumer action) {
+        // one pin of slack on each side for rounding; clamped before the cast so huge bounds cannot overflow
+        int iMin = (int) Math.max(0, Math.floor((bounds[0] - layout.getXMin()) / layout.getXStep()) - 1);
+        int iMax = (int) Math.min(size - 1, Math.ceil((bounds[2] - layout.getXMin()) / layout.getXStep()) + 1);
+        int jMin = (int) Math.max(0, Math.floor((bounds[1] - layout.getYMin()) / layout.getYStep()) - 1);
+        int jMax = (int) Math.min(size - 1, Math.ceil((bounds[3] - layout.getYMin()) / layout.getYStep()) + 1);
+        for (int i = iMin; i <= iMax; i++) {
+            double x = layout.getX(i);
+            if (x < bounds[0] || x > bounds[2]) {
+                continue;
+            }
+            for (int j = jMin; j <= jMax; j++) {
+                double y = layout.getY(j);
+                if (y < bounds[1] || y > bounds[3]) {
+                    continue;
+                }
+                action.accept(i * size + j);
+            }
+        }
+    }
+
+    private void markDirty(int pin) {
+        if (!dirty[pin]) {
+            dirty[pin] = true;
+            if (dirtyCount == dirtyPins.length) {
+                dirtyPins = Arrays.copyOf(dirtyPins, dirtyCount * 2);
+            }
+            dirtyPins[dirtyCount++] = pin;
+        }
+    }
+
+    /**
+     * Inserts id into the sorted first count elements of ids, growing the array if
+     * needed.
+     */
+    private static int[] insert(int[] ids, int count, int id) {
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        int index = Arrays.binarySearch(ids, 0, count, id);
+        int at = index < 0 ? -index - 1 : index;
+        System.arraycopy(ids, at, ids, at + 1, count - at);
+        ids[at] = id;
+        return ids;
+    }
+}
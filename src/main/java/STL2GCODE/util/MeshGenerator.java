@@ -0,0 +1,243 @@
+package STL2GCODE.util;
+
+import STL2GCODE.stl4j.STLWriter;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Generates reproducible synthetic meshes for tests and benchmarks. The same seed,
+ * kind and size always produce the same triangles in the same order.
+ *
+ * Triangles are handed to a consumer as they are generated, so meshes with tens of
+ * millions of facets can be written straight to disk with
+ * {@link #writeSTL(Kind, long, double, Path, boolean)}.
+ */
+public class MeshGenerator {
+
+    /**
+     * The kinds of mesh the generator produces.
+     */
+    public enum Kind {
+        /**
+         * A single wavy surface over a square, two triangles per grid cell.
+         */
+        HEIGHT_FIELD,
+        /**
+         * A watertight solid: a wavy top, a flat bottom and four side walls.
+         */
+        CLOSED_SOLID,
+        /**
+         * A height field in which a tenth of the cells are replaced by zero-area
+         * and needle-thin sliver triangles.
+         */
+        DEGENERATE
+    }
+
+    private static final int WAVES = 4;
+    private static final double DEGENERATE_FRACTION = 0.1;
+
+    private final long seed;
+
+    /**
+     * @param seed The seed all generated surfaces derive from.
+     */
+    public MeshGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the exact number of triangles {@link #generate(Kind, long, double, Consumer)}
+     * produces for a requested size. The count is close to, but not always equal to,
+     * the requested one because the meshes are built from square grids.
+     *
+     * @param kind The kind of mesh.
+     * @param targetTriangles The requested number of triangles.
+     * @return The actual number of triangles.
+     */
+    public static long triangleCount(Kind kind, long targetTriangles) {
+        long n = cells(kind, targetTriangles);
+        return kind == Kind.CLOSED_SOLID ? 4 * n * n + 8 * n : 2 * n * n;
+    }
+
+    /**
+     * Generates a mesh covering {@code [0, size] x [0, size]} in XY.
+     *
+     * @param kind The kind of mesh.
+     * @param targetTriangles The requested number of triangles, see {@link #triangleCount(Kind, long)}.
+     * @param size The side length of the covered square in mm.
+     * @param sink Receives the triangles in order.
+     */
+    public void generate(Kind kind, long targetTriangles, double size, Consumer<Triangle> sink) {
+        int n = cells(kind, targetTriangles);
+        double step = size / n;
+        double[] waves = waves(size);
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+
+        // one row of heights at a time keeps memory independent of the mesh size
+        double[] lower = heightRow(waves, 0, step, n);
+        for (int j = 0; j < n; j++) {
+            double[] upper = heightRow(waves, j + 1, step, n);
+            for (int i = 0; i < n; i++) {
+                Vec3d a = new Vec3d(i * step, j * step, lower[i]);
+                Vec3d b = new Vec3d((i + 1) * step, j * step, lower[i + 1]);
+                Vec3d c = new Vec3d((i + 1) * step, (j + 1) * step, upper[i + 1]);
+                Vec3d d = new Vec3d(i * step, (j + 1) * step, upper[i]);
+                if (kind == Kind.DEGENERATE && random.nextDouble() < DEGENERATE_FRACTION) {
+                    // a zero-area triangle along the cell diagonal and a needle along its bottom edge
+                    Vec3d mid = new Vec3d((a.x + c.x) / 2, (a.y + c.y) / 2, (a.z + c.z) / 2);
+                    sink.accept(new Triangle(a, mid, c));
+                    Vec3d needle = new Vec3d((a.x + b.x) / 2, a.y + step * 1e-6, (a.z + b.z) / 2);
+                    sink.accept(new Triangle(a, b, needle));
+                } else {
+                    sink.accept(new Triangle(a, b, c));
+                    sink.accept(new Triangle(a, c, d));
+                }
+            }
+            lower = upper;
+        }
+
+        if (kind == Kind.CLOSED_SOLID) {
+            generateBottomAndWalls(waves, n, step, sink);
+        }
+    }
+
+    /**
+     * Generates a mesh into a list.
+     *
+     * @param kind The kind of mesh.
+     * @param targetTriangles The requested number of triangles.
+     * @param size The side length of the covered square in mm.
+     * @return The triangles.
+     */
+    public List<Triangle> generate(Kind kind, long targetTriangles, double size) {
+        List<Triangle> triangles = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, triangleCount(kind, targetTriangles)));
+        generate(kind, targetTriangles, size, triangles::add);
+        return triangles;
+    }
+
+    /**
+     * Generates a mesh straight into an STL file.
+     *
+     * @param kind The kind of mesh.
+     * @param targetTriangles The requested number of triangles.
+     * @param size The side length of the covered square in mm.
+     * @param path The file to write.
+     * @param ascii True to write ASCII STL, false for binary STL.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public void writeSTL(Kind kind, long targetTriangles, double size, Path path, boolean ascii) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeSTL(kind, targetTriangles, size, out, ascii);
+        }
+    }
+
+    /**
+     * Generates a mesh straight into an STL stream, which is closed when done.
+     *
+     * @param kind The kind of mesh.
+     * @param targetTriangles The requested number of triangles.
+     * @param size The side length of the covered square in mm.
+     * @param out The destination.
+     * @param ascii True to write ASCII STL, false for binary STL.
+     * @throws IOException Thrown if the stream cannot be written.
+     */
+    public void writeSTL(Kind kind, long targetTriangles, double size, OutputStream out, boolean ascii) throws IOException {
+        try (STLWriter writer = new STLWriter(out, ascii, triangleCount(kind, targetTriangles))) {
+            generate(kind, targetTriangles, size, triangle -> {
+                try {
+                    writer.write(triangle);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void generateBottomAndWalls(double[] waves, int n, double step, Consumer<Triangle> sink) {
+        // the bottom is a grid as fine as the top so that every edge is shared by exactly two faces
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < n; i++) {
+                Vec3d a = new Vec3d(i * step, j * step, 0);
+                Vec3d b = new Vec3d((i + 1) * step, j * step, 0);
+                Vec3d c = new Vec3d((i + 1) * step, (j + 1) * step, 0);
+                Vec3d d = new Vec3d(i * step, (j + 1) * step, 0);
+                sink.accept(new Triangle(a, c, b));
+                sink.accept(new Triangle(a, d, c));
+            }
+        }
+        double size = n * step;
+        for (int i = 0; i < n; i++) {
+            double u0 = i * step;
+            double u1 = (i + 1) * step;
+            // front (y = 0), back (y = size), left (x = 0), right (x = size)
+            wall(sink, new Vec3d(u0, 0, 0), new Vec3d(u1, 0, 0),
+                    new Vec3d(u1, 0, height(waves, u1, 0)), new Vec3d(u0, 0, height(waves, u0, 0)));
+            wall(sink, new Vec3d(u1, size, 0), new Vec3d(u0, size, 0),
+                    new Vec3d(u0, size, height(waves, u0, size)), new Vec3d(u1, size, height(waves, u1, size)));
+            wall(sink, new Vec3d(0, u1, 0), new Vec3d(0, u0, 0),
+                    new Vec3d(0, u0, height(waves, 0, u0)), new Vec3d(0, u1, height(waves, 0, u1)));
+            wall(sink, new Vec3d(size, u0, 0), new Vec3d(size, u1, 0),
+                    new Vec3d(size, u1, height(waves, size, u1)), new Vec3d(size, u0, height(waves, size, u0)));
+        }
+    }
+
+    private static void wall(Consumer<Triangle> sink, Vec3d a, Vec3d b, Vec3d c, Vec3d d) {
+        sink.accept(new Triangle(a, b, c));
+        sink.accept(new Triangle(a, c, d));
+    }
+
+    private static int cells(Kind kind, long targetTriangles) {
+        if (targetTriangles < 1) {
+            throw new IllegalArgumentException("At least one triangle must be requested.");
+        }
+        double perCell = kind == Kind.CLOSED_SOLID ? 4 : 2;
+        return (int) Math.max(1, Math.round(Math.sqrt(targetTriangles / perCell)));
+    }
+
+    /**
+     * Picks amplitude, frequencies and phases of the waves making up the surface.
+     */
+    private double[] waves(double size) {
+        Random random = new Random(seed);
+        double[] waves = new double[WAVES * 5];
+        for (int k = 0; k < WAVES; k++) {
+            waves[k * 5] = size * 0.02 * (0.5 + random.nextDouble()) / (k + 1);
+            waves[k * 5 + 1] = 2 * Math.PI * (k + 1 + random.nextDouble()) / size;
+            waves[k * 5 + 2] = 2 * Math.PI * (k + 1 + random.nextDouble()) / size;
+            waves[k * 5 + 3] = random.nextDouble() * 2 * Math.PI;
+            waves[k * 5 + 4] = random.nextDouble() * 2 * Math.PI;
+        }
+        return waves;
+    }
+
+    private static double[] heightRow(double[] waves, int j, double step, int n) {
+        double[] row = new double[n + 1];
+        for (int i = 0; i <= n; i++) {
+            row[i] = height(waves, i * step, j * step);
+        }
+        return row;
+    }
+
+    private static double height(double[] waves, double x, double y) {
+        // stays well above zero so the closed solid has a positive thickness everywhere
+        double z = 0;
+        double amplitude = 0;
+        for (int k = 0; k < waves.length; k += 5) {
+            z += waves[k] * Math.sin(waves[k + 1] * x + waves[k + 3]) * Math.cos(waves[k + 2] * y + waves[k + 4]);
+            amplitude += waves[k];
+        }
+        return z + 2 * amplitude + 1;
+    }
+}
@@ -0,0 +1,112 @@
+package STL2GCODE.util;
+
+import java.util.Objects;
+
+/**
+ * Describes the square grid of pins of a molding bed: the XY window covered by the
+ * pins and the number of pins along each side. Pin {@code (row, col)} sits at
+ * {@code (getX(col), getY(row))}.
+ */
+public final class PinLayout {
+    /**
+     * The layout of the bed the tool was originally written for.
+     */
+    public static final PinLayout DEFAULT = new PinLayout(12, 462, 25, 475, DepthMapUtil.MATRIX_SIZE);
+
+    private final double xMin;
+    private final double xMax;
+    private final double yMin;
+    private final double yMax;
+    private final int gridSize;
+
+    /**
+     * @param xMin The minimum x-coordinate of the pin layout.
+     * @param xMax The maximum x-coordinate of the pin layout.
+     * @param yMin The minimum y-coordinate of the pin layout.
+     * @param yMax The maximum y-coordinate of the pin layout.
+     * @param gridSize The number of pins along each side of the grid.
+     */
+    public PinLayout(double xMin, double xMax, double yMin, double yMax, int gridSize) {
+        if (gridSize < 2) {
+            throw new IllegalArgumentException("A pin grid needs at least two pins per side.");
+        }
+        if (!(xMax > xMin) || !(yMax > yMin)) {
+            throw new IllegalArgumentException("The pin layout ranges must not be empty.");
+        }
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.gridSize = gridSize;
+    }
+
+    public double getXMin() {
+        return xMin;
+    }
+
+    public double getXMax() {
+        return xMax;
+    }
+
+    public double getYMin() {
+        return yMin;
+    }
+
+    public double getYMax() {
+        return yMax;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public double getXStep() {
+        return (xMax - xMin) / (gridSize - 1);
+    }
+
+    public double getYStep() {
+        return (yMax - yMin) / (gridSize - 1);
+    }
+
+    /**
+     * @param col The column index of a pin.
+     * @return The x-coordinate of the pins in that column.
+     */
+    public double getX(int col) {
+        return xMin + col * getXStep();
+    }
+
+    /**
+     * @param row The row index of a pin.
+     * @return The y-coordinate of the pins in that row.
+     */
+    public double getY(int row) {
+        return yMin + row * getYStep();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PinLayout)) {
+            return false;
+        }
+        PinLayout other = (PinLayout) obj;
+        return Double.compare(xMin, other.xMin) == 0
+                && Double.compare(xMax, other.xMax) == 0
+                && Double.compare(yMin, other.yMin) == 0
+                && Double.compare(yMax, other.yMax) == 0
+                && gridSize == other.gridSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(xMin, xMax, yMin, yMax, gridSize);
+    }
+
+    @Override
+    public String toString() {
+        return "PinLayout[x " + xMin + ".." + xMax + ", y " + yMin + ".." + yMax + ", " + gridSize + "x" + gridSize + "]";
+    }
+}
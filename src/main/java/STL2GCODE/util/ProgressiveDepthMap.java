@@ -0,0 +1,147 @@
+package STL2GCODE.util;
+
+import STL2GCODE.stl4j.PackedTriangles;
+import STL2GCODE.stl4j.Triangle;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Generates a depth map coarse to fine so that a preview is available long before
+ * the full map.
+ *
+ * The first level samples every {@code stride}-th pin in both directions, where the
+ * stride is the largest power of two below the grid size. Each following level
+ * halves the stride and samples the pins in between, until every pin is sampled.
+ * A new pin whose surrounding coarse cell has four corners within
+ * {@code uniformTolerance} of each other takes their value without being looked up,
+ * which skips flat regions and regions the part does not cover. With a negative
+ * tolerance every pin is looked up and the final map equals
+ * {@link DepthMapUtil#generateDepthMap(List, PinLayout)}; otherwise features smaller
+ * than a coarse cell may be missed.
+ *
+ * The computation stops early when the returned future is cancelled, for example
+ * when the operator rejects the orientation after seeing the preview.
+ */
+public class ProgressiveDepthMap {
+
+    /**
+     * Starts generating a depth map.
+     *
+     * @param triangles        A list of Triangle objects representing the surface. It must not change while the map is generated.
+     * @param layout           The pin layout of the depth map.
+     * @param uniformTolerance The largest height difference between the corners of a cell that counts as uniform, or -1 to sample every pin.
+     * @param listener         Receives every refinement level.
+     * @param executor         Runs the computation.
+     * @return The final depth map; cancel it to stop refining.
+     */
+    public static CompletableFuture<double[][]> start(List<Triangle> triangles, PinLayout layout, double uniformTolerance,
+                                                      DepthMapListener listener, Executor executor) {
+        CompletableFuture<double[][]> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                double[][] depthMap = generate(triangles, layout, uniformTolerance, listener, result);
+                result.complete(depthMap);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private static double[][] generate(List<Triangle> triangles, PinLayout layout, double uniformTolerance,
+                                       DepthMapListener listener, CompletableFuture<?> control) {
+        int size = layout.getGridSize();
+        double[][] depthMap = new double[size][size];
+        boolean[][] sampled = new boolean[size][size];
+        int misses = 0;
+        int queries = 0;
+        PackedTriangles packed = PackedTriangles.of(triangles);
+
+        int stride = Integer.highestOneBit(size - 1);
+        for (int level = stride; level >= 1; level /= 2) {
+            for (int i = 0; i < size; i++) {
+                if (!onLevel(i, level, size)) {
+                    continue;
+                }
+                if (control.isCancelled()) {
+                    DepthMapUtil.recordPinQueries(queries, misses);
+                    return null;
+                }
+                for (int j = 0; j < size; j++) {
+                    if (!onLevel(j, level, size) || sampled[i][j]) {
+                        continue;
+                    }
+                    double uniform = level < stride && uniformTolerance >= 0
+                            ? uniformValue(depthMap, i, j, level * 2, size, uniformTolerance) : Double.NaN;
+                    if (!Double.isNaN(uniform)) {
+                        depthMap[i][j] = uniform;
+                    } else {
+                        depthMap[i][j] = DepthMapUtil.calculateZForPin(layout.getX(i), layout.getY(j), packed);
+                        queries++;
+                        if (depthMap[i][j] == -1) {
+                            misses++;
+                        }
+                    }
+                    sampled[i][j] = true;
+                }
+            }
+            listener.onRefinement(level == 1 ? copy(depthMap) : preview(depthMap, level, size), level, level == 1);
+        }
+        DepthMapUtil.recordPinQueries(queries, misses);
+        return depthMap;
+    }
+
+    /**
+     * The pins sampled at a level are the multiples of its stride plus the last pin,
+     * so the edges of the bed show up from the first level on.
+     */
+    private static boolean onLevel(int index, int stride, int size) {
+        return index % stride == 0 || index == size - 1;
+    }
+
+    /**
+     * @return The common value of the corners of the coarse cell around the pin, or NaN if they differ.
+     */
+    private static double uniformValue(double[][] depthMap, int i, int j, int coarse, int size, double tolerance) {
+        int i0 = Math.min(i / coarse * coarse, size - 1);
+        int j0 = Math.min(j / coarse * coarse, size - 1);
+        int i1 = Math.min(i0 + coarse, size - 1);
+        int j1 = Math.min(j0 + coarse, size - 1);
+        double a = depthMap[i0][j0];
+        double b = depthMap[i1][j0];
+        double c = depthMap[i0][j1];
+        double d = depthMap[i1][j1];
+        double min = Math.min(Math.min(a, b), Math.min(c, d));
+        double max = Math.max(Math.max(a, b), Math.max(c, d));
+        if (max - min > tolerance) {
+            return Double.NaN;
+        }
+        // a cell that is partly uncovered is not uniform, even with a large tolerance
+        if (min == -1 && max != -1) {
+            return Double.NaN;
+        }
+        return a;
+    }
+
+    private static double[][] preview(double[][] depthMap, int stride, int size) {
+        double[][] preview = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            int si = onLevel(i, stride, size) ? i : i / stride * stride;
+            for (int j = 0; j < size; j++) {
+                int sj = onLevel(j, stride, size) ? j : j / stride * stride;
+                preview[i][j] = depthMap[si][sj];
+            }
+        }
+        return preview;
+    }
+
+    private static double[][] copy(double[][] depthMap) {
+        double[][] copy = new double[depthMap.length][];
+        for (int i = 0; i < depthMap.length; i++) {
+            copy[i] = depthMap[i].clone();
+        }
+        return copy;
+    }
+}
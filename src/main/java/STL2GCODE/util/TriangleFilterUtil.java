@@ -1,11 +1,12 @@
 package STL2GCODE.util;
 
+import STL2GCODE.metrics.MoldMetrics;
+import STL2GCODE.metrics.StageEvent;
+import STL2GCODE.stl4j.MeshStatistics;
 import STL2GCODE.stl4j.Triangle;
 import STL2GCODE.stl4j.Vec3d;
 import STL2GCODE.util.DepthMapUtil;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -16,6 +17,54 @@ import java.util.List;
  */
 public class TriangleFilterUtil {
 
+    /**
+     * Applies the filters every part goes through before its depth map is generated:
+     * translation to the first quadrant, removal of non-planar faces and rotation
+     * about the Z axis.
+     *
+     * @param triangles     The list of triangles representing the STL part
+     * @param rotationAngle The angle of rotation in radians
+     */
+    public static void applyMoldFilters(List<Triangle> triangles, double rotationAngle) {
+        long start = MoldMetrics.FILTER_TIME.start();
+        StageEvent event = StageEvent.begin("filter");
+        int parsed = triangles.size();
+        // the translation does not change any normal, so it can be applied together with
+        // the rotation after makePlanar; the bounds still include the removed faces
+        Vec3d minCoords = calculateAABBMin(triangles);
+        makePlanar(triangles);
+        translateAndRotate(triangles, -minCoords.x, -minCoords.y, -minCoords.z, rotationAngle);
+        event.end(parsed, 0);
+        MoldMetrics.FILTER_TIME.stop(start);
+    }
+
+    /**
+     * Applies the mold filters like {@link #applyMoldFilters(List, double)}, taking
+     * the bounding box and the number of faces the planar filter removes from the statistics collected
+     * while parsing instead of walking the triangles for them.
+     *
+     * @param triangles     The list of triangles representing the STL part
+     * @param statistics    The statistics of exactly these triangles, as returned with them by the parser
+     * @param rotationAngle The angle of rotation in radians
+     */
+    public static void applyMoldFilters(List<Triangle> triangles, MeshStatistics statistics, double rotationAngle) {
+        if (statistics.getTriangleCount() != triangles.size()) {
+            throw new IllegalArgumentException("The statistics describe " + statistics.getTriangleCount()
+                    + " triangles, the list has " + triangles.size());
+        }
+        Vec3d minCoords = statistics.getMin();
+        if (minCoords == null) {
+            throw new IllegalArgumentException("The list of triangles cannot be null or empty.");
+        }
+        long start = MoldMetrics.FILTER_TIME.start();
+        StageEvent event = StageEvent.begin("filter");
+        int parsed = triangles.size();
+        makePlanar(triangles, statistics);
+        translateAndRotate(triangles, -minCoords.x, -minCoords.y, -minCoords.z, rotationAngle);
+        event.end(parsed, 0);
+        MoldMetrics.FILTER_TIME.stop(start);
+    }
+
     /**
      * Translates all triangle coordinates to the first quadrant by moving the
      * part such that its AABB's minimum coordinates are at the origin.
@@ -37,14 +86,31 @@ public class TriangleFilterUtil {
      * @param triangles The list of triangles to make planar
      */
     public static void makePlanar(List<Triangle> triangles) {
-        List<Triangle> toRemove = new ArrayList<>();
-        for (Triangle t : triangles) {
-            Vec3d normal = t.getNormal();
-            if (normal.z > 0) {
-                toRemove.add(t);
-            }
+        int before = triangles.size();
+        // removeIf is linear on array lists, removeAll with a list of victims is quadratic
+        triangles.removeIf(t -> t.getNormal().z > 0);
+        MoldMetrics.TRIANGLES_FILTERED.add(before - triangles.size());
+    }
+
+    /**
+     * Removes the faces {@link #makePlanar(List)} removes, skipping the walk over the
+     * normals when the statistics show that there are none, or that every face is
+     * one, see {@link MeshStatistics#getPlanarRemovedCount()}.
+     *
+     * @param triangles  The list of triangles to make planar
+     * @param statistics The statistics of exactly these triangles
+     */
+    public static void makePlanar(List<Triangle> triangles, MeshStatistics statistics) {
+        long removed = statistics.getPlanarRemovedCount();
+        if (removed == 0) {
+            return;
+        }
+        if (removed == triangles.size()) {
+            triangles.clear();
+            MoldMetrics.TRIANGLES_FILTERED.add(removed);
+            return;
         }
-        triangles.removeAll(toRemove);
+        makePlanar(triangles);
     }
 
     /**
@@ -73,6 +139,33 @@ public class TriangleFilterUtil {
         }
     }
 
+    /**
+     * Translates the part and then rotates it about the Z axis in a single pass, with
+     * the same result as {@link #translateToFirstQuadrant(List)} followed by
+     * {@link #rotateToOptimizeZ(List, double)}. Every vertex is replaced by a new
+     * vector rather than changed in place, since parsers may share vertices between
+     * triangles.
+     *
+     * @param triangles The list of triangles representing the STL part
+     * @param dx        The translation in x
+     * @param dy        The translation in y
+     * @param dz        The translation in z
+     * @param angle     The angle of rotation in radians
+     */
+    public static void translateAndRotate(List<Triangle> triangles, double dx, double dy, double dz, double angle) {
+        double cosAngle = Math.cos(angle);
+        double sinAngle = Math.sin(angle);
+
+        for (Triangle triangle : triangles) {
+            Vec3d[] vertices = triangle.getVertices();
+            for (int i = 0; i < vertices.length; i++) {
+                double x = vertices[i].x + dx;
+                double y = vertices[i].y + dy;
+                vertices[i] = new Vec3d(x * cosAngle - y * sinAngle, x * sinAngle + y * cosAngle, vertices[i].z + dz);
+            }
+        }
+    }
+
     /**
      Calculates the minimum axis-aligned bounding box (AABB) of the given list of triangles.
      The AABB is the smallest cuboid that can contain all of the vertices of the triangles.
@@ -0,0 +1,149 @@
+package STL2GCODE;
+
+import STL2GCODE.gcode.GCodeWriter;
+import STL2GCODE.stl4j.STLParser;
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.util.DepthMapUtil;
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.PinLayout;
+import STL2GCODE.util.TriangleFilterUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the conversion over generated meshes of growing size and checks that time
+ * and retained heap grow linearly with the number of triangles.
+ *
+ * The largest size defaults to 200k triangles so the suite stays fast; set
+ * {@code -Dremold.scaling.maxTriangles=10000000} for a production-scale run.
+ */
+class ScalingTest {
+    private static final long SMALLEST = 25_000;
+    private static final long LARGEST = Long.getLong("remold.scaling.maxTriangles", 200_000);
+
+    /**
+     * Ceiling for the whole conversion, generous enough for a slow build agent.
+     */
+    private static final double MAX_MICROS_PER_TRIANGLE = 20;
+    /**
+     * Ceiling for the heap held by a parsed triangle: the triangle, its vertex
+     * array, three vertices and the normal.
+     */
+    private static final long MAX_RETAINED_BYTES_PER_TRIANGLE = 512;
+    /**
+     * How much worse the cost per triangle of the largest input may be compared to
+     * the smallest one. A quadratic step makes this ratio grow with the size range.
+     */
+    private static final double MAX_GROWTH = 3;
+
+    @Test
+    void conversionScalesLinearly(@TempDir Path dir) throws IOException {
+        MeshGenerator generator = new MeshGenerator(7);
+        // compile the hot paths before measuring
+        convert(writeMesh(generator, SMALLEST, dir), dir.resolve("warmup.gcode"));
+
+        List<Double> microsPerTriangle = new ArrayList<>();
+        for (long size = SMALLEST; size <= LARGEST; size *= 2) {
+            Path stl = writeMesh(generator, size, dir);
+            long count = MeshGenerator.triangleCount(MeshGenerator.Kind.CLOSED_SOLID, size);
+
+            long heapBefore = usedHeapAfterGc();
+            List<Triangle> triangles = STLParser.parseSTLFile(stl);
+            long retained = usedHeapAfterGc() - heapBefore;
+            assertEquals(count, triangles.size());
+            assertTrue(retained / count <= MAX_RETAINED_BYTES_PER_TRIANGLE,
+                    size + " triangles retain " + retained / count + " bytes each");
+            triangles = null;
+
+            long nanos = convert(stl, dir.resolve("part.gcode"));
+            double micros = nanos / 1000.0 / count;
+            assertTrue(micros <= MAX_MICROS_PER_TRIANGLE,
+                    size + " triangles took " + micros + " us each");
+            microsPerTriangle.add(micros);
+            Files.delete(stl);
+        }
+
+        double growth = microsPerTriangle.get(microsPerTriangle.size() - 1) / microsPerTriangle.get(0);
+        assertTrue(growth <= MAX_GROWTH, "Cost per triangle grew " + growth + " times: " + microsPerTriangle);
+    }
+
+    @Test
+    void makePlanarIsLinear() {
+        // about a quarter of the faces, scattered over the wavy top, are removed, so a removal
+        // that shifts the rest of the list for every face would grow with the mesh size
+        MeshGenerator generator = new MeshGenerator(11);
+        double small = timeMakePlanar(generator, 10_000);
+        double large = timeMakePlanar(generator, 80_000);
+        assertTrue(large / small <= MAX_GROWTH, "makePlanar cost per triangle grew " + large / small + " times");
+    }
+
+    @Test
+    void generatorIsReproducible(@TempDir Path dir) throws IOException {
+        for (MeshGenerator.Kind kind : MeshGenerator.Kind.values()) {
+            List<Triangle> first = new MeshGenerator(3).generate(kind, 5_000, 100);
+            List<Triangle> second = new MeshGenerator(3).generate(kind, 5_000, 100);
+            assertEquals(first, second, kind + " differs between runs");
+            assertEquals(MeshGenerator.triangleCount(kind, 5_000), first.size(), kind + " count");
+
+            Path ascii = dir.resolve(kind + "-ascii.stl");
+            Path binary = dir.resolve(kind + "-binary.stl");
+            new MeshGenerator(3).writeSTL(kind, 5_000, 100, ascii, true);
+            new MeshGenerator(3).writeSTL(kind, 5_000, 100, binary, false);
+            assertEquals(first.size(), STLParser.parseSTLFile(ascii).size(), kind + " ASCII");
+            assertEquals(first.size(), STLParser.parseSTLFile(binary).size(), kind + " binary");
+        }
+    }
+
+    private static Path writeMesh(MeshGenerator generator, long size, Path dir) throws IOException {
+        Path stl = dir.resolve("solid-" + size + ".stl");
+        generator.writeSTL(MeshGenerator.Kind.CLOSED_SOLID, size, 450, stl, false);
+        return stl;
+    }
+
+    /**
+     * @return The time taken to convert the file to G-code in nanoseconds.
+     */
+    private static long convert(Path stl, Path gcode) throws IOException {
+        long start = System.nanoTime();
+        List<Triangle> triangles = STLParser.parseSTLFile(stl);
+        TriangleFilterUtil.applyMoldFilters(triangles, 0);
+        double[][] depthMap = DepthMapUtil.generateDepthMap(triangles, PinLayout.DEFAULT);
+        try (Writer writer = Files.newBufferedWriter(gcode)) {
+            GCodeWriter.writeGCode(DepthMapUtil.calculatePinHeights(depthMap, PinLayout.DEFAULT), writer);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return The best time per triangle out of three runs, in nanoseconds.
+     */
+    private static double timeMakePlanar(MeshGenerator generator, long size) {
+        List<Triangle> mesh = generator.generate(MeshGenerator.Kind.CLOSED_SOLID, size, 450);
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            List<Triangle> copy = new ArrayList<>(mesh);
+            long start = System.nanoTime();
+            TriangleFilterUtil.makePlanar(copy);
+            best = Math.min(best, (System.nanoTime() - start) / (double) mesh.size());
+        }
+        return best;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
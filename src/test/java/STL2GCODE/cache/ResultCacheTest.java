@@ -0,0 +1,151 @@
+package STL2GCODE.cache;
+
+import STL2GCODE.util.PinLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the eviction, single-flighting and disk level of {@link ResultCache}.
+ */
+class ResultCacheTest {
+    private static final int LIMIT = 100;
+
+    @Test
+    void evictsLeastRecentlyUsedResultsBeyondTheByteLimit() throws Exception {
+        ResultCache cache = new ResultCache(LIMIT, null);
+        AtomicInteger computed = new AtomicInteger();
+
+        cache.get(key("a"), counting(computed, 40));
+        cache.get(key("b"), counting(computed, 40));
+        cache.get(key("a"), counting(computed, 40));
+        cache.get(key("c"), counting(computed, 40));
+        assertTrue(cache.getMemoryBytes() <= LIMIT, cache.getMemoryBytes() + " bytes");
+        assertEquals(2, cache.getMemoryEntries());
+        assertEquals(3, computed.get());
+
+        // a was used after b, so b is the one that had to go
+        cache.get(key("a"), counting(computed, 40));
+        assertEquals(3, computed.get());
+        cache.get(key("b"), counting(computed, 40));
+        assertEquals(4, computed.get());
+        assertTrue(cache.getMemoryBytes() <= LIMIT, cache.getMemoryBytes() + " bytes");
+
+        // a result larger than the whole limit is returned but not kept
+        assertEquals(LIMIT + 1, cache.get(key("d"), counting(computed, LIMIT + 1)).length);
+        assertEquals(80, cache.getMemoryBytes());
+    }
+
+    @Test
+    void computesOnceForConcurrentRequests() throws Exception {
+        ResultCache cache = new ResultCache(LIMIT, null);
+        AtomicInteger computed = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] result = "G28".getBytes(StandardCharsets.US_ASCII);
+        Callable<byte[]> compute = () -> {
+            computed.incrementAndGet();
+            release.await();
+            return result;
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            List<Thread> requests = new ArrayList<>();
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < 8; i++) {
+                Thread request = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    CompletableFuture<byte[]> future = cache.get(key("shared"), compute, pool);
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                });
+                request.start();
+                requests.add(request);
+            }
+            go.countDown();
+            for (Thread request : requests) {
+                request.join();
+            }
+            release.countDown();
+
+            assertEquals(8, futures.size());
+            for (CompletableFuture<byte[]> future : futures) {
+                assertSame(result, future.get());
+            }
+            assertEquals(1, computed.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void servesResultsFromDiskAfterTheMemoryIsCleared(@TempDir Path dir) throws Exception {
+        ResultCache cache = new ResultCache(LIMIT, dir);
+        AtomicInteger computed = new AtomicInteger();
+        byte[] first = cache.get(key("a"), counting(computed, 40));
+
+        cache.clearMemory();
+        assertEquals(0, cache.getMemoryBytes());
+        byte[] again = cache.get(key("a"), counting(computed, 40));
+
+        assertArrayEquals(first, again);
+        assertEquals(1, computed.get());
+        assertEquals(1, cache.getMemoryEntries());
+
+        // a new cache over the same directory finds the result as well
+        ResultCache restarted = new ResultCache(LIMIT, dir);
+        assertArrayEquals(first, restarted.get(key("a"), counting(computed, 40)));
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    void doesNotCacheFailures(@TempDir Path dir) throws Exception {
+        ResultCache cache = new ResultCache(LIMIT, dir);
+        AtomicInteger computed = new AtomicInteger();
+        Callable<byte[]> failing = () -> {
+            computed.incrementAndGet();
+            throw new IOException("conversion failed");
+        };
+
+        assertThrows(IOException.class, () -> cache.get(key("a"), failing));
+        assertEquals(0, cache.getMemoryEntries());
+        byte[] result = cache.get(key("a"), counting(computed, 40));
+
+        assertEquals(40, result.length);
+        assertEquals(2, computed.get());
+    }
+
+    private static CacheKey key(String input) {
+        return CacheKey.of("gcode", input.getBytes(StandardCharsets.UTF_8), PinLayout.DEFAULT, 0);
+    }
+
+    private static Callable<byte[]> counting(AtomicInteger computed, int length) {
+        return () -> {
+            computed.incrementAndGet();
+            return new byte[length];
+        };
+    }
+}
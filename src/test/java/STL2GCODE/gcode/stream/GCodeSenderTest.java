@@ -0,0 +1,109 @@
+package STL2GCODE.gcode.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams programs through the sender into a {@link LoopbackController}.
+ */
+class GCodeSenderTest {
+    private static final int RX_BUFFER_SIZE = 48;
+
+    @Test
+    void streamsWithoutOverflowingTheBuffer() throws Exception {
+        List<String> program = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            program.add(String.format(Locale.ROOT, "G1 X%d Y%d Z%.3f", i % 17, i % 13, i * 0.125));
+        }
+
+        try (LoopbackController controller = new LoopbackController(RX_BUFFER_SIZE, 1);
+             GCodeSender sender = new GCodeSender(controller.getInputStream(), controller.getOutputStream(),
+                     RX_BUFFER_SIZE, GCodeSender.DEFAULT_MAX_IN_FLIGHT, 8)) {
+            sender.start();
+            for (String line : program) {
+                sender.send(line + " ; comment");
+            }
+            sender.finish();
+            sender.awaitCompletion();
+
+            assertFalse(controller.hasOverflowed());
+            assertTrue(controller.getPeakBufferUsage() <= RX_BUFFER_SIZE, "peak " + controller.getPeakBufferUsage());
+            assertTrue(controller.getPeakBufferUsage() > program.get(0).length() + 1, "lines were never pipelined");
+            assertEquals(program, controller.getExecutedLines());
+            assertEquals(program.size(), sender.getLinesSent());
+            assertEquals(program.size(), sender.getLinesAcknowledged());
+        }
+    }
+
+    @Test
+    void rejectsLinesAfterFinish() throws Exception {
+        try (LoopbackController controller = new LoopbackController();
+             GCodeSender sender = new GCodeSender(controller.getInputStream(), controller.getOutputStream())) {
+            sender.start();
+            sender.send("G28");
+            sender.finish();
+            assertThrows(IllegalStateException.class, () -> sender.send("G1 X1"));
+            sender.awaitCompletion();
+            assertEquals(List.of("G28"), controller.getExecutedLines());
+        }
+    }
+
+    @Test
+    void sendsEveryLineAcceptedBeforeAConcurrentFinish() throws Exception {
+        try (LoopbackController controller = new LoopbackController(RX_BUFFER_SIZE, 0);
+             GCodeSender sender = new GCodeSender(controller.getInputStream(), controller.getOutputStream(),
+                     RX_BUFFER_SIZE, GCodeSender.DEFAULT_MAX_IN_FLIGHT, 2)) {
+            sender.start();
+            Set<String> accepted = ConcurrentHashMap.newKeySet();
+            CountDownLatch go = new CountDownLatch(1);
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                int producer = p;
+                Thread thread = new Thread(() -> {
+                    try {
+                        go.await();
+                        for (int i = 0; i < 200; i++) {
+                            String line = "G1 X" + producer + " Y" + i;
+                            sender.send(line);
+                            accepted.add(line);
+                        }
+                    } catch (IllegalStateException e) {
+                        // finished while this producer was still sending
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                thread.start();
+                producers.add(thread);
+            }
+            go.countDown();
+            Thread.sleep(5);
+            sender.finish();
+            for (Thread thread : producers) {
+                thread.join();
+            }
+            sender.awaitCompletion();
+
+            assertEquals(accepted, Set.copyOf(controller.getExecutedLines()));
+        }
+    }
+
+    @Test
+    void awaitCompletionRequiresStart() {
+        GCodeSender sender = new GCodeSender(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        assertThrows(IllegalStateException.class, sender::awaitCompletion);
+    }
+}
@@ -0,0 +1,180 @@
+package STL2GCODE.mesh;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads small OBJ, PLY and 3MF files through {@link MeshImporter}.
+ */
+class MeshImporterTest {
+
+    @Test
+    void readsObjQuadWithNegativeIndices() {
+        byte[] obj = ("# a quad and a triangle\n"
+                + "o quad\n"
+                + "v 0 0 0\n"
+                + "v 10 0 0\n"
+                + "v 10 20 0\n"
+                + "v 0 20 5\n"
+                + "vn 0 0 1\n"
+                + "f -4 -3 -2 -1\n"
+                + "f 1//1 2//1 4//1\n").getBytes(StandardCharsets.US_ASCII);
+        assertEquals(MeshImporter.Format.OBJ, MeshImporter.detectFormat(obj, obj.length));
+
+        List<Triangle> triangles = MeshImporter.parseMesh(obj);
+
+        assertEquals(3, triangles.size());
+        assertVertices(triangles.get(0), 0, 0, 0, 10, 0, 0, 10, 20, 0);
+        assertVertices(triangles.get(1), 0, 0, 0, 10, 20, 0, 0, 20, 5);
+        assertVertices(triangles.get(2), 0, 0, 0, 10, 0, 0, 0, 20, 5);
+    }
+
+    @Test
+    void readsLittleAndBigEndianPly() {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            byte[] ply = ply(order);
+            assertEquals(MeshImporter.Format.PLY, MeshImporter.detectFormat(ply, ply.length));
+
+            List<Triangle> triangles = MeshImporter.parseMesh(ply);
+
+            assertEquals(2, triangles.size(), order.toString());
+            assertVertices(triangles.get(0), 0, 0, 1, 10, 0, 1, 10, 20, 1);
+            assertVertices(triangles.get(1), 0, 0, 1, 10, 20, 1, -5, 20, 2.5);
+        }
+    }
+
+    @Test
+    void rejectsPlyWithFacesBeforeVertices() {
+        String header = "ply\nformat binary_little_endian 1.0\n"
+                + "element face 1\nproperty list uchar int vertex_indices\n"
+                + "element vertex 3\nproperty float x\nproperty float y\nproperty float z\nend_header\n";
+        ByteBuffer body = ByteBuffer.allocate(1 + 3 * 4 + 9 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        body.put((byte) 3).putInt(0).putInt(1).putInt(2);
+        byte[] ply = concat(header.getBytes(StandardCharsets.US_ASCII), body.array());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> MeshImporter.parseMesh(ply));
+        assertTrue(e.getMessage().contains("face element comes before the vertex element"), e.getMessage());
+    }
+
+    @Test
+    void readsThreeMfWithTwoObjectsInInches() throws IOException {
+        String model = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<model unit=\"inch\" xmlns=\"http://schemas.microsoft.com/3dmanufacturing/core/2015/02\">\n"
+                + " <resources>\n"
+                + "  <object id=\"1\" type=\"model\"><mesh>\n"
+                + "   <vertices><vertex x=\"0\" y=\"0\" z=\"0\"/><vertex x=\"1\" y=\"0\" z=\"0\"/><vertex x=\"0\" y=\"1\" z=\"0\"/></vertices>\n"
+                + "   <triangles><triangle v1=\"0\" v2=\"1\" v3=\"2\"/></triangles>\n"
+                + "  </mesh></object>\n"
+                + "  <object id=\"2\" type=\"model\"><mesh>\n"
+                + "   <vertices><vertex x=\"2\" y=\"2\" z=\"1\"/><vertex x=\"3\" y=\"2\" z=\"1\"/><vertex x=\"2\" y=\"3\" z=\"0.5\"/></vertices>\n"
+                + "   <triangles><triangle v1=\"0\" v2=\"1\" v3=\"2\"/></triangles>\n"
+                + "  </mesh></object>\n"
+                + " </resources>\n"
+                + " <build><item objectid=\"1\"/><item objectid=\"2\"/></build>\n"
+                + "</model>\n";
+        byte[] threeMf = threeMf(model);
+        assertEquals(MeshImporter.Format.THREE_MF, MeshImporter.detectFormat(threeMf, threeMf.length));
+
+        List<Triangle> triangles = MeshImporter.parseMesh(threeMf);
+
+        assertEquals(2, triangles.size());
+        assertVertices(triangles.get(0), 0, 0, 0, 25.4, 0, 0, 0, 25.4, 0);
+        assertVertices(triangles.get(1), 50.8, 50.8, 25.4, 76.2, 50.8, 25.4, 50.8, 76.2, 12.7);
+    }
+
+    /**
+     * A binary PLY with an extra vertex property, a quad face with an extra list
+     * property and an element the parser does not know.
+     */
+    @Test
+    void appliesThreeMfItemAndComponentTransforms() throws IOException {
+        String model = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<model unit=\"centimeter\" xmlns=\"http://schemas.microsoft.com/3dmanufacturing/core/2015/02\">\n"
+                + " <resources>\n"
+                + "  <object id=\"1\" type=\"model\"><mesh>\n"
+                + "   <vertices><vertex x=\"0\" y=\"0\" z=\"0\"/><vertex x=\"1\" y=\"0\" z=\"0\"/><vertex x=\"0\" y=\"1\" z=\"0\"/></vertices>\n"
+                + "   <triangles><triangle v1=\"0\" v2=\"1\" v3=\"2\"/></triangles>\n"
+                + "  </mesh></object>\n"
+                // an assembly of object 1 raised by 2 cm and turned a quarter about Z
+                + "  <object id=\"2\" type=\"model\"><components>\n"
+                + "   <component objectid=\"1\" transform=\"0 1 0 -1 0 0 0 0 1 0 0 2\"/>\n"
+                + "  </components></object>\n"
+                + " </resources>\n"
+                + " <build><item objectid=\"1\"/><item objectid=\"1\" transform=\"1 0 0 0 1 0 0 0 1 10 20 0\"/>"
+                + "<item objectid=\"2\" transform=\"1 0 0 0 1 0 0 0 1 5 0 0\"/></build>\n"
+                + "</model>\n";
+
+        List<Triangle> triangles = MeshImporter.parseMesh(threeMf(model));
+
+        assertEquals(3, triangles.size());
+        assertVertices(triangles.get(0), 0, 0, 0, 10, 0, 0, 0, 10, 0);
+        assertVertices(triangles.get(1), 100, 200, 0, 110, 200, 0, 100, 210, 0);
+        assertVertices(triangles.get(2), 50, 0, 20, 50, 10, 20, 40, 0, 20);
+    }
+
+    private static byte[] threeMf(String model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            zip.write("<Types/>".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("3D/3dmodel.model"));
+            zip.write(model.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ply(ByteOrder order) {
+        String header = "ply\n"
+                + "format " + (order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian" : "binary_big_endian") + " 1.0\n"
+                + "comment made by hand\n"
+                + "element vertex 4\n"
+                + "property float x\nproperty float y\nproperty float z\nproperty uchar red\n"
+                + "element face 1\n"
+                + "property list uchar int vertex_indices\nproperty list uchar float texcoord\n"
+                + "element material 1\n"
+                + "property double shininess\n"
+                + "end_header\n";
+        float[][] vertices = {{0, 0, 1}, {10, 0, 1}, {10, 20, 1}, {-5, 20, 2.5f}};
+        ByteBuffer body = ByteBuffer.allocate(4 * 13 + 1 + 4 * 4 + 1 + 8 * 4 + 8).order(order);
+        for (float[] vertex : vertices) {
+            body.putFloat(vertex[0]).putFloat(vertex[1]).putFloat(vertex[2]).put((byte) 200);
+        }
+        body.put((byte) 4).putInt(0).putInt(1).putInt(2).putInt(3);
+        body.put((byte) 8);
+        for (int i = 0; i < 8; i++) {
+            body.putFloat(i * 0.125f);
+        }
+        body.putDouble(0.5);
+        return concat(header.getBytes(StandardCharsets.US_ASCII), body.array());
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = new byte[a.length + b.length];
+        System.arraycopy(a, 0, joined, 0, a.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static void assertVertices(Triangle triangle, double... expected) {
+        Vec3d[] vertices = triangle.getVertices();
+        for (int v = 0; v < 3; v++) {
+            assertEquals(expected[3 * v], vertices[v].x, 1e-4, "x of vertex " + v);
+            assertEquals(expected[3 * v + 1], vertices[v].y, 1e-4, "y of vertex " + v);
+            assertEquals(expected[3 * v + 2], vertices[v].z, 1e-4, "z of vertex " + v);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package STL2GCODE.scheduler;
+
+import STL2GCODE.util.PinLayout;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the scheduler against simulated machines.
+ */
+class FleetSchedulerTest {
+    private static final PinLayout BED = new PinLayout(0, 30, 0, 30, 4);
+
+    @Test
+    void picksMachineWithFewestChangedPins() throws Exception {
+        MoldJob job = new MoldJob("part", 0, ramp(1), BED);
+        SimulatedMachine empty = new SimulatedMachine("empty", BED, 0);
+        SimulatedMachine holding = new SimulatedMachine("holding", BED, 0);
+        holding.setPinState(job.getTargetHeights());
+
+        try (FleetScheduler scheduler = new FleetScheduler(List.of(empty, holding))) {
+            JobResult result = scheduler.submit(job).get(10, TimeUnit.SECONDS);
+            assertEquals("holding", result.getMachine());
+            assertEquals(0, result.getChangedPins());
+        }
+        assertEquals(List.of("part"), holding.getCompletedJobs());
+        assertEquals(0, holding.getChangedPins());
+        assertEquals(0, empty.getCompletedJobs().size());
+    }
+
+    @Test
+    void machineEndsWithTargetHeights() throws Exception {
+        double[][] depthMap = ramp(2);
+        depthMap[1][2] = -1;
+        MoldJob job = new MoldJob("part", 0, depthMap, BED);
+        SimulatedMachine machine = new SimulatedMachine("bed", BED, 0);
+        try (FleetScheduler scheduler = new FleetScheduler(List.of(machine))) {
+            JobResult result = scheduler.submit(job).get(10, TimeUnit.SECONDS);
+            assertEquals(16, result.getChangedPins());
+        }
+        double[][] state = machine.getPinState();
+        double[][] target = job.getTargetHeights();
+        for (int row = 0; row < 4; row++) {
+            assertTrue(Arrays.equals(target[row], state[row]), "row " + row);
+        }
+    }
+
+    @Test
+    void waitingJobsRunByPriority() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        SimulatedMachine machine = new SimulatedMachine("bed", BED, 0) {
+            @Override
+            public void run(MoldJob job, String gcode) throws IOException, InterruptedException {
+                started.countDown();
+                gate.await();
+                super.run(job, gcode);
+            }
+        };
+        try (FleetScheduler scheduler = new FleetScheduler(List.of(machine))) {
+            // the first job blocks the machine and the second takes its only slot
+            scheduler.submit(new MoldJob("running", 0, ramp(1), BED));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            scheduler.submit(new MoldJob("next", 0, ramp(2), BED));
+            CompletableFuture<JobResult> low = scheduler.submit(new MoldJob("low", 1, ramp(3), BED));
+            CompletableFuture<JobResult> high = scheduler.submit(new MoldJob("high", 5, ramp(4), BED));
+            assertEquals(2, scheduler.getQueuedJobs());
+            gate.countDown();
+            CompletableFuture.allOf(low, high).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of("running", "next", "high", "low"), machine.getCompletedJobs());
+    }
+
+    @Test
+    void rejectsJobForUnknownBed() throws Exception {
+        PinLayout other = new PinLayout(0, 60, 0, 60, 4);
+        try (FleetScheduler scheduler = new FleetScheduler(List.of(new SimulatedMachine("bed", BED, 0)))) {
+            CompletableFuture<JobResult> result = scheduler.submit(new MoldJob("part", 0, ramp(1), other));
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                throw new AssertionError("expected the job to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    private static double[][] ramp(double slope) {
+        double[][] depthMap = new double[4][4];
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                depthMap[row][col] = 1 + slope * (row + col);
+            }
+        }
+        return depthMap;
+    }
+}
@@ -0,0 +1,44 @@
+package STL2GCODE.stl4j;
+
+import STL2GCODE.util.MeshGenerator;
+import STL2GCODE.util.TriangleFilterUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the normal statistics against faces with known orientation.
+ */
+class MeshStatisticsTest {
+
+    @Test
+    void countsFacesByTheZComponentOfTheirNormal() {
+        Triangle up = new Triangle(new Vec3d(0, 0, 0), new Vec3d(1, 0, 0), new Vec3d(0, 1, 0));
+        Triangle down = new Triangle(new Vec3d(0, 0, 0), new Vec3d(0, 1, 0), new Vec3d(1, 0, 0));
+        // a wall facing -y is neither up nor down
+        Triangle wall = new Triangle(new Vec3d(0, 0, 0), new Vec3d(1, 0, 0), new Vec3d(0, 0, 1));
+
+        MeshStatistics statistics = MeshStatistics.of(List.of(up, down, wall));
+
+        assertEquals(1, statistics.getUpwardCount());
+        assertEquals(1, statistics.getDownwardCount());
+        long[] histogram = statistics.getNormalHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[MeshStatistics.NORMAL_BINS / 2]);
+        assertEquals(1, histogram[MeshStatistics.NORMAL_BINS - 1]);
+        assertEquals(0, statistics.getDegenerateCount());
+    }
+
+    @Test
+    void planarRemovedCountMatchesTheFilter() {
+        List<Triangle> triangles = new ArrayList<>(new MeshGenerator(5).generate(MeshGenerator.Kind.CLOSED_SOLID, 2_000, 100));
+        MeshStatistics statistics = MeshStatistics.of(triangles);
+
+        TriangleFilterUtil.makePlanar(triangles);
+
+        assertEquals(statistics.getTriangleCount() - triangles.size(), statistics.getPlanarRemovedCount());
+    }
+}
@@ -0,0 +1,65 @@
+package STL2GCODE.stl4j;
+
+import STL2GCODE.util.MeshGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that pin queries against packed triangles give the same heights as
+ * {@link Triangle#barycentricCoords(double, double)} and do not allocate.
+ */
+class PackedTrianglesTest {
+    private static final int QUERIES = 100_000;
+
+    @Test
+    void matchesBarycentricCoords() {
+        Random random = new Random(3);
+        for (MeshGenerator.Kind kind : MeshGenerator.Kind.values()) {
+            List<Triangle> triangles = new MeshGenerator(11).generate(kind, 2_000, 200);
+            PackedTriangles packed = PackedTriangles.of(triangles);
+            for (int i = 0; i < 2_000; i++) {
+                double x = random.nextDouble() * 300 - 50;
+                double y = random.nextDouble() * 300 - 50;
+                assertEquals(firstHitZ(triangles, x, y), packed.firstHitZ(x, y, -1), 0.0, kind + " at " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void pinQueryDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PackedTriangles packed = PackedTriangles.of(new MeshGenerator(5).generate(MeshGenerator.Kind.HEIGHT_FIELD, 500, 200));
+
+        // compile the query before measuring
+        double sum = queryAll(packed);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        sum += queryAll(packed);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(0, allocated / QUERIES, "bytes allocated per pin query (checksum " + sum + ")");
+    }
+
+    private static double queryAll(PackedTriangles packed) {
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += packed.firstHitZ(i % 317 * 0.7, i % 293 * 0.7, -1);
+        }
+        return sum;
+    }
+
+    private static double firstHitZ(List<Triangle> triangles, double x, double y) {
+        for (Triangle triangle : triangles) {
+            double[] coords = triangle.barycentricCoords(x, y);
+            if (coords != null) {
+                Vec3d[] v = triangle.getVertices();
+                return v[0].z * coords[0] + v[1].z * coords[1] + v[2].z * coords[2];
+            }
+        }
+        return -1;
+    }
+}
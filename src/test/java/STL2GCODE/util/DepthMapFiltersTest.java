@@ -0,0 +1,77 @@
+package STL2GCODE.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the histogram median against sorting every window.
+ */
+class DepthMapFiltersTest {
+    private static final int SIZE = 64;
+
+    @Test
+    void medianMatchesBruteForce() {
+        for (int bands : new int[]{1, 3, 4, 8}) {
+            for (int radius : new int[]{1, 2, 5}) {
+                double[] map = randomMap(new Random(bands * 31 + radius));
+                double[] expected = bruteForceMedian(map, SIZE, radius);
+                double halfBin = (max(map) - min(map)) / 4096 / 2;
+
+                double[] actual = map.clone();
+                DepthMapFilters.median(actual, SIZE, radius, bands);
+
+                for (int i = 0; i < map.length; i++) {
+                    assertEquals(expected[i], actual[i], halfBin + 1e-9,
+                            "pin " + i + " with " + bands + " bands, radius " + radius);
+                }
+            }
+        }
+    }
+
+    private static double[] randomMap(Random random) {
+        double[] map = new double[SIZE * SIZE];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = random.nextInt(10) == 0 ? DepthMapFilters.NO_DATA : random.nextDouble() * 50;
+        }
+        return map;
+    }
+
+    /**
+     * The lower median of the pins with data in each clipped window.
+     */
+    private static double[] bruteForceMedian(double[] map, int size, int radius) {
+        double[] result = map.clone();
+        double[] window = new double[(2 * radius + 1) * (2 * radius + 1)];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (map[row * size + col] == DepthMapFilters.NO_DATA) {
+                    continue;
+                }
+                int count = 0;
+                for (int r = Math.max(0, row - radius); r <= Math.min(size - 1, row + radius); r++) {
+                    for (int c = Math.max(0, col - radius); c <= Math.min(size - 1, col + radius); c++) {
+                        double value = map[r * size + c];
+                        if (value != DepthMapFilters.NO_DATA) {
+                            window[count++] = value;
+                        }
+                    }
+                }
+                Arrays.sort(window, 0, count);
+                result[row * size + col] = window[(count + 1) / 2 - 1];
+            }
+        }
+        return result;
+    }
+
+    private static double min(double[] map) {
+        return Arrays.stream(map).filter(v -> v != DepthMapFilters.NO_DATA).min().getAsDouble();
+    }
+
+    private static double max(double[] map) {
+        return Arrays.stream(map).filter(v -> v != DepthMapFilters.NO_DATA).max().getAsDouble();
+    }
+}
@@ -0,0 +1,87 @@
+package STL2GCODE.util;
+
+import STL2GCODE.stl4j.Triangle;
+import STL2GCODE.stl4j.Vec3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the incrementally updated depth map against generating it from scratch
+ * after random edits.
+ */
+class IncrementalDepthMapTest {
+    private static final double SIZE = 100;
+    // wider than the meshes, so some pins hit nothing
+    private static final PinLayout LAYOUT = new PinLayout(-10, SIZE + 10, -10, SIZE + 10, 48);
+
+    @Test
+    void matchesFullGenerationAfterRandomEdits() {
+        for (MeshGenerator.Kind kind : MeshGenerator.Kind.values()) {
+            Random random = new Random(kind.ordinal());
+            List<Triangle> mesh = new MeshGenerator(7).generate(kind, 3_000, SIZE);
+            IncrementalDepthMap map = new IncrementalDepthMap(mesh, LAYOUT);
+            assertSameDepthMap(map, kind + " initial");
+
+            List<Integer> live = new ArrayList<>();
+            for (int id = 0; id < mesh.size(); id++) {
+                live.add(id);
+            }
+            for (int batch = 0; batch < 20; batch++) {
+                for (int edit = 0; edit < 1 + random.nextInt(30); edit++) {
+                    int choice = random.nextInt(3);
+                    if (choice == 0 || live.isEmpty()) {
+                        live.add(map.add(randomTriangle(random)));
+                    } else if (choice == 1) {
+                        int id = live.get(random.nextInt(live.size()));
+                        map.replace(id, moved(map.getTriangle(id), random));
+                    } else {
+                        map.remove(live.remove(random.nextInt(live.size())));
+                    }
+                }
+                map.update();
+                assertEquals(0, map.getDirtyPinCount());
+                assertSameDepthMap(map, kind + " batch " + batch);
+            }
+        }
+    }
+
+    @Test
+    void updatesOnlyThePinsAnEditTouches() {
+        List<Triangle> mesh = new MeshGenerator(7).generate(MeshGenerator.Kind.HEIGHT_FIELD, 3_000, SIZE);
+        IncrementalDepthMap map = new IncrementalDepthMap(mesh, LAYOUT);
+
+        map.replace(0, moved(map.getTriangle(0), new Random(1)));
+        int updated = map.update();
+
+        assertTrue(updated > 0 && updated < LAYOUT.getGridSize() * LAYOUT.getGridSize() / 10, updated + " pins updated");
+        assertSameDepthMap(map, "single replace");
+    }
+
+    private static void assertSameDepthMap(IncrementalDepthMap map, String message) {
+        double[][] expected = DepthMapUtil.generateDepthMap(map.getTriangles(), LAYOUT);
+        assertTrue(Arrays.deepEquals(expected, map.getDepthMap()), message);
+    }
+
+    private static Triangle randomTriangle(Random random) {
+        double x = random.nextDouble() * SIZE;
+        double y = random.nextDouble() * SIZE;
+        double extent = 1 + random.nextDouble() * 15;
+        return new Triangle(
+                new Vec3d(x, y, random.nextDouble() * 10),
+                new Vec3d(x + extent, y + random.nextDouble() * extent, random.nextDouble() * 10),
+                new Vec3d(x + random.nextDouble() * extent, y + extent, random.nextDouble() * 10));
+    }
+
+    private static Triangle moved(Triangle triangle, Random random) {
+        Vec3d offset = new Vec3d((random.nextDouble() - 0.5) * 20, (random.nextDouble() - 0.5) * 20, random.nextDouble() * 5);
+        Vec3d[] v = triangle.getVertices();
+        return new Triangle(v[0].add(offset), v[1].add(offset), v[2].add(offset));
+    }
+}